@@ -13,5 +13,5 @@ if [ $? -ne 0 ]; then
     exit 1
 fi
 
-echo "Iniciando ControleServer..."
-java -jar target/controle-jar-with-dependencies.jar
+echo "Iniciando ControleServer... (nó fixo: JAVA_OPTS=-Dapp.node=node-1)"
+java $JAVA_OPTS -jar target/controle-jar-with-dependencies.jar
@@ -1,9 +1,22 @@
 package client;
 
 import gateway.GatewayService;
-
+import model.Compressao;
+import model.TrechoArquivo;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 
@@ -13,6 +26,14 @@ public class ClienteUI {
     private Scanner scanner = new Scanner(System.in);
     private String tokenJWT = null;
 
+    // tail: bytes mostrados de início e intervalo entre consultas
+    private static final int TAIL_INICIAL = 1024;
+    private static final long INTERVALO_TAIL_MS = 1000;
+    // download em blocos: recomeços quando o arquivo muda no meio
+    private static final int TENTATIVAS_DOWNLOAD = 3;
+    // tail: bytes já mostrados pedidos de novo para distinguir append de substituição
+    private static final int CAUDA_TAIL = 64;
+
 
     public void start() {
         conectarComGateway();
@@ -128,7 +149,10 @@ public class ClienteUI {
             System.out.println("3. Editar Arquivo");
             System.out.println("4. Download");
             System.out.println("5. Apagar");
-            System.out.println("6. Sair");
+            System.out.println("6. Enviar arquivo local");
+            System.out.println("7. Baixar para arquivo local");
+            System.out.println("8. Acompanhar arquivo (tail)");
+            System.out.println("9. Sair");
 
             System.out.print("Escolha: ");
             String opc = scanner.nextLine();
@@ -139,7 +163,10 @@ public class ClienteUI {
                 case "3" -> editarArquivo();
                 case "4" -> download();
                 case "5" -> apagar();
-                case "6" -> System.exit(0);
+                case "6" -> enviarArquivoLocal();
+                case "7" -> baixarArquivoLocal();
+                case "8" -> acompanharArquivo();
+                case "9" -> System.exit(0);
                 default -> System.out.println("Opção inválida.");
             }
 
@@ -152,7 +179,7 @@ public class ClienteUI {
             System.out.print("Nome do arquivo: ");
             String nome = scanner.nextLine();
 
-            boolean ok = gateway.apagar(nome);
+            boolean ok = gateway.apagar(tokenJWT, nome);
 
             System.out.println(ok ? "Arquivo apagado!" : "Erro ao apagar arquivo.");
 
@@ -179,7 +206,7 @@ public class ClienteUI {
             System.out.print("Conteúdo: ");
             String conteudo = "\n" + scanner.nextLine();
 
-            boolean ok = gateway.editaArquivo(nome, conteudo.getBytes());
+            boolean ok = gateway.editaArquivo(tokenJWT, nome, conteudo.getBytes());
 
             System.out.println(ok ? "Upload feito!" : "Erro no upload.");
 
@@ -196,7 +223,7 @@ public class ClienteUI {
             System.out.print("Conteúdo: ");
             String conteudo = scanner.nextLine();
 
-            boolean ok = gateway.upload(nome, conteudo.getBytes());
+            boolean ok = gateway.upload(tokenJWT, nome, conteudo.getBytes());
 
             System.out.println(ok ? "Upload feito!" : "Erro no upload.");
 
@@ -210,7 +237,7 @@ public class ClienteUI {
             System.out.print("Nome do arquivo: ");
             String nome = scanner.nextLine();
 
-            byte[] conteudo = gateway.download(nome);
+            byte[] conteudo = gateway.download(tokenJWT, nome);
 
             if (conteudo == null) {
                 System.out.println("Arquivo não encontrado.");
@@ -225,6 +252,216 @@ public class ClienteUI {
         }
     }
 
+    /**
+     * Envia um arquivo do disco em blocos de GatewayService.TAMANHO_BLOCO
+     */
+    private void enviarArquivoLocal() {
+        String sessao = null;
+        try {
+            System.out.print("Caminho do arquivo local: ");
+            Path origem = Paths.get(scanner.nextLine());
+
+            System.out.print("Nome no servidor: ");
+            String nome = scanner.nextLine();
+
+            sessao = gateway.iniciarUpload(tokenJWT, nome);
+
+            long enviados = 0;
+            byte[] buffer = new byte[GatewayService.TAMANHO_BLOCO];
+            try (InputStream in = Files.newInputStream(origem)) {
+                int lidos;
+                while ((lidos = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                    byte[] bloco = lidos == buffer.length ? buffer : Arrays.copyOf(buffer, lidos);
+                    boolean ok = Compressao.HABILITADA
+                            ? gateway.enviarBlocoComprimido(tokenJWT, sessao, Compressao.empacotar(bloco))
+                            : gateway.enviarBloco(tokenJWT, sessao, bloco);
+                    if (!ok) {
+                        throw new RuntimeException("Falha ao enviar bloco");
+                    }
+                    enviados += lidos;
+                    System.out.print("\r📤 Enviados: " + enviados + " bytes");
+                }
+            }
+            System.out.println();
+
+            boolean ok = gateway.concluirUpload(tokenJWT, sessao);
+            sessao = null;
+            System.out.println(ok ? "Upload feito!" : "Erro no upload.");
+
+        } catch (Exception e) {
+            System.out.println("Erro no upload: " + extrairErro(e));
+            if (sessao != null) {
+                try { gateway.cancelarUpload(tokenJWT, sessao); } catch (Exception ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Baixa um arquivo em blocos direto para o disco
+     */
+    private void baixarArquivoLocal() {
+        try {
+            System.out.print("Nome do arquivo: ");
+            String nome = scanner.nextLine();
+
+            System.out.print("Salvar em: ");
+            Path destino = Paths.get(scanner.nextLine());
+
+            for (int tentativa = 1; ; tentativa++) {
+                TrechoArquivo primeiro = gateway.downloadTrecho(tokenJWT, nome, 0, GatewayService.TAMANHO_BLOCO);
+                if (primeiro == null) {
+                    System.out.println("Arquivo não encontrado.");
+                    return;
+                }
+                if (baixarVersao(nome, primeiro, destino)) break;
+
+                if (tentativa == TENTATIVAS_DOWNLOAD) {
+                    System.out.println("\nArquivo alterado durante o download; tente de novo.");
+                    return;
+                }
+                System.out.println("\n[arquivo alterado durante o download, recomeçando]");
+            }
+            System.out.println();
+            System.out.println("Download salvo em " + destino);
+
+        } catch (Exception e) {
+            System.out.println("Erro no download: " + extrairErro(e));
+        }
+    }
+
+    /**
+     * Grava no destino a versão do primeiro trecho; false se ela deixou de
+     * ser a confirmada no meio do caminho (os blocos seguintes pedem essa versão)
+     */
+    private boolean baixarVersao(String nome, TrechoArquivo primeiro, Path destino) throws Exception {
+        long tamanho = primeiro.getTamanhoArquivo();
+        try (OutputStream out = Files.newOutputStream(destino)) {
+            out.write(primeiro.getDados());
+            long offset = primeiro.getFim();
+            while (offset < tamanho) {
+                byte[] bloco = Compressao.HABILITADA
+                        ? desempacotar(gateway.downloadBlocoComprimido(tokenJWT, nome, primeiro.getVersao(),
+                                offset, GatewayService.TAMANHO_BLOCO))
+                        : gateway.downloadBloco(tokenJWT, nome, primeiro.getVersao(), offset,
+                                GatewayService.TAMANHO_BLOCO);
+                if (bloco == null || bloco.length == 0) return false;
+                out.write(bloco);
+                offset += bloco.length;
+                System.out.print("\r📥 Recebidos: " + offset + "/" + tamanho + " bytes");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mostra o fim do arquivo e, pelo tempo pedido, o que for acrescentado
+     * (só o trecho novo trafega a cada consulta)
+     */
+    private void acompanharArquivo() {
+        try {
+            System.out.print("Nome do arquivo: ");
+            String nome = scanner.nextLine();
+
+            System.out.print("Acompanhar por quantos segundos: ");
+            long fimEspera = System.currentTimeMillis() + Long.parseLong(scanner.nextLine().trim()) * 1000;
+
+            TrechoArquivo trecho = gateway.downloadTrecho(tokenJWT, nome, -TAIL_INICIAL, TAIL_INICIAL);
+            if (trecho == null) {
+                System.out.println("Arquivo não encontrado.");
+                return;
+            }
+            TextoUtf8 texto = new TextoUtf8();
+            // Começo no meio do arquivo: pula o resto de um caractere cortado
+            int inicio = 0;
+            while (trecho.getOffset() > 0 && inicio < trecho.getDados().length
+                    && (trecho.getDados()[inicio] & 0xC0) == 0x80) {
+                inicio++;
+            }
+            System.out.print(texto.decodificar(trecho.getDados(), inicio));
+            long versao = trecho.getVersao();
+            byte[] cauda = cauda(new byte[0], trecho.getDados(), 0);
+            long proximo = trecho.getFim();
+
+            while (System.currentTimeMillis() < fimEspera) {
+                Thread.sleep(INTERVALO_TAIL_MS);
+                // Pede também os últimos bytes já mostrados: com versão nova, só é
+                // append se eles continuam lá
+                int sobreposicao = (int) Math.min(cauda.length, proximo);
+                trecho = gateway.downloadTrecho(tokenJWT, nome, proximo - sobreposicao, GatewayService.TAMANHO_BLOCO);
+                if (trecho == null) {
+                    System.out.println("\n[arquivo removido]");
+                    return;
+                }
+                if (trecho.getVersao() != versao && !continua(trecho, proximo, cauda, sobreposicao)) {
+                    // Truncado ou substituído: recomeça do início da versão nova
+                    System.out.println("\n[arquivo substituído, recomeçando]");
+                    versao = trecho.getVersao();
+                    texto = new TextoUtf8();
+                    cauda = new byte[0];
+                    proximo = 0;
+                    continue;
+                }
+                System.out.print(texto.decodificar(trecho.getDados(), sobreposicao));
+                versao = trecho.getVersao();
+                cauda = cauda(cauda, trecho.getDados(), sobreposicao);
+                proximo = trecho.getFim();
+            }
+            System.out.println();
+
+        } catch (Exception e) {
+            System.out.println("Erro ao acompanhar arquivo: " + extrairErro(e));
+        }
+    }
+
+    /**
+     * Trecho de uma versão nova que só acrescentou bytes: ainda tem o que foi
+     * mostrado até proximo, e termina em cauda
+     */
+    private static boolean continua(TrechoArquivo trecho, long proximo, byte[] cauda, int sobreposicao) {
+        if (trecho.getTamanhoArquivo() < proximo || trecho.getOffset() != proximo - sobreposicao
+                || trecho.getDados().length < sobreposicao) {
+            return false;
+        }
+        return Arrays.equals(trecho.getDados(), 0, sobreposicao, cauda, cauda.length - sobreposicao, cauda.length);
+    }
+
+    /**
+     * Últimos CAUDA_TAIL bytes mostrados: os de antes seguidos dos novos
+     */
+    private static byte[] cauda(byte[] anterior, byte[] dados, int inicio) {
+        int novos = dados.length - inicio;
+        int manter = Math.min(anterior.length, Math.max(0, CAUDA_TAIL - novos));
+        byte[] cauda = new byte[manter + Math.min(novos, CAUDA_TAIL)];
+        System.arraycopy(anterior, anterior.length - manter, cauda, 0, manter);
+        System.arraycopy(dados, dados.length - (cauda.length - manter), cauda, manter, cauda.length - manter);
+        return cauda;
+    }
+
+    /**
+     * Decodifica UTF-8 em pedaços: os bytes de um caractere cortado no fim de
+     * um trecho ficam guardados até o próximo
+     */
+    private static class TextoUtf8 {
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private byte[] pendente = new byte[0];
+
+        String decodificar(byte[] dados, int inicio) {
+            ByteBuffer entrada = ByteBuffer.allocate(pendente.length + dados.length - inicio);
+            entrada.put(pendente).put(dados, inicio, dados.length - inicio).flip();
+            CharBuffer saida = CharBuffer.allocate(entrada.remaining());
+            decoder.decode(entrada, saida, false);
+            pendente = new byte[entrada.remaining()];
+            entrada.get(pendente);
+            return saida.flip().toString();
+        }
+    }
+
+    private static byte[] desempacotar(byte[] pacote) {
+        return pacote == null ? null : Compressao.desempacotar(pacote);
+    }
+
     private void mostrarHashRodape() {
         try {
             String hash = gateway.getSistemaHash();
@@ -0,0 +1,102 @@
+package database;
+
+import jakarta.persistence.*;
+import model.Arquivo;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Índice persistente dos metadados de arquivo. As escritas do servidor vão
+ * em lote (gravarLote), uma transação do SQLite para várias entradas.
+ */
+public class ArquivoDAO {
+
+    /**
+     * Insere ou substitui a entrada do arquivo
+     */
+    public boolean salvar(Arquivo arquivo) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.merge(arquivo);
+            em.getTransaction().commit();
+            return true;
+        } catch (Exception e) {
+            System.err.println("[ArquivoDAO] ❌ Erro ao indexar " + arquivo.getNome() + ": " + e.getMessage());
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Substitui e remove várias entradas numa única transação
+     */
+    public boolean gravarLote(Collection<Arquivo> salvar, Collection<String> remover) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (Arquivo arquivo : salvar) {
+                em.merge(arquivo);
+            }
+            if (!remover.isEmpty()) {
+                em.createQuery("DELETE FROM Arquivo a WHERE a.nome IN :nomes")
+                        .setParameter("nomes", remover)
+                        .executeUpdate();
+            }
+            em.getTransaction().commit();
+            return true;
+        } catch (Exception e) {
+            System.err.println("[ArquivoDAO] ❌ Erro ao gravar lote de " + (salvar.size() + remover.size())
+                    + " entradas: " + e.getMessage());
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+
+    public Arquivo buscar(String nome) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            return em.find(Arquivo.class, nome);
+        } finally {
+            em.close();
+        }
+    }
+
+    public List<Arquivo> listarTodos() {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            return em.createQuery("FROM Arquivo", Arquivo.class).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public boolean remover(String nome) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            int removidos = em.createQuery("DELETE FROM Arquivo a WHERE a.nome = :nome")
+                    .setParameter("nome", nome)
+                    .executeUpdate();
+            em.getTransaction().commit();
+            return removidos > 0;
+        } catch (Exception e) {
+            System.err.println("[ArquivoDAO] ❌ Erro ao remover " + nome + " do índice: " + e.getMessage());
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package database;
+
+import jakarta.persistence.*;
+import model.Lapide;
+
+import java.util.List;
+
+/**
+ * Lápides persistentes dos arquivos apagados
+ */
+public class LapideDAO {
+
+    /**
+     * Insere ou substitui a lápide do arquivo
+     */
+    public boolean salvar(Lapide lapide) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.merge(lapide);
+            em.getTransaction().commit();
+            return true;
+        } catch (Exception e) {
+            System.err.println("[LapideDAO] ❌ Erro ao gravar lápide de " + lapide.getNome() + ": " + e.getMessage());
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+
+    public List<Lapide> listarTodas() {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            return em.createQuery("FROM Lapide", Lapide.class).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    public boolean remover(String nome) {
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            int removidas = em.createQuery("DELETE FROM Lapide l WHERE l.nome = :nome")
+                    .setParameter("nome", nome)
+                    .executeUpdate();
+            em.getTransaction().commit();
+            return removidas > 0;
+        } catch (Exception e) {
+            System.err.println("[LapideDAO] ❌ Erro ao remover lápide de " + nome + ": " + e.getMessage());
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+}
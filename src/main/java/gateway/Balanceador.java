@@ -0,0 +1,40 @@
+package gateway;
+
+import org.jgroups.Address;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Estratégia de escolha do servidor backend para cada chamada.
+ * O GatewayServer informa início e fim de cada chamada para que as
+ * estratégias possam acompanhar carga e latência dos servidores.
+ *
+ * Escolhe entre servidores equivalentes (login, leituras com R = 1);
+ * escritas vão para as réplicas do nome na ordem do anel.
+ */
+public interface Balanceador {
+
+    Address selecionar(List<Address> servidores);
+
+    default void inicioChamada(Address servidor) {}
+
+    default void fimChamada(Address servidor, long duracaoNanos, boolean sucesso) {}
+
+    /**
+     * Descarta o estado de servidores que saíram da view
+     */
+    default void manterApenas(Collection<Address> servidores) {}
+
+    /**
+     * Cria a estratégia pelo nome: "round-robin", "menos-pendentes" ou "latencia"
+     */
+    static Balanceador criar(String nome) {
+        return switch (nome) {
+            case "round-robin" -> new BalanceadorRoundRobin();
+            case "menos-pendentes" -> new BalanceadorMenosPendentes();
+            case "latencia" -> new BalanceadorLatencia();
+            default -> throw new IllegalArgumentException("Balanceador desconhecido: " + nome);
+        };
+    }
+}
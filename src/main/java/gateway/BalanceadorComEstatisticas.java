@@ -0,0 +1,60 @@
+package gateway;
+
+import org.jgroups.Address;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base das estratégias que usam pendentes/latência medidos pelo gateway
+ */
+public abstract class BalanceadorComEstatisticas implements Balanceador {
+
+    protected final Map<Address, EstatisticasServidor> estatisticas = new ConcurrentHashMap<>();
+
+    protected EstatisticasServidor de(Address servidor) {
+        EstatisticasServidor existente = estatisticas.get(servidor);
+        if (existente != null) return existente;
+
+        double inicial = latenciaMedia();
+        return estatisticas.computeIfAbsent(servidor, s -> new EstatisticasServidor(inicial));
+    }
+
+    /**
+     * Média das latências já medidas: estimativa inicial de um servidor novo
+     * (sem medições, o padrão de EstatisticasServidor)
+     */
+    private double latenciaMedia() {
+        return estatisticas.values().stream()
+                .filter(EstatisticasServidor::isMedido)
+                .mapToDouble(EstatisticasServidor::getLatenciaMediaNanos)
+                .average()
+                .orElse(EstatisticasServidor.LATENCIA_INICIAL_NANOS);
+    }
+
+    @Override
+    public void inicioChamada(Address servidor) {
+        de(servidor).inicio();
+    }
+
+    /**
+     * Servidor que saiu da view no meio da chamada já foi descartado por
+     * manterApenas: recriá-lo aqui deixaria pendentes negativos
+     */
+    @Override
+    public void fimChamada(Address servidor, long duracaoNanos, boolean sucesso) {
+        EstatisticasServidor e = estatisticas.get(servidor);
+        if (e != null) e.fim(duracaoNanos, sucesso);
+    }
+
+    @Override
+    public void manterApenas(Collection<Address> servidores) {
+        estatisticas.keySet().retainAll(servidores);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + estatisticas;
+    }
+}
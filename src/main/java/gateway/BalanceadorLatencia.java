@@ -0,0 +1,29 @@
+package gateway;
+
+import org.jgroups.Address;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * "Power of two choices": sorteia dois servidores e fica com o de menor
+ * custo (latência EWMA x chamadas pendentes).
+ */
+public class BalanceadorLatencia extends BalanceadorComEstatisticas {
+
+    @Override
+    public Address selecionar(List<Address> servidores) {
+        int n = servidores.size();
+        if (n == 0) return null;
+        if (n == 1) return servidores.get(0);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(n);
+        int b = random.nextInt(n - 1);
+        if (b >= a) b++;
+
+        Address primeiro = servidores.get(a);
+        Address segundo = servidores.get(b);
+        return de(primeiro).custo() <= de(segundo).custo() ? primeiro : segundo;
+    }
+}
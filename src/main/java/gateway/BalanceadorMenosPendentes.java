@@ -0,0 +1,32 @@
+package gateway;
+
+import org.jgroups.Address;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Escolhe o servidor com menos chamadas em andamento (empates ao acaso)
+ */
+public class BalanceadorMenosPendentes extends BalanceadorComEstatisticas {
+
+    @Override
+    public Address selecionar(List<Address> servidores) {
+        if (servidores.isEmpty()) return null;
+
+        int n = servidores.size();
+        int inicio = ThreadLocalRandom.current().nextInt(n);
+
+        Address melhor = null;
+        int menor = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Address candidato = servidores.get((inicio + i) % n);
+            int pendentes = de(candidato).getPendentes();
+            if (pendentes < menor) {
+                menor = pendentes;
+                melhor = candidato;
+            }
+        }
+        return melhor;
+    }
+}
@@ -0,0 +1,17 @@
+package gateway;
+
+import org.jgroups.Address;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BalanceadorRoundRobin implements Balanceador {
+
+    private final AtomicInteger indice = new AtomicInteger(0);
+
+    @Override
+    public Address selecionar(List<Address> servidores) {
+        if (servidores.isEmpty()) return null;
+        return servidores.get(Math.floorMod(indice.getAndIncrement(), servidores.size()));
+    }
+}
@@ -0,0 +1,131 @@
+package gateway;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache LRU de conteúdo de arquivos no gateway, limitado em bytes.
+ *
+ * Cada nome tem uma versão local (dividida com os nomes da mesma faixa de
+ * hash) que é incrementada a cada invalidação. Uma leitura só grava no cache se a versão não mudou desde que a
+ * requisição começou, então uma resposta antiga nunca volta a ser servida.
+ */
+public class CacheConteudo {
+
+    private static class Entrada {
+        final long versao;
+        final byte[] dados;
+
+        Entrada(long versao, byte[] dados) {
+            this.versao = versao;
+            this.dados = dados;
+        }
+    }
+
+    private final long capacidadeBytes;
+    private final long tamanhoMaxEntrada;
+    private long bytesUsados = 0;
+
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    // Versões por faixa de hash do nome, não por nome: memória fixa mesmo com
+    // milhões de nomes já vistos. Nomes na mesma faixa só perdem acertos.
+    private static final int FAIXAS_VERSAO = 1 << 14;
+    private final AtomicLongArray versoes = new AtomicLongArray(FAIXAS_VERSAO);
+
+    private final AtomicLong acertos = new AtomicLong();
+    private final AtomicLong falhas = new AtomicLong();
+    private final AtomicLong despejos = new AtomicLong();
+    private final AtomicLong invalidacoes = new AtomicLong();
+
+    public CacheConteudo(long capacidadeBytes) {
+        this.capacidadeBytes = capacidadeBytes;
+        this.tamanhoMaxEntrada = capacidadeBytes / 8;
+    }
+
+    /**
+     * Versão atual do nome; deve ser lida ANTES de buscar no backend
+     */
+    public long versao(String nome) {
+        return versoes.get(faixa(nome));
+    }
+
+    private static int faixa(String nome) {
+        int h = nome.hashCode();
+        return (h ^ (h >>> 16)) & (FAIXAS_VERSAO - 1);
+    }
+
+    public synchronized byte[] buscar(String nome) {
+        Entrada e = entradas.get(nome);
+        if (e == null || e.versao != versao(nome)) {
+            if (e != null) {
+                // Invalidada por outro nome da mesma faixa
+                entradas.remove(nome);
+                bytesUsados -= e.dados.length;
+            }
+            falhas.incrementAndGet();
+            return null;
+        }
+        acertos.incrementAndGet();
+        return e.dados;
+    }
+
+    public synchronized void guardar(String nome, long versao, byte[] dados) {
+        if (dados == null || dados.length > tamanhoMaxEntrada || versao != versao(nome)) {
+            return;
+        }
+
+        Entrada anterior = entradas.put(nome, new Entrada(versao, dados));
+        if (anterior != null) {
+            bytesUsados -= anterior.dados.length;
+        }
+        bytesUsados += dados.length;
+
+        Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator();
+        while (bytesUsados > capacidadeBytes && it.hasNext()) {
+            Map.Entry<String, Entrada> maisAntigo = it.next();
+            bytesUsados -= maisAntigo.getValue().dados.length;
+            it.remove();
+            despejos.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidar(String nome) {
+        versoes.incrementAndGet(faixa(nome));
+        Entrada removida = entradas.remove(nome);
+        if (removida != null) {
+            bytesUsados -= removida.dados.length;
+        }
+        invalidacoes.incrementAndGet();
+    }
+
+    public long getAcertos() {
+        return acertos.get();
+    }
+
+    public long getFalhas() {
+        return falhas.get();
+    }
+
+    public long getDespejos() {
+        return despejos.get();
+    }
+
+    public synchronized long getBytesUsados() {
+        return bytesUsados;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CacheConteudo{" +
+                "acertos=" + acertos.get() +
+                ", falhas=" + falhas.get() +
+                ", despejos=" + despejos.get() +
+                ", invalidacoes=" + invalidacoes.get() +
+                ", entradas=" + entradas.size() +
+                ", bytes=" + bytesUsados + "/" + capacidadeBytes +
+                '}';
+    }
+}
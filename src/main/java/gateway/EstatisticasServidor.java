@@ -0,0 +1,76 @@
+package gateway;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chamadas em andamento e latência média (EWMA) de um servidor backend
+ */
+public class EstatisticasServidor {
+
+    // Peso da última amostra na média móvel
+    private static final double ALFA = 0.3;
+
+    // Latência atribuída a uma chamada que falhou
+    private static final long PENALIDADE_ERRO_NANOS = 1_000_000_000L;
+
+    // Estimativa inicial de um servidor ainda sem medições
+    public static final double LATENCIA_INICIAL_NANOS = 10_000_000;
+
+    private final AtomicInteger pendentes = new AtomicInteger(0);
+    private volatile double latenciaMediaNanos;
+    private volatile boolean medido = false;
+
+    public EstatisticasServidor() {
+        this(LATENCIA_INICIAL_NANOS);
+    }
+
+    /**
+     * Começa com latenciaInicialNanos até a primeira chamada terminar: as
+     * pendentes de um servidor novo (ou travado) já pesam no custo
+     */
+    public EstatisticasServidor(double latenciaInicialNanos) {
+        this.latenciaMediaNanos = latenciaInicialNanos > 0 ? latenciaInicialNanos : LATENCIA_INICIAL_NANOS;
+    }
+
+    public void inicio() {
+        pendentes.incrementAndGet();
+    }
+
+    public void fim(long duracaoNanos, boolean sucesso) {
+        pendentes.decrementAndGet();
+
+        long amostra = sucesso ? duracaoNanos : Math.max(duracaoNanos, PENALIDADE_ERRO_NANOS);
+        synchronized (this) {
+            latenciaMediaNanos = medido
+                    ? ALFA * amostra + (1 - ALFA) * latenciaMediaNanos
+                    : amostra;
+            medido = true;
+        }
+    }
+
+    public boolean isMedido() {
+        return medido;
+    }
+
+    public int getPendentes() {
+        return pendentes.get();
+    }
+
+    public double getLatenciaMediaNanos() {
+        return latenciaMediaNanos;
+    }
+
+    /**
+     * Custo estimado de uma nova chamada: latência média multiplicada pela
+     * fila atual. Um servidor travado acumula pendentes e perde tráfego
+     * antes mesmo de suas chamadas lentas terminarem.
+     */
+    public double custo() {
+        return latenciaMediaNanos * (pendentes.get() + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "pendentes=" + pendentes.get() + ", ewma=" + String.format("%.1f", latenciaMediaNanos / 1e6) + "ms";
+    }
+}
@@ -1,25 +1,35 @@
 package gateway;
 
+import model.Compressao;
+import model.TrechoArquivo;
 import model.Usuario;
 import org.jgroups.*;
 import org.jgroups.blocks.MethodCall;
 import org.jgroups.blocks.RequestOptions;
 import org.jgroups.blocks.ResponseMode;
 import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.util.Rsp;
+import org.jgroups.util.RspList;
 import security.JwtUtil;
+import server.AnelHash;
+import server.MensagemCluster;
+import server.Posicionamento;
+import server.SessoesUpload;
 
 import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Gateway com Load Balancer Round-Robin
- * Usa RpcDispatcher para chamar métodos nos servidores
+ * Gateway com Load Balancer configurável (-Dgateway.balanceador)
+ * Usa RpcDispatcher para chamar métodos nos servidores; operações sobre um
+ * arquivo vão para as réplicas dele (mesmo anel de hash dos backends)
  */
 public class GatewayServer implements GatewayService, Receiver, Closeable {
 
@@ -27,10 +37,34 @@ public class GatewayServer implements GatewayService, Receiver, Closeable {
 
     private static final SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
 
-    private JChannel canal;
-    private RpcDispatcher dispatcher; // ✅ Para chamar métodos nos servidores
-    private List<Address> servidoresAtivos;
-    private AtomicInteger roundRobinIndex;
+    protected JChannel canal;
+    protected RpcDispatcher dispatcher; // ✅ Para chamar métodos nos servidores
+    protected volatile List<Address> servidoresAtivos;
+    private final Balanceador balanceador =
+            Balanceador.criar(System.getProperty("gateway.balanceador", "latencia"));
+
+    // Réplicas de cada arquivo: N primeiros backends do anel a partir do nome
+    protected volatile AnelHash<Address> anel = Posicionamento.anel(List.of());
+    private final Posicionamento posicionamento = Posicionamento.doSistema();
+
+    // Cache de downloads, invalidado por escritas e avisos dos backends
+    private final CacheConteudo cache =
+            new CacheConteudo(Long.getLong("gateway.cache.bytes", 64L * 1024 * 1024));
+
+    // Sessões de upload em partes ficam presas ao servidor que as abriu;
+    // abandonadas pelo cliente expiram e são canceladas no servidor
+    private final SessoesUpload<SessaoUpload> sessoesUpload = new SessoesUpload<>("gateway-sessoes",
+            Long.getLong("gateway.upload.timeout", 10 * 60 * 1000L), this::expirarSessao);
+
+    private static class SessaoUpload {
+        final Address servidor;
+        final String nome;
+
+        SessaoUpload(Address servidor, String nome) {
+            this.servidor = servidor;
+            this.nome = nome;
+        }
+    }
 
     private String validarToken(String token) throws RemoteException {
         if (token == null || token.isEmpty()) {
@@ -48,9 +82,9 @@ public class GatewayServer implements GatewayService, Receiver, Closeable {
     }
 
     public GatewayServer() throws Exception {
-        servidoresAtivos = new ArrayList<>();
-        roundRobinIndex = new AtomicInteger(0);
+        servidoresAtivos = List.of();
 
+        MensagemCluster.registrarTipos();
         canal = new JChannel("jgroups.xml");
 
         // ✅ IMPORTANTE: Registrar ANTES de conectar
@@ -78,21 +112,21 @@ public class GatewayServer implements GatewayService, Receiver, Closeable {
     }
 
 
-    private void log(String msg) {
+    protected void log(String msg) {
         System.out.println("[GATEWAY " + sdf.format(new Date()) + "] " + msg);
     }
 
     // =========================================================================
-    //  LOAD BALANCER - Round Robin
+    //  LOAD BALANCER
     // =========================================================================
 
     private Address selecionarServidor() {
-        if (servidoresAtivos.isEmpty()) {
+        List<Address> servidores = servidoresAtivos;
+        if (servidores.isEmpty()) {
             log("❌ ERRO: Nenhum servidor disponível!");
             return null;
         }
-        int index = roundRobinIndex.getAndIncrement() % servidoresAtivos.size();
-        Address servidor = servidoresAtivos.get(index);
+        Address servidor = balanceador.selecionar(servidores);
         log("⚖️ Load Balancer → " + servidor);
         return servidor;
     }
@@ -107,23 +141,107 @@ public class GatewayServer implements GatewayService, Receiver, Closeable {
         if (servidor == null) {
             throw new RemoteException("Nenhum servidor disponível");
         }
+        return chamarMetodoRemoto(servidor, nomeMetodo, args, tipos);
+    }
+
+    /**
+     * Chama método remoto num servidor específico (sessões de upload)
+     */
+    private Object chamarMetodoRemoto(Address servidor, String nomeMetodo, Object[] args, Class[] tipos)
+            throws Exception {
 
         log("🔧 Chamando método: " + nomeMetodo + " no servidor: " + servidor);
 
         RequestOptions opts = new RequestOptions(ResponseMode.GET_FIRST, 5000);
         MethodCall call = new MethodCall(nomeMetodo, args, tipos);
 
+        boolean sucesso = false;
+        long inicio = System.nanoTime();
+        balanceador.inicioChamada(servidor);
         try {
-            return dispatcher.callRemoteMethod(servidor, call, opts);
+            Object resultado = dispatcher.callRemoteMethod(servidor, call, opts);
+            sucesso = true;
+            return resultado;
 
         } catch (Exception e) {
             Exception real = unwrap(e);
             log("❌ Erro recebido do servidor: \n" + real);
             throw real;
+        } finally {
+            balanceador.fimChamada(servidor, System.nanoTime() - inicio, sucesso);
         }
     }
 
 
+    /**
+     * Chama nas réplicas do arquivo, a primeira do anel antes (coordena as
+     * escritas e por isso sempre tem a última confirmada); as seguintes só
+     * se a anterior falhar. A ordem é a do anel, não a do balanceador:
+     * escritas no mesmo nome precisam do mesmo coordenador.
+     */
+    private Object chamarNasReplicas(String nome, String metodo, Object[] args, Class[] tipos)
+            throws Exception {
+
+        List<Address> replicas = posicionamento.donos(anel, nome);
+        if (replicas.isEmpty()) {
+            throw new RemoteException("Nenhum servidor disponível");
+        }
+
+        Exception ultimoErro = null;
+        for (Address replica : replicas) {
+            try {
+                return chamarMetodoRemoto(replica, metodo, args, tipos);
+            } catch (Exception e) {
+                if (naoRetentavel(e)) {
+                    throw new RemoteException(e.getMessage());
+                }
+                ultimoErro = e;
+                log("⚠️ Réplica " + replica + " falhou: " + e.getMessage());
+            }
+        }
+        throw new RemoteException("Falha em todas as réplicas de " + nome, ultimoErro);
+    }
+
+    /**
+     * Erro de regra do backend ([LOCAL]); "não sou dono" fica de fora: é só
+     * a view deste gateway atrasada, e a próxima réplica pode aceitar
+     */
+    private static boolean naoRetentavel(Exception e) {
+        String msg = e.getMessage();
+        return msg != null && msg.contains("[LOCAL]") && !msg.contains(Posicionamento.ERRO_NAO_DONO);
+    }
+
+    /**
+     * Réplica de onde ler: consulta a versão em R réplicas e fica com a mais
+     * nova (com W + R > N, uma delas tem a última escrita confirmada)
+     */
+    private Address replicaParaLeitura(String nome) throws Exception {
+        List<Address> replicas = posicionamento.donos(anel, nome);
+        if (replicas.isEmpty()) {
+            throw new RemoteException("Nenhum servidor disponível");
+        }
+        int r = posicionamento.leituras(replicas.size());
+        if (r <= 1) {
+            return balanceador.selecionar(replicas);
+        }
+
+        RspList<Long> versoes = dispatcher.callRemoteMethods(replicas.subList(0, r),
+                new MethodCall("versaoArquivo", new Object[]{nome}, new Class[]{String.class}),
+                new RequestOptions(ResponseMode.GET_ALL, 5000));
+
+        Address maisNova = replicas.get(0);
+        long maior = -1;
+        for (Map.Entry<Address, Rsp<Long>> e : versoes.entrySet()) {
+            Rsp<Long> rsp = e.getValue();
+            if (rsp.wasReceived() && !rsp.hasException() && rsp.getValue() != null && rsp.getValue() > maior) {
+                maior = rsp.getValue();
+                maisNova = e.getKey();
+            }
+        }
+        log("📖 Leitura de " + nome + " em " + maisNova + " (versão " + maior + ", R=" + r + ")");
+        return maisNova;
+    }
+
     /**
      * Retry automático em caso de falha
      */
@@ -143,7 +261,7 @@ public class GatewayServer implements GatewayService, Receiver, Closeable {
                     atualizarListaServidores();
                 }
 
-                if (e.getMessage().contains("[LOCAL]")) {
+                if (naoRetentavel(e)) {
                     throw new RemoteException(e.getMessage());
                 }
             }
@@ -176,82 +294,155 @@ public class GatewayServer implements GatewayService, Receiver, Closeable {
         String username = validarToken(token); // ✅ Valida token
         log("📥 LISTAR ARQUIVOS (user: " + username + ")");
 
+        // Cada backend guarda só os arquivos de que é réplica: junta as listas
         try {
-            return (List<String>) chamarComRetry(
-                    "listarArquivos",
-                    new Object[]{},
-                    new Class[]{},
-                    3
-            );
+            RspList<List<String>> listas = dispatcher.callRemoteMethods(servidoresAtivos,
+                    new MethodCall("listarArquivos", new Object[]{}, new Class[]{}),
+                    new RequestOptions(ResponseMode.GET_ALL, 5000));
+
+            Set<String> nomes = new TreeSet<>();
+            for (Rsp<List<String>> rsp : listas.values()) {
+                if (rsp.wasReceived() && !rsp.hasException() && rsp.getValue() != null) {
+                    nomes.addAll(rsp.getValue());
+                }
+            }
+            return new ArrayList<>(nomes);
         } catch (Exception e) {
             throw new RemoteException("Erro ao listar arquivos", e);
         }
     }
 
     @Override
-    public boolean upload(String nomeArquivo, byte[] conteudo) throws RemoteException {
-        log("📥 UPLOAD: " + nomeArquivo + " (" + conteudo.length + " bytes)");
+    public boolean upload(String token, String nomeArquivo, byte[] conteudo) throws RemoteException {
+        String username = validarToken(token);
+        log("📥 UPLOAD: " + nomeArquivo + " (" + conteudo.length + " bytes, user: " + username + ")");
 
         try {
-            Boolean resultado = (Boolean) chamarComRetry(
+            Boolean resultado = (Boolean) chamarNasReplicas(
+                    nomeArquivo,
                     "upload",
                     new Object[]{nomeArquivo, conteudo},
-                    new Class[]{String.class, byte[].class},
-                    3
+                    new Class[]{String.class, byte[].class}
             );
             return resultado != null && resultado;
 
         } catch (Exception e) {
             throw new RemoteException("Erro no upload", e);
+        } finally {
+            cache.invalidar(nomeArquivo);
         }
     }
 
     @Override
-    public boolean editaArquivo(String nomeArquivo, byte[] conteudo) throws RemoteException {
-        log("📥 EDITA ARQUIVO: " + nomeArquivo + " (" + conteudo.length + " bytes)");
+    public boolean editaArquivo(String token, String nomeArquivo, byte[] conteudo) throws RemoteException {
+        String username = validarToken(token);
+        log("📥 EDITA ARQUIVO: " + nomeArquivo + " (" + conteudo.length + " bytes, user: " + username + ")");
 
         try {
-            Boolean resultado = (Boolean) chamarComRetry(
+            Boolean resultado = (Boolean) chamarNasReplicas(
+                    nomeArquivo,
                     "editaArquivo",
                     new Object[]{nomeArquivo, conteudo},
-                    new Class[]{String.class, byte[].class},
-                    3
+                    new Class[]{String.class, byte[].class}
             );
             return resultado != null && resultado;
 
         } catch (Exception e) {
             throw new RemoteException("Erro no upload", e);
+        } finally {
+            cache.invalidar(nomeArquivo);
         }
     }
 
 
     @Override
-    public byte[] download(String nomeArquivo) throws RemoteException {
-        log("📥 DOWNLOAD: " + nomeArquivo);
+    public byte[] download(String token, String nomeArquivo) throws RemoteException {
+        String username = validarToken(token);
+        log("📥 DOWNLOAD: " + nomeArquivo + " (user: " + username + ")");
+
+        byte[] emCache = cache.buscar(nomeArquivo);
+        if (emCache != null) {
+            log("⚡ DOWNLOAD servido pelo cache: " + nomeArquivo);
+            return emCache;
+        }
 
         try {
-            return (byte[]) chamarComRetry(
+            long versao = cache.versao(nomeArquivo);
+            byte[] conteudo = (byte[]) chamarMetodoRemoto(
+                    replicaParaLeitura(nomeArquivo),
                     "download",
                     new Object[]{nomeArquivo},
-                    new Class[]{String.class},
-                    3
+                    new Class[]{String.class}
             );
+            if (conteudo == null) {
+                // Sem cópia replicada: pode estar guardado em fragmentos
+                conteudo = (byte[]) chamarNasReplicas(
+                        nomeArquivo,
+                        "downloadCodificado",
+                        new Object[]{nomeArquivo},
+                        new Class[]{String.class}
+                );
+            }
+            cache.guardar(nomeArquivo, versao, conteudo);
+            return conteudo;
         } catch (Exception e) {
             throw new RemoteException("Erro no download", e);
         }
     }
 
+    @Override
+    public boolean uploadCodificado(String token, String nomeArquivo, byte[] conteudo) throws RemoteException {
+        String username = validarToken(token);
+        log("📥 UPLOAD CODIFICADO: " + nomeArquivo + " (" + conteudo.length + " bytes, user: " + username + ")");
+
+        try {
+            Boolean resultado = (Boolean) chamarNasReplicas(
+                    nomeArquivo,
+                    "uploadCodificado",
+                    new Object[]{nomeArquivo, conteudo},
+                    new Class[]{String.class, byte[].class}
+            );
+            return resultado != null && resultado;
+
+        } catch (Exception e) {
+            throw new RemoteException("Erro no upload codificado", e);
+        } finally {
+            cache.invalidar(nomeArquivo);
+        }
+    }
+
+    /**
+     * Hash do sistema: SHA-256 das raízes Merkle de todos os backends, em
+     * ordem de id do nó. Cada backend guarda só os arquivos de que é dono,
+     * então a raiz de um só não diz nada do todo; o agregado muda sempre
+     * que o conteúdo de qualquer réplica muda.
+     */
     @Override
     public String getSistemaHash() throws RemoteException {
         log("📥 HASH GLOBAL");
 
         try {
-            return (String) chamarComRetry(
-                    "gerarHashLocal",
-                    new Object[]{},
-                    new Class[]{},
-                    3
-            );
+            RspList<String> raizes = dispatcher.callRemoteMethods(servidoresAtivos,
+                    new MethodCall("gerarHashLocal", new Object[]{}, new Class[]{}),
+                    new RequestOptions(ResponseMode.GET_ALL, 5000));
+
+            Map<String, String> porNo = new TreeMap<>();
+            for (Map.Entry<Address, Rsp<String>> e : raizes.entrySet()) {
+                Rsp<String> rsp = e.getValue();
+                if (!rsp.wasReceived() || rsp.hasException() || rsp.getValue() == null) {
+                    throw new RemoteException("Backend " + e.getKey() + " não respondeu o hash");
+                }
+                porNo.put(Posicionamento.idBackend(e.getKey()), rsp.getValue());
+            }
+            if (porNo.isEmpty()) {
+                throw new RemoteException("Nenhum servidor disponível");
+            }
+
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            porNo.forEach((no, raiz) -> md.update((no + "=" + raiz + "\n").getBytes(StandardCharsets.UTF_8)));
+            return HexFormat.of().formatHex(md.digest());
+        } catch (RemoteException e) {
+            throw e;
         } catch (Exception e) {
             throw new RemoteException("Erro ao gerar hash", e);
         }
@@ -279,21 +470,236 @@ public class GatewayServer implements GatewayService, Receiver, Closeable {
     }
 
     @Override
-    public boolean apagar(String nome) throws RemoteException {
-        log("📥 APAGAR ARQUIVO: " + nome);
+    public boolean apagar(String token, String nome) throws RemoteException {
+        String username = validarToken(token);
+        log("📥 APAGAR ARQUIVO: " + nome + " (user: " + username + ")");
 
         try {
-            Boolean resultado = (Boolean) chamarComRetry(
+            Boolean resultado = (Boolean) chamarNasReplicas(
+                    nome,
                     "apagar",
                     new Object[]{nome},
-                    new Class[]{String.class},
-                    3
+                    new Class[]{String.class}
             );
             return resultado != null && resultado;
 
         } catch (Exception e) {
             throw new RemoteException("Erro ao apagar arquivo", e);
+        } finally {
+            cache.invalidar(nome);
+        }
+    }
+
+    // =========================================================================
+    //  TRANSFERÊNCIA EM BLOCOS
+    // =========================================================================
+
+    @Override
+    public String iniciarUpload(String token, String nomeArquivo) throws RemoteException {
+        String username = validarToken(token);
+        log("📥 INICIAR UPLOAD EM BLOCOS: " + nomeArquivo + " (user: " + username + ")");
+
+        // A sessão fica na primeira réplica do arquivo que aceitar (coordena o upload)
+        List<Address> replicas = posicionamento.donos(anel, nomeArquivo);
+        if (replicas.isEmpty()) {
+            throw new RemoteException("Nenhum servidor disponível");
+        }
+
+        Exception ultimoErro = null;
+        for (Address servidor : replicas) {
+            try {
+                String sessao = (String) chamarMetodoRemoto(
+                        servidor,
+                        "abrirUpload",
+                        new Object[]{nomeArquivo},
+                        new Class[]{String.class}
+                );
+                sessoesUpload.abrir(sessao, new SessaoUpload(servidor, nomeArquivo));
+                return sessao;
+
+            } catch (Exception e) {
+                if (naoRetentavel(e)) {
+                    throw new RemoteException("Erro ao iniciar upload", e);
+                }
+                ultimoErro = e;
+                log("⚠️ Réplica " + servidor + " recusou o upload: " + e.getMessage());
+            }
         }
+        throw new RemoteException("Erro ao iniciar upload", ultimoErro);
+    }
+
+    @Override
+    public boolean enviarBloco(String token, String sessao, byte[] bloco) throws RemoteException {
+        validarToken(token);
+        // Cliente sem compressão: o gateway comprime o trecho até o backend
+        return encaminharBloco(sessao, Compressao.empacotar(bloco));
+    }
+
+    @Override
+    public boolean enviarBlocoComprimido(String token, String sessao, byte[] pacote) throws RemoteException {
+        validarToken(token);
+        return encaminharBloco(sessao, pacote);
+    }
+
+    private boolean encaminharBloco(String sessao, byte[] pacote) throws RemoteException {
+        try {
+            Boolean resultado = (Boolean) chamarMetodoRemoto(
+                    servidorDaSessao(sessao),
+                    "escreverBlocoComprimido",
+                    new Object[]{sessao, pacote},
+                    new Class[]{String.class, byte[].class}
+            );
+            return resultado != null && resultado;
+
+        } catch (RemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RemoteException("Erro ao enviar bloco", e);
+        }
+    }
+
+    @Override
+    public boolean concluirUpload(String token, String sessao) throws RemoteException {
+        validarToken(token);
+        log("📥 CONCLUIR UPLOAD EM BLOCOS: " + sessao);
+
+        try {
+            Boolean resultado = (Boolean) chamarMetodoRemoto(
+                    servidorDaSessao(sessao),
+                    "concluirUpload",
+                    new Object[]{sessao},
+                    new Class[]{String.class}
+            );
+            return resultado != null && resultado;
+
+        } catch (RemoteException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RemoteException("Erro ao concluir upload", e);
+        } finally {
+            SessaoUpload encerrada = sessoesUpload.remover(sessao);
+            if (encerrada != null) {
+                cache.invalidar(encerrada.nome);
+            }
+        }
+    }
+
+    @Override
+    public void cancelarUpload(String token, String sessao) throws RemoteException {
+        validarToken(token);
+        log("📥 CANCELAR UPLOAD EM BLOCOS: " + sessao);
+        SessaoUpload cancelada = sessoesUpload.remover(sessao);
+        if (cancelada == null) return;
+
+        try {
+            chamarMetodoRemoto(cancelada.servidor, "cancelarUpload", new Object[]{sessao}, new Class[]{String.class});
+        } catch (Exception e) {
+            log("⚠️ Erro ao cancelar upload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cliente sumiu no meio do upload: libera a sessão também no servidor
+     * (que de todo modo expira a dele sozinho)
+     */
+    private void expirarSessao(String sessao, SessaoUpload abandonada) {
+        log("⌛ Sessão de upload abandonada expirou: " + abandonada.nome + " - sessao=" + sessao);
+        try {
+            chamarMetodoRemoto(abandonada.servidor, "cancelarUpload", new Object[]{sessao}, new Class[]{String.class});
+        } catch (Exception e) {
+            log("⚠️ Erro ao cancelar sessão expirada: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long tamanhoArquivo(String token, String nomeArquivo) throws RemoteException {
+        validarToken(token);
+        byte[] emCache = cache.buscar(nomeArquivo);
+        if (emCache != null) {
+            return emCache.length;
+        }
+
+        try {
+            Long tamanho = (Long) chamarNasReplicas(
+                    nomeArquivo,
+                    "tamanhoArquivo",
+                    new Object[]{nomeArquivo},
+                    new Class[]{String.class}
+            );
+            return tamanho == null ? -1 : tamanho;
+
+        } catch (Exception e) {
+            throw new RemoteException("Erro ao consultar tamanho", e);
+        }
+    }
+
+    /**
+     * Sem cache (ele não guarda a versão do arquivo): o bloco sai da réplica
+     * só se ela ainda tem a versão pedida
+     */
+    @Override
+    public byte[] downloadBloco(String token, String nomeArquivo, long versao, long offset, int tamanho)
+            throws RemoteException {
+        validarToken(token);
+        byte[] pacote = buscarBlocoEmpacotado(nomeArquivo, versao, offset, tamanho);
+        return pacote == null ? null : Compressao.desempacotar(pacote);
+    }
+
+    @Override
+    public byte[] downloadBlocoComprimido(String token, String nomeArquivo, long versao, long offset, int tamanho)
+            throws RemoteException {
+        validarToken(token);
+        return buscarBlocoEmpacotado(nomeArquivo, versao, offset, tamanho);
+    }
+
+    /**
+     * Sem cache: o trecho precisa do tamanho e da versão atuais da réplica
+     */
+    @Override
+    public TrechoArquivo downloadTrecho(String token, String nomeArquivo, long offset, int tamanho)
+            throws RemoteException {
+        validarToken(token);
+        try {
+            return (TrechoArquivo) chamarNasReplicas(
+                    nomeArquivo,
+                    "lerTrecho",
+                    new Object[]{nomeArquivo, offset, tamanho},
+                    new Class[]{String.class, long.class, int.class}
+            );
+        } catch (Exception e) {
+            throw new RemoteException("Erro na leitura do trecho", e);
+        }
+    }
+
+    /**
+     * Bloco lido no backend e empacotado lá (o trecho backend → gateway já vai
+     * comprimido). null se a réplica não tem mais a versão pedida.
+     */
+    private byte[] buscarBlocoEmpacotado(String nomeArquivo, long versao, long offset, int tamanho)
+            throws RemoteException {
+        try {
+            return (byte[]) chamarNasReplicas(
+                    nomeArquivo,
+                    "lerBlocoComprimido",
+                    new Object[]{nomeArquivo, versao, offset, tamanho},
+                    new Class[]{String.class, long.class, long.class, int.class}
+            );
+        } catch (Exception e) {
+            throw new RemoteException("Erro no download do bloco", e);
+        }
+    }
+
+    @Override
+    public String getEstatisticasCache() {
+        return cache.toString();
+    }
+
+    private Address servidorDaSessao(String sessao) throws RemoteException {
+        SessaoUpload s = sessoesUpload.usar(sessao);
+        if (s == null) {
+            throw new RemoteException("Sessão de upload desconhecida ou expirada: " + sessao);
+        }
+        return s.servidor;
     }
 
     // =========================================================================
@@ -307,39 +713,42 @@ public class GatewayServer implements GatewayService, Receiver, Closeable {
 
         atualizarListaServidores();
 
-        log("🖥️  SERVIDORES DISPONÍVEIS: " + servidoresAtivos.size());
-        for (int i = 0; i < servidoresAtivos.size(); i++) {
-            log("   [" + i + "] " + servidoresAtivos.get(i));
+        List<Address> servidores = servidoresAtivos;
+        log("🖥️  SERVIDORES DISPONÍVEIS: " + servidores.size());
+        for (int i = 0; i < servidores.size(); i++) {
+            log("   [" + i + "] " + servidores.get(i));
         }
+        log("⚖️ Balanceador: " + balanceador);
         log("═══════════════════════════════════════════════");
     }
 
     private void atualizarListaServidores() {
         View view = canal.getView();
-        servidoresAtivos.clear();
 
-        // Adiciona todos exceto o próprio Gateway
-        for (Address addr : view.getMembers()) {
-            if (!addr.equals(canal.getAddress())) {
-                servidoresAtivos.add(addr);
-            }
-        }
+        // Só os backends (pelo nome lógico): este e outros gateways ficam de fora
+        List<Address> servidores = Posicionamento.backends(view.getMembers());
 
-        // Reset Round-Robin
-        roundRobinIndex.set(0);
-        if (servidoresAtivos.isEmpty()) {
+        servidoresAtivos = List.copyOf(servidores);
+        anel = Posicionamento.anel(servidores);
+        balanceador.manterApenas(servidores);
+        if (servidores.isEmpty()) {
             log("⚠️  AVISO: Nenhum servidor backend disponível!");
         }
     }
 
     @Override
     public void receive(Message msg) {
-        // Gateway não processa mensagens de replicação
+        // Gateway não processa mensagens de replicação, apenas avisos de alteração
+        MensagemCluster m = MensagemCluster.de(msg);
+        if (m != null && m.acao == MensagemCluster.Acao.ARQUIVO_ALTERADO) {
+            cache.invalidar(m.arquivo);
+        }
     }
 
     @Override
     public void close() {
         log("Encerrando Gateway...");
+        sessoesUpload.close();
         if (dispatcher != null) dispatcher.stop();
         if (canal != null) canal.close();
     }
@@ -351,7 +760,7 @@ public class GatewayServer implements GatewayService, Receiver, Closeable {
     public static void main(String[] args) {
         try {
             System.out.println("╔════════════════════════════════════════════╗");
-            System.out.println("║   GATEWAY COM LOAD BALANCER ROUND-ROBIN   ║");
+            System.out.println("║   GATEWAY COM LOAD BALANCER CONFIGURÁVEL  ║");
             System.out.println("║   RMI (Cliente) + JGroups (Servidores)    ║");
             System.out.println("╚════════════════════════════════════════════╝");
             System.out.println();
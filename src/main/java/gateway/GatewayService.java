@@ -1,24 +1,61 @@
 package gateway;
 
+import model.TrechoArquivo;
+
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
 
 public interface GatewayService extends Remote {
 
+    // Tamanho dos blocos usados na transferência em partes
+    int TAMANHO_BLOCO = 1024 * 1024;
+
     String login(String username, String password) throws RemoteException;
 
     List<String> listarArquivos(String token) throws RemoteException;
 
-    boolean upload(String nomeArquivo, byte[] conteudo) throws RemoteException;
+    boolean upload(String token, String nomeArquivo, byte[] conteudo) throws RemoteException;
 
-    byte[] download(String nomeArquivo) throws RemoteException;
+    byte[] download(String token, String nomeArquivo) throws RemoteException;
 
     String getSistemaHash() throws RemoteException;
 
     boolean criarConta(String username, String password) throws RemoteException;
 
-    boolean editaArquivo(String nomeArquivo, byte[] conteudo) throws RemoteException;
+    boolean editaArquivo(String token, String nomeArquivo, byte[] conteudo) throws RemoteException;
+
+    boolean apagar(String token, String nome) throws RemoteException;
+
+    // Transferência em blocos (memória por requisição limitada ao bloco)
+    String iniciarUpload(String token, String nomeArquivo) throws RemoteException;
+
+    boolean enviarBloco(String token, String sessao, byte[] bloco) throws RemoteException;
+
+    boolean concluirUpload(String token, String sessao) throws RemoteException;
+
+    void cancelarUpload(String token, String sessao) throws RemoteException;
+
+    long tamanhoArquivo(String token, String nomeArquivo) throws RemoteException;
+
+    // Bloco da versão dada (a de downloadTrecho no início); null se o arquivo mudou ou sumiu
+    byte[] downloadBloco(String token, String nomeArquivo, long versao, long offset, int tamanho)
+            throws RemoteException;
+
+    // Leitura de intervalo com tamanho e versão atuais do arquivo (offset negativo conta do fim);
+    // para acompanhar um arquivo que cresce, pedir de novo a partir de TrechoArquivo.getFim()
+    TrechoArquivo downloadTrecho(String token, String nomeArquivo, long offset, int tamanho) throws RemoteException;
+
+    // Idem, com blocos empacotados por model.Compressao (comprimidos quando compensa)
+    boolean enviarBlocoComprimido(String token, String sessao, byte[] pacote) throws RemoteException;
+
+    byte[] downloadBlocoComprimido(String token, String nomeArquivo, long versao, long offset, int tamanho)
+            throws RemoteException;
+
+    // Arquivo grande e frio em fragmentos Reed-Solomon (k dados + m paridade) em vez de N cópias;
+    // o download comum reconstrói quando não há cópia replicada
+    boolean uploadCodificado(String token, String nomeArquivo, byte[] conteudo) throws RemoteException;
 
-    boolean apagar(String nome)  throws RemoteException;
+    // Acertos/falhas/despejos do cache de downloads do gateway
+    String getEstatisticasCache() throws RemoteException;
 }
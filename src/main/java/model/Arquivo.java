@@ -1 +1,43 @@
-public class Arquivo {}
\ No newline at end of file
+package model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * Entrada do índice de metadados de um arquivo do nó (persistido no banco
+ * do nó). Com tamanho e mtime batendo com o disco, o digest vale sem reler
+ * o arquivo.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "arquivos")
+public class Arquivo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String nome;
+
+    @Column(nullable = false)
+    private long tamanho;
+
+    // Versão da última escrita (cresce a cada escrita no arquivo)
+    @Column(nullable = false)
+    private long versao;
+
+    // SHA-256 em hexadecimal
+    @Column(nullable = false, length = 64)
+    private String digest;
+
+    // mtime do arquivo em disco quando a entrada foi gravada
+    @Column(nullable = false)
+    private long modificado;
+
+    // Nó que coordenou a última escrita
+    private String dono;
+}
@@ -0,0 +1,158 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressão adaptativa dos corpos de arquivo (Deflate no nível mais rápido).
+ *
+ * Antes de comprimir um corpo grande, comprime algumas amostras espalhadas
+ * por ele: se elas não encolhem o suficiente (arquivo já comprimido, mídia,
+ * dados aleatórios) o corpo vai cru, pagando só o custo das amostras.
+ * Desligável com -Dapp.compressao=false.
+ */
+public final class Compressao {
+
+    public static final boolean HABILITADA = Boolean.parseBoolean(System.getProperty("app.compressao", "true"));
+
+    /** Abaixo disso o cabeçalho do Deflate come o ganho */
+    static final int TAMANHO_MINIMO = 512;
+    private static final int TAMANHO_AMOSTRA = 4096;
+    private static final int AMOSTRAS = 3;
+    /** A amostra precisa encolher pelo menos 10% */
+    private static final double RAZAO_MAXIMA = 0.9;
+
+    // Formato dos pacotes da API do gateway: 1 byte de tipo [+ int tamanho original] + dados
+    private static final byte CRU = 0;
+    private static final byte DEFLATE = 1;
+
+    private static final ThreadLocal<Deflater> DEFLATER =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<byte[]> RASCUNHO = new ThreadLocal<>();
+
+    private Compressao() {}
+
+    // =========================================================================
+    //  COMPRESSÃO
+    // =========================================================================
+
+    /**
+     * Corpo comprimido, ou null se não compensa (pequeno, amostra ruim ou
+     * resultado não menor que o original). Não altera a posição de dados.
+     */
+    public static byte[] comprimir(ByteBuffer dados) {
+        int tamanho = dados.remaining();
+        if (tamanho < TAMANHO_MINIMO || !amostraComprime(dados)) {
+            return null;
+        }
+
+        byte[] saida = rascunho(tamanho);
+        int n = deflate(dados.duplicate(), saida, tamanho);
+        return n < 0 ? null : Arrays.copyOf(saida, n);
+    }
+
+    /**
+     * Comprime amostras do início, meio e fim; corpos pequenos são testados inteiros
+     */
+    static boolean amostraComprime(ByteBuffer dados) {
+        int tamanho = dados.remaining();
+        if (tamanho <= AMOSTRAS * TAMANHO_AMOSTRA) {
+            return true; // comprimir inteiro custa o mesmo que amostrar
+        }
+
+        byte[] saida = rascunho(TAMANHO_AMOSTRA);
+        long entrada = 0;
+        long comprimido = 0;
+        for (int i = 0; i < AMOSTRAS; i++) {
+            int inicio = (int) ((long) (tamanho - TAMANHO_AMOSTRA) * i / (AMOSTRAS - 1));
+            int n = deflate(dados.slice(dados.position() + inicio, TAMANHO_AMOSTRA), saida, TAMANHO_AMOSTRA);
+            entrada += TAMANHO_AMOSTRA;
+            comprimido += n < 0 ? TAMANHO_AMOSTRA : n;
+        }
+        return comprimido <= entrada * RAZAO_MAXIMA;
+    }
+
+    /**
+     * Deflate de entrada em saida[0..limite); -1 se não couber (não comprimiu)
+     */
+    private static int deflate(ByteBuffer entrada, byte[] saida, int limite) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(entrada);
+        deflater.finish();
+
+        int n = 0;
+        while (!deflater.finished()) {
+            if (n >= limite) return -1;
+            n += deflater.deflate(saida, n, limite - n);
+        }
+        return n < limite ? n : -1;
+    }
+
+    public static byte[] descomprimir(byte[] dados, int offset, int tamanho, int tamanhoOriginal) {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(dados, offset, tamanho);
+
+        byte[] saida = new byte[tamanhoOriginal];
+        try {
+            int n = 0;
+            while (n < tamanhoOriginal && !inflater.finished()) {
+                int lidos = inflater.inflate(saida, n, tamanhoOriginal - n);
+                if (lidos == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += lidos;
+            }
+            if (n != tamanhoOriginal) {
+                throw new IllegalArgumentException("corpo comprimido truncado: " + n + "/" + tamanhoOriginal);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("corpo comprimido inválido", e);
+        }
+        return saida;
+    }
+
+    private static byte[] rascunho(int tamanho) {
+        byte[] r = RASCUNHO.get();
+        if (r == null || r.length < tamanho) {
+            r = new byte[tamanho];
+            RASCUNHO.set(r);
+        }
+        return r;
+    }
+
+    // =========================================================================
+    //  PACOTES (API DO GATEWAY)
+    // =========================================================================
+
+    /**
+     * Bloco pronto para a API: comprimido quando compensa, senão cru com um byte de tipo
+     */
+    public static byte[] empacotar(byte[] dados) {
+        byte[] z = HABILITADA ? comprimir(ByteBuffer.wrap(dados)) : null;
+        if (z == null) {
+            byte[] pacote = new byte[1 + dados.length];
+            pacote[0] = CRU;
+            System.arraycopy(dados, 0, pacote, 1, dados.length);
+            return pacote;
+        }
+
+        byte[] pacote = new byte[5 + z.length];
+        ByteBuffer.wrap(pacote).put(DEFLATE).putInt(dados.length).put(z);
+        return pacote;
+    }
+
+    public static byte[] desempacotar(byte[] pacote) {
+        if (pacote.length == 0) {
+            throw new IllegalArgumentException("pacote vazio");
+        }
+        return switch (pacote[0]) {
+            case CRU -> Arrays.copyOfRange(pacote, 1, pacote.length);
+            case DEFLATE -> descomprimir(pacote, 5, pacote.length - 5, ByteBuffer.wrap(pacote, 1, 4).getInt());
+            default -> throw new IllegalArgumentException("tipo de pacote desconhecido: " + pacote[0]);
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/**
+ * Arquivo apagado no nó (persistido no banco do nó): a versão do
+ * apagamento impede que o anti-entropia ressuscite uma cópia mais velha,
+ * inclusive depois de um reinício.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "lapides")
+public class Lapide implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String nome;
+
+    // Versão em que o arquivo foi apagado
+    @Column(nullable = false)
+    private long versao;
+
+    // Quando foi apagado neste nó (relógio local): conta o prazo da lápide.
+    // 0 nas lápides gravadas antes desta coluna.
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long apagadoEm;
+}
@@ -0,0 +1,52 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * Trecho [offset, offset + dados.length) de um arquivo, com o tamanho e a
+ * versão da mesma versão confirmada de onde os bytes foram lidos. Quem
+ * acompanha um arquivo que cresce pede o próximo trecho a partir de getFim().
+ */
+public class TrechoArquivo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long offset;
+    private final byte[] dados;
+    private final long tamanhoArquivo;
+    private final long versao;
+
+    public TrechoArquivo(long offset, byte[] dados, long tamanhoArquivo, long versao) {
+        this.offset = offset;
+        this.dados = dados;
+        this.tamanhoArquivo = tamanhoArquivo;
+        this.versao = versao;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public byte[] getDados() {
+        return dados;
+    }
+
+    public long getTamanhoArquivo() {
+        return tamanhoArquivo;
+    }
+
+    public long getVersao() {
+        return versao;
+    }
+
+    /**
+     * Offset logo após o trecho
+     */
+    public long getFim() {
+        return offset + dados.length;
+    }
+
+    public boolean isNoFim() {
+        return getFim() >= tamanhoArquivo;
+    }
+}
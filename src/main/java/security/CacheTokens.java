@@ -0,0 +1,84 @@
+package security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache de tokens já verificados, indexado pelo SHA-256 do token.
+ * Cada entrada expira junto com o "exp" do próprio token.
+ */
+public class CacheTokens {
+
+    private static class Entrada {
+        final String username;
+        final long expiraEm;
+
+        Entrada(String username, long expiraEm) {
+            this.username = username;
+            this.expiraEm = expiraEm;
+        }
+    }
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final int capacidade;
+    private final Map<String, Entrada> entradas = new ConcurrentHashMap<>();
+
+    public CacheTokens(int capacidade) {
+        this.capacidade = capacidade;
+    }
+
+    /**
+     * Retorna o username se o token já foi verificado e não expirou
+     */
+    public String buscar(String token) {
+        String chave = chave(token);
+        Entrada e = entradas.get(chave);
+        if (e == null) return null;
+
+        if (e.expiraEm <= System.currentTimeMillis()) {
+            entradas.remove(chave);
+            return null;
+        }
+        return e.username;
+    }
+
+    public void guardar(String token, String username, long expiraEm) {
+        if (entradas.size() >= capacidade) {
+            liberarEspaco();
+        }
+        entradas.put(chave(token), new Entrada(username, expiraEm));
+    }
+
+    public int tamanho() {
+        return entradas.size();
+    }
+
+    private void liberarEspaco() {
+        long agora = System.currentTimeMillis();
+        entradas.values().removeIf(e -> e.expiraEm <= agora);
+
+        // Ainda cheio: descarta entradas quaisquer (serão verificadas de novo)
+        Iterator<String> it = entradas.keySet().iterator();
+        while (entradas.size() >= capacidade && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static String chave(String token) {
+        byte[] digest = SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest);
+    }
+}
@@ -18,6 +18,14 @@ public class JwtUtil {
     // Tempo do token (30 minutos)
     private static final long EXPIRATION = 1000 * 60 * 30;
 
+    // Parser é thread-safe: construído uma única vez
+    private static final JwtParser PARSER = Jwts.parserBuilder()
+            .setSigningKey(SECRET_KEY)
+            .build();
+
+    // Tokens já verificados (evita refazer o HMAC a cada requisição)
+    private static final CacheTokens CACHE = new CacheTokens(10_000);
+
     // Gerar token
     public static String gerarToken(String username) {
         return Jwts.builder()
@@ -28,27 +36,26 @@ public class JwtUtil {
                 .compact();
     }
 
-    // Validar token
+    // Validar token (assinatura verificada só na primeira vez)
     public static String validarToken(String token) throws Exception {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        String username = CACHE.buscar(token);
+        if (username != null) {
+            return username;
+        }
+
+        Claims claims = PARSER.parseClaimsJws(token).getBody();
 
         if (claims.getExpiration().before(new Date())) {
             throw new Exception("Token expirado");
         }
 
+        CACHE.guardar(token, claims.getSubject(), claims.getExpiration().getTime());
         return claims.getSubject();
     }
 
     // Extrair username
     public static String extrairUsername(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)
-                .build()
-                .parseClaimsJws(token)
+        return PARSER.parseClaimsJws(token)
                 .getBody()
                 .getSubject();
     }
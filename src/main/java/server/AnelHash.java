@@ -0,0 +1,76 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Anel de hash consistente (imutável) sobre os membros de uma view.
+ * Cada membro ocupa vários pontos virtuais para distribuir a carga de forma
+ * uniforme; quando um membro entra ou sai, só as chaves vizinhas a ele
+ * mudam de dono.
+ */
+public class AnelHash<T> {
+
+    private final TreeMap<Long, T> pontos = new TreeMap<>();
+    private final int totalMembros;
+
+    public AnelHash(Collection<T> membros, int virtuais, Function<T, String> nome) {
+        for (T membro : membros) {
+            for (int i = 0; i < virtuais; i++) {
+                pontos.put(hash(nome.apply(membro) + "#" + i), membro);
+            }
+        }
+        this.totalMembros = membros.size();
+    }
+
+    /**
+     * Primeiro membro no sentido horário a partir do hash da chave
+     */
+    public T dono(String chave) {
+        if (pontos.isEmpty()) return null;
+
+        Map.Entry<Long, T> e = pontos.ceilingEntry(hash(chave));
+        return e != null ? e.getValue() : pontos.firstEntry().getValue();
+    }
+
+    /**
+     * Os n primeiros membros distintos no sentido horário (réplicas da chave)
+     */
+    public List<T> donos(String chave, int n) {
+        List<T> resultado = new ArrayList<>();
+        if (pontos.isEmpty()) return resultado;
+
+        int limite = Math.min(n, totalMembros);
+        long h = hash(chave);
+        coletar(pontos.tailMap(h, true).values(), resultado, limite);
+        coletar(pontos.headMap(h, false).values(), resultado, limite);
+        return resultado;
+    }
+
+    private static <T> void coletar(Collection<T> membros, List<T> resultado, int limite) {
+        for (T membro : membros) {
+            if (resultado.size() >= limite) return;
+            if (!resultado.contains(membro)) {
+                resultado.add(membro);
+            }
+        }
+    }
+
+    /**
+     * FNV-1a de 64 bits seguido do finalizador do MurmurHash3
+     */
+    static long hash(String chave) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : chave.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,350 @@
+package server;
+
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reparo em segundo plano entre réplicas.
+ *
+ * A cada rodada o nó escolhe um par ao acaso e desce as duas árvores de
+ * Merkle juntas, nível a nível, só pelos ramos diferentes. Nos baldes
+ * divergentes compara (digest, versão) arquivo a arquivo: vale a escrita
+ * mais nova (last-writer-wins, apagamentos inclusos via lápide). O nó só
+ * puxa ou apaga a própria cópia; se a dele é a mais nova, o par corrige a
+ * dele quando fizer a sua rodada.
+ */
+public class AntiEntropia implements Closeable {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final int MAX_BALDES_POR_RODADA = 256;
+    private static final int MAX_ARQUIVOS_POR_RODADA = 1000;
+
+    /**
+     * Estado de um nome numa réplica; digest == null é uma lápide (apagado)
+     */
+    public static class Entrada {
+        public final String nome;
+        public final String digest;
+        public final long versao;
+
+        public Entrada(String nome, String digest, long versao) {
+            this.nome = nome;
+            this.digest = digest;
+            this.versao = versao;
+        }
+
+        /**
+         * Ordem total das escritas: versão, e no empate o digest (lápide por último)
+         */
+        boolean maisNovaQue(Entrada outra) {
+            if (versao != outra.versao) return versao > outra.versao;
+            if (digest == null || outra.digest == null) return digest == null && outra.digest != null;
+            return digest.compareTo(outra.digest) > 0;
+        }
+    }
+
+    /**
+     * O que o nó local precisa fazer para alcançar o par
+     */
+    public static class Decisao {
+        public final List<String> buscar = new ArrayList<>();
+        public final List<Entrada> apagar = new ArrayList<>();
+    }
+
+    /**
+     * Operações da réplica usadas pelo anti-entropia
+     */
+    public interface Replica {
+        ArvoreMerkle arvore();
+
+        /** Arquivos e lápides do balde */
+        List<Entrada> entradasBalde(int balde);
+
+        /** Puxa o arquivo do par (com limite de banda) */
+        boolean buscar(Address par, String nome);
+
+        /** Apaga a cópia local, deixando lápide com a versão dada */
+        void apagar(String nome, long versao);
+
+        List<Address> pares();
+
+        /** Sincronização de entrada em andamento: pula a rodada */
+        boolean ocupado();
+
+        /** Chamado ao fim de cada rodada (ex.: expirar lápides antigas) */
+        void aposRodada();
+    }
+
+    private final JChannel canal;
+    private final Replica replica;
+    private final Consumer<String> log;
+    private final Map<String, CompletableFuture<byte[]>> pendentes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService agendador;
+
+    /**
+     * @param intervaloMs intervalo entre rodadas; zero ou negativo desliga as rodadas automáticas
+     */
+    public AntiEntropia(JChannel canal, Replica replica, long intervaloMs, Consumer<String> log) {
+        this.canal = canal;
+        this.replica = replica;
+        this.log = log;
+        this.agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "anti-entropia");
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (intervaloMs > 0) {
+            agendador.scheduleWithFixedDelay(this::rodadaSegura, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rodadaSegura() {
+        try {
+            rodada();
+        } catch (Exception e) {
+            log.accept("⚠️ Anti-entropia: rodada falhou: " + e.getMessage());
+        } finally {
+            replica.aposRodada();
+        }
+    }
+
+    // =========================================================================
+    //  RODADA (LADO QUE INICIA)
+    // =========================================================================
+
+    void rodada() throws Exception {
+        if (replica.ocupado()) return;
+
+        List<Address> pares = replica.pares();
+        if (pares.isEmpty()) return;
+        Address par = pares.get(ThreadLocalRandom.current().nextInt(pares.size()));
+
+        ArvoreMerkle arvore = replica.arvore();
+        int baldes = arvore.getBaldes();
+
+        // Desce pelos ramos diferentes até as folhas
+        List<Integer> fronteira = List.of(1);
+        List<Integer> diferentes;
+        while (true) {
+            byte[][] remotos = pedirNos(par, fronteira, baldes);
+            diferentes = new ArrayList<>();
+            for (int i = 0; i < fronteira.size(); i++) {
+                if (!Arrays.equals(arvore.no(fronteira.get(i)), remotos[i])) {
+                    diferentes.add(fronteira.get(i));
+                }
+            }
+            if (diferentes.isEmpty()) return; // em dia com o par
+            if (diferentes.get(0) >= baldes) break;
+
+            fronteira = new ArrayList<>();
+            for (int i : diferentes) {
+                fronteira.add(2 * i);
+                fronteira.add(2 * i + 1);
+            }
+        }
+
+        List<Integer> folhas = new ArrayList<>();
+        for (int i = 0; i < diferentes.size() && i < MAX_BALDES_POR_RODADA; i++) {
+            folhas.add(diferentes.get(i) - baldes);
+        }
+
+        List<Entrada> remotas = pedirBaldes(par, folhas);
+        List<Entrada> locais = new ArrayList<>();
+        for (int b : folhas) {
+            locais.addAll(replica.entradasBalde(b));
+        }
+
+        Decisao decisao = comparar(locais, remotas);
+        for (Entrada e : decisao.apagar) {
+            replica.apagar(e.nome, e.versao);
+        }
+
+        int buscados = 0;
+        for (String nome : decisao.buscar) {
+            if (buscados >= MAX_ARQUIVOS_POR_RODADA) break;
+            if (replica.buscar(par, nome)) buscados++;
+        }
+
+        log.accept("🩹 Anti-entropia com " + par + ": " + folhas.size() + " baldes divergentes, " +
+                buscados + "/" + decisao.buscar.size() + " arquivos buscados, " + decisao.apagar.size() + " apagados");
+    }
+
+    /**
+     * Compara as entradas locais com as do par: busca o que o par tem mais
+     * novo, apaga o que o par apagou depois da nossa última escrita
+     */
+    public static Decisao comparar(List<Entrada> locais, List<Entrada> remotas) {
+        Map<String, Entrada> porNome = new HashMap<>();
+        for (Entrada e : locais) {
+            porNome.put(e.nome, e);
+        }
+
+        Decisao decisao = new Decisao();
+        for (Entrada remota : remotas) {
+            Entrada local = porNome.get(remota.nome);
+
+            if (local == null) {
+                if (remota.digest != null) decisao.buscar.add(remota.nome);
+            } else if (remota.maisNovaQue(local)) {
+                if (remota.digest == null) {
+                    if (local.digest != null) decisao.apagar.add(remota);
+                } else if (!remota.digest.equals(local.digest)) {
+                    decisao.buscar.add(remota.nome);
+                }
+            }
+        }
+        return decisao;
+    }
+
+    // =========================================================================
+    //  PEDIDOS AO PAR
+    // =========================================================================
+
+    private byte[][] pedirNos(Address par, List<Integer> indices, int baldes) throws Exception {
+        DataInputStream in = pedir(par, MensagemCluster.Acao.AE_PEDIDO_NOS, escreverIndices(indices));
+        int baldesRemotos = in.readInt();
+        if (baldesRemotos != baldes) {
+            throw new IOException("par usa " + baldesRemotos + " baldes, este nó usa " + baldes);
+        }
+
+        byte[][] hashes = new byte[in.readInt()][];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = new byte[in.readUnsignedByte()];
+            in.readFully(hashes[i]);
+        }
+        return hashes;
+    }
+
+    private List<Entrada> pedirBaldes(Address par, List<Integer> baldes) throws Exception {
+        return lerEntradas(pedir(par, MensagemCluster.Acao.AE_PEDIDO_BALDES, escreverIndices(baldes)));
+    }
+
+    private DataInputStream pedir(Address par, MensagemCluster.Acao acao, byte[] corpo) throws Exception {
+        String sessao = UUID.randomUUID().toString();
+        CompletableFuture<byte[]> resposta = new CompletableFuture<>();
+        pendentes.put(sessao, resposta);
+        try {
+            canal.send(MensagemCluster.antiEntropia(acao, sessao, corpo).paraMensagem(par));
+            return new DataInputStream(new ByteArrayInputStream(resposta.get(TIMEOUT_MS, TimeUnit.MILLISECONDS)));
+        } finally {
+            pendentes.remove(sessao);
+        }
+    }
+
+    // =========================================================================
+    //  MENSAGENS RECEBIDAS
+    // =========================================================================
+
+    public void processar(Address origem, MensagemCluster m) {
+        try {
+            switch (m.acao) {
+                case AE_PEDIDO_NOS -> responder(origem, MensagemCluster.Acao.AE_NOS, m.uploadId,
+                        escreverNos(lerIndices(m.conteudo)));
+                case AE_PEDIDO_BALDES -> responder(origem, MensagemCluster.Acao.AE_BALDES, m.uploadId,
+                        escreverBaldes(lerIndices(m.conteudo)));
+                case AE_NOS, AE_BALDES -> {
+                    CompletableFuture<byte[]> resposta = pendentes.get(m.uploadId);
+                    if (resposta != null) resposta.complete(m.conteudo);
+                }
+                default -> {}
+            }
+        } catch (Exception e) {
+            log.accept("⚠️ Anti-entropia: erro ao processar " + m.acao + ": " + e.getMessage());
+        }
+    }
+
+    private void responder(Address destino, MensagemCluster.Acao acao, String sessao, byte[] corpo) throws Exception {
+        canal.send(MensagemCluster.antiEntropia(acao, sessao, corpo).paraMensagem(destino));
+    }
+
+    private byte[] escreverNos(List<Integer> indices) throws IOException {
+        ArvoreMerkle arvore = replica.arvore();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(arvore.getBaldes());
+        out.writeInt(indices.size());
+        for (int i : indices) {
+            byte[] hash = (i >= 1 && i < 2 * arvore.getBaldes()) ? arvore.no(i) : new byte[0];
+            out.writeByte(hash.length);
+            out.write(hash);
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] escreverBaldes(List<Integer> baldes) throws IOException {
+        List<Entrada> entradas = new ArrayList<>();
+        for (int b : baldes) {
+            if (b >= 0 && b < replica.arvore().getBaldes()) {
+                entradas.addAll(replica.entradasBalde(b));
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(entradas.size());
+        for (Entrada e : entradas) {
+            out.writeUTF(e.nome);
+            out.writeBoolean(e.digest != null);
+            if (e.digest != null) out.writeUTF(e.digest);
+            out.writeLong(e.versao);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Entrada> lerEntradas(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<Entrada> entradas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String nome = in.readUTF();
+            String digest = in.readBoolean() ? in.readUTF() : null;
+            entradas.add(new Entrada(nome, digest, in.readLong()));
+        }
+        return entradas;
+    }
+
+    private static byte[] escreverIndices(List<Integer> indices) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(indices.size());
+        for (int i : indices) {
+            out.writeInt(i);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Integer> lerIndices(byte[] corpo) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(corpo));
+        int n = in.readInt();
+        List<Integer> indices = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            indices.add(in.readInt());
+        }
+        return indices;
+    }
+
+    @Override
+    public void close() {
+        agendador.shutdownNow();
+    }
+}
@@ -0,0 +1,140 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Árvore de Merkle sobre os digests dos arquivos, atualizada a cada escrita.
+ *
+ * Os nomes são distribuídos por hash em um número fixo de baldes (folhas);
+ * a árvore binária sobre as folhas fica num array (raiz no índice 1, filhos
+ * de i em 2i e 2i+1). Atualizar um arquivo recalcula só o seu balde e o
+ * caminho até a raiz; ler a raiz é O(1). Dois nós descem juntos a partir
+ * da raiz, só pelos ramos diferentes, até os baldes divergentes.
+ */
+public class ArvoreMerkle {
+
+    private static final byte[] VAZIO = new byte[32];
+
+    private final int baldes;
+    private final byte[][] nos;
+    private final TreeMap<String, byte[]>[] conteudo;
+
+    /**
+     * @param baldes número de folhas (arredondado para potência de 2)
+     */
+    @SuppressWarnings("unchecked")
+    public ArvoreMerkle(int baldes) {
+        this.baldes = Integer.highestOneBit(Math.max(1, baldes - 1)) << 1;
+        this.nos = new byte[2 * this.baldes][];
+        this.conteudo = new TreeMap[this.baldes];
+        Arrays.fill(nos, VAZIO);
+    }
+
+    public int getBaldes() {
+        return baldes;
+    }
+
+    public int balde(String nome) {
+        return (int) Math.floorMod(AnelHash.hash(nome), (long) baldes);
+    }
+
+    // =========================================================================
+    //  ATUALIZAÇÃO
+    // =========================================================================
+
+    public synchronized void atualizar(String nome, byte[] digest) {
+        int b = balde(nome);
+        if (conteudo[b] == null) {
+            conteudo[b] = new TreeMap<>();
+        }
+        byte[] anterior = conteudo[b].put(nome, digest);
+        if (anterior == null || !Arrays.equals(anterior, digest)) {
+            recalcular(b);
+        }
+    }
+
+    public synchronized void remover(String nome) {
+        int b = balde(nome);
+        if (conteudo[b] != null && conteudo[b].remove(nome) != null) {
+            if (conteudo[b].isEmpty()) {
+                conteudo[b] = null;
+            }
+            recalcular(b);
+        }
+    }
+
+    private void recalcular(int b) {
+        int i = baldes + b;
+        nos[i] = hashBalde(conteudo[b]);
+
+        for (i >>= 1; i >= 1; i >>= 1) {
+            byte[] esq = nos[2 * i];
+            byte[] dir = nos[2 * i + 1];
+            nos[i] = (esq == VAZIO && dir == VAZIO) ? VAZIO : sha256(esq, dir);
+        }
+    }
+
+    private static byte[] hashBalde(TreeMap<String, byte[]> arquivos) {
+        if (arquivos == null || arquivos.isEmpty()) {
+            return VAZIO;
+        }
+        MessageDigest md = novoDigest();
+        for (Map.Entry<String, byte[]> e : arquivos.entrySet()) {
+            md.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(e.getValue());
+        }
+        return md.digest();
+    }
+
+    // =========================================================================
+    //  CONSULTA
+    // =========================================================================
+
+    public synchronized byte[] raiz() {
+        return nos[1];
+    }
+
+    public String raizHex() {
+        return HexFormat.of().formatHex(raiz());
+    }
+
+    /**
+     * Hash do nó no índice do array (1 = raiz, [baldes, 2*baldes) = folhas)
+     */
+    public synchronized byte[] no(int indice) {
+        return nos[indice];
+    }
+
+    /**
+     * Cópia dos (nome, digest) de um balde
+     */
+    public synchronized Map<String, byte[]> conteudoBalde(int balde) {
+        return conteudo[balde] == null ? new TreeMap<>() : new TreeMap<>(conteudo[balde]);
+    }
+
+    // =========================================================================
+    //  SHA-256
+    // =========================================================================
+
+    static MessageDigest novoDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] a, byte[] b) {
+        MessageDigest md = novoDigest();
+        md.update(a);
+        md.update(b);
+        return md.digest();
+    }
+}
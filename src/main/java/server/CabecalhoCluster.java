@@ -0,0 +1,58 @@
+package server;
+
+import org.jgroups.Header;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Cabeçalho de uma BytesMessage do cluster: leva os campos da
+ * MensagemCluster, enquanto o conteúdo do arquivo vai no corpo da
+ * mensagem sem ser copiado para um buffer de serialização.
+ */
+public class CabecalhoCluster extends Header {
+
+    /** Id sob o qual o cabeçalho é guardado na mensagem (fora da faixa dos protocolos) */
+    public static final short ID = 2000;
+
+    MensagemCluster mensagem;
+
+    public CabecalhoCluster() {}
+
+    CabecalhoCluster(MensagemCluster mensagem) {
+        this.mensagem = mensagem;
+    }
+
+    @Override
+    public short getMagicId() {
+        return MensagemCluster.MAGIC_CABECALHO;
+    }
+
+    @Override
+    public Supplier<? extends Header> create() {
+        return CabecalhoCluster::new;
+    }
+
+    @Override
+    public int serializedSize() {
+        return mensagem.tamanhoSerializado(false);
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        mensagem.escrever(out, false);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        mensagem = new MensagemCluster();
+        mensagem.ler(in);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(mensagem);
+    }
+}
@@ -0,0 +1,140 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache LRU dos arquivos quentes do nó, mapeados em memória (fora do heap).
+ *
+ * Mesmo esquema de versões do cache do gateway: cada invalidação incrementa
+ * a versão do nome e um mapeamento só entra se a versão não mudou desde
+ * antes de abrir o arquivo.
+ *
+ * O limite em bytes é flexível: conta só os mapeamentos em cache. Um
+ * despejado ou invalidado sai da conta na hora, mas só é desfeito quando o
+ * GC coleta o buffer (e as visões que leitores ainda seguram); até lá o
+ * espaço de endereços e o page cache continuam ocupados.
+ */
+public class CacheMapeados {
+
+    private static class Entrada {
+        final long versao;
+        final ByteBuffer mapa;
+
+        Entrada(long versao, ByteBuffer mapa) {
+            this.versao = versao;
+            this.mapa = mapa;
+        }
+    }
+
+    private final long capacidadeBytes;
+    private final long tamanhoMaxEntrada;
+    private long bytesUsados = 0;
+
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    // Versões por faixa de hash do nome, não por nome: memória fixa mesmo com
+    // milhões de nomes já vistos. Nomes na mesma faixa só perdem acertos.
+    private static final int FAIXAS_VERSAO = 1 << 14;
+    private final AtomicLongArray versoes = new AtomicLongArray(FAIXAS_VERSAO);
+
+    private final AtomicLong acertos = new AtomicLong();
+    private final AtomicLong falhas = new AtomicLong();
+    private final AtomicLong despejos = new AtomicLong();
+
+    public CacheMapeados(long capacidadeBytes) {
+        this.capacidadeBytes = capacidadeBytes;
+        this.tamanhoMaxEntrada = Math.min(Integer.MAX_VALUE, capacidadeBytes / 4);
+    }
+
+    /**
+     * Versão atual do nome; deve ser lida ANTES de abrir o arquivo
+     */
+    public long versao(String nome) {
+        return versoes.get(faixa(nome));
+    }
+
+    private static int faixa(String nome) {
+        int h = nome.hashCode();
+        return (h ^ (h >>> 16)) & (FAIXAS_VERSAO - 1);
+    }
+
+    /**
+     * Arquivo grande demais fica fora (seria mapeado e despejado a cada leitura)
+     */
+    public boolean cabe(long tamanho) {
+        return tamanho <= tamanhoMaxEntrada;
+    }
+
+    /**
+     * Visão própria (posição e limite independentes) do mapeamento, ou null
+     */
+    public synchronized ByteBuffer buscar(String nome) {
+        Entrada e = entradas.get(nome);
+        if (e == null || e.versao != versao(nome)) {
+            if (e != null) {
+                // Invalidada por outro nome da mesma faixa
+                entradas.remove(nome);
+                bytesUsados -= e.mapa.capacity();
+            }
+            falhas.incrementAndGet();
+            return null;
+        }
+        acertos.incrementAndGet();
+        return e.mapa.duplicate();
+    }
+
+    public synchronized void guardar(String nome, long versao, ByteBuffer mapa) {
+        if (!cabe(mapa.capacity()) || versao != versao(nome)) {
+            return;
+        }
+
+        Entrada anterior = entradas.put(nome, new Entrada(versao, mapa));
+        if (anterior != null) {
+            bytesUsados -= anterior.mapa.capacity();
+        }
+        bytesUsados += mapa.capacity();
+
+        Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator();
+        while (bytesUsados > capacidadeBytes && it.hasNext()) {
+            Map.Entry<String, Entrada> maisAntigo = it.next();
+            bytesUsados -= maisAntigo.getValue().mapa.capacity();
+            it.remove();
+            despejos.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidar(String nome) {
+        versoes.incrementAndGet(faixa(nome));
+        Entrada removida = entradas.remove(nome);
+        if (removida != null) {
+            bytesUsados -= removida.mapa.capacity();
+        }
+    }
+
+    public long getAcertos() {
+        return acertos.get();
+    }
+
+    public long getDespejos() {
+        return despejos.get();
+    }
+
+    public synchronized long getBytesUsados() {
+        return bytesUsados;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CacheMapeados{" +
+                "acertos=" + acertos.get() +
+                ", falhas=" + falhas.get() +
+                ", despejos=" + despejos.get() +
+                ", entradas=" + entradas.size() +
+                ", bytes=" + bytesUsados + "/" + capacidadeBytes +
+                '}';
+    }
+}
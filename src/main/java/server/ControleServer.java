@@ -1,17 +1,32 @@
 package server;
 
+import model.Arquivo;
+import model.Compressao;
+import model.Lapide;
+import model.TrechoArquivo;
 import model.Usuario;
 import org.jgroups.*;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.RequestOptions;
+import org.jgroups.blocks.ResponseMode;
 import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.util.Rsp;
+import org.jgroups.util.RspList;
 import org.jgroups.util.Util;
 import security.JwtUtil;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
 
 public class ControleServer implements Receiver, Closeable {
 
@@ -19,41 +34,177 @@ public class ControleServer implements Receiver, Closeable {
     private static final String RPC_CLUSTER = "FileServerRPC";
     private static final SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss");
 
+    // Tamanho dos blocos replicados no cluster e limite de uma leitura em bloco
+    private static final int TAMANHO_BLOCO_CLUSTER = 256 * 1024;
+    private static final int JANELA_MAPA = 256 * TAMANHO_BLOCO_CLUSTER; // 64 MB mapeados por vez
+    private static final int TAMANHO_MAX_LEITURA = 4 * 1024 * 1024;
+
+    private static final long TIMEOUT_QUORUM_MS = 15000;
+    private static final long TIMEOUT_TRANSACAO_MS = 5000;
+    private static final long TIMEOUT_LOCK_MS = 30000;
+    private static final long TIMEOUT_CATCHUP_MS = 10000;
+    private static final long TIMEOUT_FRAGMENTO_MS = 15000;
+
+    private static final int THREADS_APLICACAO =
+            Integer.getInteger("app.aplicacao.threads", Runtime.getRuntime().availableProcessors());
+    private static final int FILA_APLICACAO = Integer.getInteger("app.aplicacao.fila", 1024);
+
     protected JChannel canalCluster;
     protected JChannel canalRPC;
     protected RpcDispatcher dispatcher;
     protected DadosServer dados;
+    protected IdentidadeNo no;
+
+    // Escritas entregues pelo cluster, numeradas (catch-up incremental após reinício)
+    protected RegistroAlteracoes registro;
+    private final CompletableFuture<MensagemCluster> respostaCatchup = new CompletableFuture<>();
+
+    private final Map<String, MetaArquivo> metadata = new ConcurrentHashMap<>();
+
+    // Lápides: versão e hora em que cada arquivo foi apagado (persistidas; app.antientropia.lapide.ttl
+    // depois do apagamento, saem quando todos os donos do nome o confirmam)
+    private final Map<String, Lapide> lapides = new ConcurrentHashMap<>();
+    private static final long TTL_LAPIDE_MS = Long.getLong("app.antientropia.lapide.ttl", 24 * 3600 * 1000L);
+
+    // Reparo em segundo plano entre réplicas, com banda limitada (bytes/s)
+    protected AntiEntropia antiEntropia;
+    private final LimitadorBanda banda = new LimitadorBanda(Long.getLong("app.antientropia.banda", 4 * 1024 * 1024));
+
+    // Digests de todos os arquivos; a raiz é o hash do nó (gerarHashLocal)
+    private final ArvoreMerkle arvore = new ArvoreMerkle(Integer.getInteger("app.merkle.baldes", 1024));
+
+    // SHA-256 ainda não finalizado dos arquivos escritos por último, para um
+    // append continuar o digest em O(delta) em vez de reler o arquivo
+    private static final int ESTADOS_DIGEST = Integer.getInteger("app.merkle.estados", 4096);
+    private final Map<String, EstadoDigest> estadosDigest = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, EstadoDigest> mais) {
+                    return size() > ESTADOS_DIGEST;
+                }
+            });
+
+    private static class EstadoDigest {
+        final long tamanho;
+        final MessageDigest md;
+
+        EstadoDigest(long tamanho, MessageDigest md) {
+            this.tamanho = tamanho;
+            this.md = md;
+        }
+    }
+    protected GerenciadorLocks locks;
+
+    // Aplicação das escritas replicadas: mesma chave em ordem, chaves distintas em paralelo
+    private final ExecutorListrado aplicacao =
+            new ExecutorListrado("aplicacao", THREADS_APLICACAO, FILA_APLICACAO, this::log);
+
+    // Envio de arquivos pedidos por novos membros (fora da thread de entrega)
+    private final ExecutorListrado envioEstado = new ExecutorListrado("envio-estado", 2, 1024, this::log);
+
+    // Sincronização pós-estado: arquivos pedidos ao doador e arquivos alterados
+    // pela replicação enquanto isso (a cópia do doador não pode sobrescrevê-los)
+    private final Map<String, CompletableFuture<Boolean>> transferencias = new ConcurrentHashMap<>();
+    private final Set<String> transferenciasSegundoPlano = ConcurrentHashMap.newKeySet();
+    private final Set<String> alteradosNaSincronizacao = ConcurrentHashMap.newKeySet();
+    private volatile boolean sincronizando = false;
+    private volatile Manifesto manifestoRecebido;
+
+    // Hash consistente dos nomes sobre a view: dono de cada lock e as N réplicas de cada arquivo
+    private volatile AnelHash<Address> anel = new AnelHash<>(List.of(), 0, Address::toString);
+    private final Posicionamento posicionamento = Posicionamento.doSistema();
+
+    // Commits entregues antes dos últimos blocos (blocos vão por unicast, o commit por multicast)
+    private final Map<String, MensagemCluster> commitsPendentes = new ConcurrentHashMap<>();
+
+    // Escritas preparadas nesta réplica à espera do resultado do quorum: só o
+    // PUBLICAR as torna visíveis, o rollback apenas as descarta
+    private final Map<String, EscritaPreparada> preparadas = new ConcurrentHashMap<>();
+    // PUBLICAR entregue antes de a réplica terminar de preparar (blocos atrasados)
+    private final Set<String> publicacoesAntecipadas = ConcurrentHashMap.newKeySet();
+    private static final long RETENCAO_PREPARADA_MS = 4 * TIMEOUT_QUORUM_MS;
+
+    private static class EscritaPreparada {
+        final String nome;
+        final long criada = System.currentTimeMillis();
+        final Runnable publicar;
+        final Runnable descartar;
+
+        EscritaPreparada(String nome, Runnable publicar, Runnable descartar) {
+            this.nome = nome;
+            this.publicar = publicar;
+            this.descartar = descartar;
+        }
+    }
+
+    // Escritas de outros donos sobre um arquivo de que este nó guarda cópia
+    // velha (não é mais réplica dele): aguardam o PUBLICAR, por uploadId
+    private final Map<String, EscritaAlheia> escritasAlheias = new ConcurrentHashMap<>();
+    // Cópias velhas com escrita publicada pelos donos: nome -> versão publicada
+    private final Map<String, Long> copiasAntigas = new ConcurrentHashMap<>();
+
+    private static class EscritaAlheia {
+        final String nome;
+        final long versao;
+        final long criada = System.currentTimeMillis();
+
+        EscritaAlheia(String nome, long versao) {
+            this.nome = nome;
+            this.versao = versao;
+        }
+    }
+
+    // Trocas da versão confirmada (ímpar = troca em andamento), um contador por
+    // faixa de hash do nome: leitores não pegam lock, só relêem se uma troca
+    // cruzou a leitura. Memória fixa; nomes da mesma faixa só relêem à toa.
+    private static final int FAIXAS_TROCA = 1 << 12;
+    private final AtomicLong[] trocas = new AtomicLong[FAIXAS_TROCA];
+    {
+        Arrays.setAll(trocas, i -> new AtomicLong());
+    }
 
-    private final Map<String, Long> metadata = new ConcurrentHashMap<>();
-    private final Map<String, Boolean> arquivosBloqueados = new ConcurrentHashMap<>();
-    private final Map<String, Queue<Address>> filasDeLock = new ConcurrentHashMap<>();
+    // Armazenamento codificado de arquivos grandes e frios: k fragmentos de dados + m de paridade
+    private final ReedSolomon codec =
+            new ReedSolomon(Integer.getInteger("app.ec.k", 4), Integer.getInteger("app.ec.m", 2));
+
+    // Sessões de upload em partes (sessao -> nome do arquivo); abandonadas expiram
+    // e levam o temporário junto
+    private static final long TIMEOUT_SESSAO_MS = Long.getLong("app.upload.timeout", 10 * 60 * 1000L);
+    private final SessoesUpload<String> sessoesUpload = new SessoesUpload<>("sessoes-upload", TIMEOUT_SESSAO_MS,
+            (sessao, nome) -> {
+                dados.descartarTemporario(sessao);
+                log("⌛ Sessão de upload abandonada expirou: " + nome + " - sessao=" + sessao);
+            });
 
     // ✅ Controle de confirmações de upload (QUORUM)
-    private final Map<String, Set<Address>> confirmacoesUpload = new ConcurrentHashMap<>();
-    private final Map<String, AtomicInteger> contagemConfirmacoes = new ConcurrentHashMap<>();
+    private final Map<String, Quorum> quorunsUpload = new ConcurrentHashMap<>();
 
 
     // ✅ Controle de transações distribuídas
-    private final Map<String, Set<Address>> transacoesAguardando = new ConcurrentHashMap<>();
-    private final Map<String, Boolean> statusTransacao = new ConcurrentHashMap<>();
+    private final Map<String, Quorum> quorunsTransacao = new ConcurrentHashMap<>();
 
     protected Address lider;
 
-    public static class EstadoCluster implements Serializable {
-        private static final long serialVersionUID = 1L;
-        public Map<String, Long> metadata;
-        public Map<String, byte[]> arquivos;
-        public List<Usuario> usuarios;
-    }
-
     public ControleServer() throws Exception {
-        this.dados = new DadosServer();
+        this.no = IdentidadeNo.reservar();
+        this.dados = new DadosServer(no);
+        this.registro = new RegistroAlteracoes(no.getDiretorio(), Integer.getInteger("app.catchup.retencao", 100_000));
+        log("NÓ " + no.getId() + " (dados em " + no.getDiretorio() + ", seq " + registro.getSeq() + ", "
+                + posicionamento + ")");
 
+        MensagemCluster.registrarTipos();
         canalCluster = new JChannel("jgroups.xml");
+        locks = new GerenciadorLocks(canalCluster, arquivo -> anel.dono(arquivo),
+                Long.getLong("app.lock.lease", 10000), this::log);
+        antiEntropia = new AntiEntropia(canalCluster, new ReplicaLocal(),
+                Long.getLong("app.antientropia.intervalo", 60000), this::log);
         canalCluster.setReceiver(this);
+        // Mesmo id de nó nos dois canais: o gateway monta o mesmo anel pela view RPC
+        Posicionamento.identificar(canalCluster, no);
         canalCluster.connect(CLUSTER);
 
         canalRPC = new JChannel("jgroups.xml");
+        Posicionamento.identificar(canalRPC, no);
         canalRPC.connect(RPC_CLUSTER);
 
         dispatcher = new RpcDispatcher(canalRPC, this);
@@ -70,6 +221,20 @@ public class ControleServer implements Receiver, Closeable {
         atualizarMetadataLocal();
     }
 
+    /**
+     * Nó montado com as dependências dadas, sem conectar ao cluster (testes)
+     */
+    protected ControleServer(DadosServer dados, RegistroAlteracoes registro, JChannel canalCluster,
+                             JChannel canalRPC, RpcDispatcher dispatcher, GerenciadorLocks locks) {
+        this.dados = dados;
+        this.registro = registro;
+        this.canalCluster = canalCluster;
+        this.canalRPC = canalRPC;
+        this.dispatcher = dispatcher;
+        this.locks = locks;
+        atualizarMetadataLocal();
+    }
+
     private void log(String msg) {
         System.out.println("[" + sdf.format(new Date()) + "] " + msg);
     }
@@ -93,7 +258,9 @@ public class ControleServer implements Receiver, Closeable {
 
     public List<String> listarArquivos() {
         log("LISTAR ARQUIVOS solicitado (RPC)");
-        return dados.listarArquivos();
+        Set<String> nomes = new TreeSet<>(metadata.keySet());
+        nomes.addAll(dados.listarCodificados());
+        return new ArrayList<>(nomes);
     }
 
     // =========================================================================
@@ -102,116 +269,781 @@ public class ControleServer implements Receiver, Closeable {
 
     public boolean upload(String nome, byte[] conteudo) {
         String uploadId = UUID.randomUUID().toString();
+        GerenciadorLocks.Concessao lock = null;
         try {
             log("UPLOAD solicitado (RPC): " + nome + " (" + conteudo.length + " bytes) - uploadId=" + uploadId);
-            adquirirLock(nome);
+            List<Address> destinos = exigirDono(nome);
+            lock = adquirirLock(nome);
+            verificarToken(lock);
+            return gravarVersao(nome, conteudo, uploadId, destinos, lock);
 
-            // 1) Salva localmente
-            boolean ok = dados.salvarArquivo(nome, conteudo);
-            if (!ok) {
+        } catch (Exception e) {
+            log("ERRO NO UPLOAD: " + e.getMessage());
+            return false;
+        } finally {
+            liberarLock(lock);
+        }
+    }
+
+    /**
+     * Grava o conteúdo inteiro como nova versão; o chamador já tem o lock
+     */
+    private boolean gravarVersao(String nome, byte[] conteudo, String uploadId, List<Address> destinos,
+                                 GerenciadorLocks.Concessao lock) throws Exception {
+        try {
+            exigirNaoCodificado(nome);
+            long versao = proximaVersao(nome);
+
+            // 1) Prepara a nova versão num temporário (única cópia feita por este nó);
+            //    leitores continuam na versão confirmada
+            if (!dados.salvarTemporario(uploadId, conteudo) || !dados.prepararTemporario(uploadId)) {
                 log("Falha ao gravar arquivo no disco: " + nome);
                 return false;
             }
 
-            // 2) Atualiza metadata local
-            metadata.put(nome, (long) conteudo.length);
+            // 2) Replica o temporário, aguarda o quorum e só então publica
+            return replicarEPublicar(nome, uploadId, conteudo.length, destinos, lock.token, versao);
+        } finally {
+            dados.descartarTemporario(uploadId);
+        }
+    }
 
-            // 3) Inicializa estruturas de confirmação
-            View view = canalCluster.getView();
-            int totalServidores = view.size();
-            int quorumNecessario = (totalServidores / 2) + 1;
-            log("⭑ Total servidores: " + totalServidores + ", quorum necessário: " + quorumNecessario);
-
-            confirmacoesUpload.put(uploadId, Collections.synchronizedSet(new HashSet<>()));
-            contagemConfirmacoes.put(uploadId, new AtomicInteger(1)); // conta eu mesmo
-            confirmacoesUpload.get(uploadId).add(canalCluster.getAddress());
-
-            // 4) ✅ CORRIGIDO: Envia mensagem com endereço do coordenador
-            MensagemCluster msg = MensagemCluster.upload(nome, conteudo, uploadId, canalCluster.getAddress());
-            canalCluster.send(new ObjectMessage(null, msg));
-
-            // 5) Aguarda confirmações até atingir quorum ou timeout
-            long inicio = System.currentTimeMillis();
-            long timeout = 15000;
-            while (System.currentTimeMillis() - inicio < timeout) {
-                int cont = contagemConfirmacoes.get(uploadId).get();
-                if (cont >= quorumNecessario) {
-                    log("✅ UPLOAD confirmado por quorum (" + cont + "/" + totalServidores + "): " + nome);
-                    confirmacoesUpload.remove(uploadId);
-                    contagemConfirmacoes.remove(uploadId);
-                    return true;
+    // =========================================================================
+    //  UPLOAD / DOWNLOAD EM BLOCOS
+    // =========================================================================
+
+    /**
+     * Abre uma sessão de upload em partes. Os blocos são gravados num
+     * temporário e só substituem o arquivo em concluirUpload().
+     */
+    public String abrirUpload(String nome) {
+        String sessao = UUID.randomUUID().toString();
+        log("ABRIR UPLOAD solicitado (RPC): " + nome + " - sessao=" + sessao);
+        exigirDono(nome);
+
+        if (!dados.iniciarTemporario(sessao)) {
+            throw new RuntimeException("[LOCAL] Não foi possível abrir o upload de " + nome);
+        }
+        sessoesUpload.abrir(sessao, nome);
+        return sessao;
+    }
+
+    public boolean escreverBloco(String sessao, byte[] bloco) {
+        if (sessoesUpload.usar(sessao) == null) {
+            throw new RuntimeException("[LOCAL] Sessão de upload desconhecida: " + sessao);
+        }
+        return dados.anexarTemporario(sessao, bloco);
+    }
+
+    public void cancelarUpload(String sessao) {
+        log("CANCELAR UPLOAD solicitado (RPC): " + sessao);
+        sessoesUpload.remover(sessao);
+        dados.descartarTemporario(sessao);
+    }
+
+    /**
+     * Efetiva o upload localmente e replica o arquivo em blocos de
+     * TAMANHO_BLOCO_CLUSTER, lidos do disco um de cada vez.
+     */
+    public boolean concluirUpload(String sessao) {
+        String nome = sessoesUpload.remover(sessao);
+        if (nome == null) {
+            throw new RuntimeException("[LOCAL] Sessão de upload desconhecida: " + sessao);
+        }
+
+        String uploadId = sessao;
+        GerenciadorLocks.Concessao lock = null;
+        try {
+            long tamanho = dados.tamanhoTemporario(sessao);
+            log("CONCLUIR UPLOAD solicitado (RPC): " + nome + " (" + tamanho + " bytes) - uploadId=" + uploadId);
+            List<Address> destinos = exigirDono(nome);
+            lock = adquirirLock(nome);
+            verificarToken(lock);
+            exigirNaoCodificado(nome);
+            long versao = proximaVersao(nome);
+
+            // 1) Prepara localmente (os blocos já estão no temporário da sessão)
+            if (!dados.prepararTemporario(sessao)) {
+                log("Falha ao efetivar arquivo no disco: " + nome);
+                return false;
+            }
+
+            // 2) Replica o temporário, aguarda o quorum e só então publica
+            return replicarEPublicar(nome, uploadId, tamanho, destinos, lock.token, versao);
+
+        } catch (Exception e) {
+            log("ERRO NO UPLOAD EM BLOCOS: " + e.getMessage());
+            return false;
+        } finally {
+            dados.descartarTemporario(sessao);
+            liberarLock(lock);
+        }
+    }
+
+    /**
+     * Segunda fase da escrita: com o quorum, publica a versão preparada aqui
+     * e manda as réplicas publicarem a delas; sem ele, só descarta
+     */
+    private boolean replicarEPublicar(String nome, String uploadId, long tamanho, List<Address> destinos,
+                                      long token, long versao) throws Exception {
+        Quorum quorum = iniciarQuorum(uploadId, destinos);
+        MessageDigest md;
+        try {
+            md = replicarDoDisco(nome, uploadId, tamanho, destinos, token, versao);
+        } catch (Exception e) {
+            desfazerUpload(nome, uploadId);
+            throw e;
+        }
+        if (!aguardarQuorum(nome, uploadId, quorum)) {
+            return false;
+        }
+
+        String dono = canalCluster.getAddress().toString();
+        boolean publicado = trocarVersao(nome, () -> {
+            if (!dados.publicarTemporario(uploadId, nome)) return false;
+            registrarDigest(nome, tamanho, md, versao, dono);
+            return true;
+        });
+        if (!publicado) {
+            log("❌ Falha ao publicar " + nome + " localmente (tentando rollback)");
+            desfazerUpload(nome, uploadId);
+            return false;
+        }
+
+        publicarNasReplicas(nome, uploadId);
+        anunciarAlteracao(nome);
+        return true;
+    }
+
+    private void publicarNasReplicas(String nome, String uploadId) {
+        try {
+            canalCluster.send(MensagemCluster.publicarEscrita(nome, uploadId).paraMensagem(null));
+        } catch (Exception e) {
+            log("⚠️ Erro ao enviar PUBLICAR de " + nome + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replica a versão preparada: mapeia janelas do temporário e envia cada
+     * bloco como fatia do mapeamento (sem cópia no heap) só para as outras
+     * réplicas, calculando o digest na mesma passada. O commit (que nas
+     * réplicas só prepara) vai para todo o cluster com a lista de réplicas.
+     */
+    private MessageDigest replicarDoDisco(String nome, String uploadId, long tamanho, List<Address> destinos,
+                                          long token, long versao) throws Exception {
+        List<Address> outros = new ArrayList<>(destinos);
+        outros.remove(canalCluster.getAddress());
+
+        MessageDigest md = ArvoreMerkle.novoDigest();
+        for (long inicio = 0; inicio < tamanho; inicio += JANELA_MAPA) {
+            ByteBuffer janela = dados.mapearBlocoTemporario(uploadId, inicio,
+                    (int) Math.min(JANELA_MAPA, tamanho - inicio));
+            if (janela == null) {
+                throw new IOException("Falha ao mapear " + nome + " a partir de " + inicio);
+            }
+            for (int pos = 0; pos < janela.limit(); pos += TAMANHO_BLOCO_CLUSTER) {
+                ByteBuffer bloco = janela.slice(pos, Math.min(TAMANHO_BLOCO_CLUSTER, janela.limit() - pos));
+                md.update(bloco.duplicate());
+                // Codificado (e comprimido) uma vez; as cópias compartilham o corpo
+                Message msg = MensagemCluster.blocoUpload(nome, uploadId, inicio + pos, bloco).paraMensagem(null);
+                for (Address destino : outros) {
+                    canalCluster.send(msg.copy(true, true).setDest(destino));
                 }
-                Thread.sleep(100);
             }
+        }
+        canalCluster.send(MensagemCluster.commitUpload(nome, uploadId, tamanho, canalCluster.getAddress(),
+                destinos, token, versao).paraMensagem(null));
+        return md;
+    }
 
-            // 6) Timeout -> rollback
-            log("❌ Timeout ao aguardar quorum para uploadId=" + uploadId + " (tentando rollback)");
-            try {
-                dados.deletarArquivo(nome);
-            } catch (Exception ex) {
-                log("⚠️ Erro ao deletar arquivo local no rollback: " + ex.getMessage());
+    /**
+     * Bloco empacotado por {@link Compressao#empacotar} (comprimido pelo gateway ou pelo cliente)
+     */
+    public boolean escreverBlocoComprimido(String sessao, byte[] pacote) {
+        return escreverBloco(sessao, Compressao.desempacotar(pacote));
+    }
+
+    public long tamanhoArquivo(String nome) {
+        MetaArquivo meta = metadata.get(nome);
+        return meta == null ? -1 : meta.tamanho;
+    }
+
+    /**
+     * Versão local do arquivo (ou da lápide); o gateway lê da réplica mais nova entre R
+     */
+    public long versaoArquivo(String nome) {
+        return versaoAtual(nome);
+    }
+
+    /**
+     * Bloco de uma versão conhecida (a do primeiro trecho do download): null
+     * se a versão confirmada aqui é outra ou o arquivo sumiu, e quem lê em
+     * blocos recomeça em vez de juntar bytes de versões diferentes
+     */
+    public byte[] lerBloco(String nome, long versaoEsperada, long offset, int tamanho) throws Exception {
+        if (tamanho > TAMANHO_MAX_LEITURA) {
+            throw new RuntimeException("[LOCAL] Bloco maior que o permitido: " + tamanho);
+        }
+
+        return lerConfirmado(nome, (meta, versao) -> {
+            if (meta == null || versao == null || meta.versao != versaoEsperada
+                    || offset < 0 || offset > meta.tamanho) {
+                return null;
             }
-            metadata.remove(nome);
+            return versao.ler(offset, (int) Math.min(tamanho, meta.tamanho - offset));
+        });
+    }
+
+    /**
+     * Como lerBloco, empacotado (comprimido quando compensa)
+     */
+    public byte[] lerBlocoComprimido(String nome, long versaoEsperada, long offset, int tamanho) throws Exception {
+        byte[] bloco = lerBloco(nome, versaoEsperada, offset, tamanho);
+        return bloco == null ? null : Compressao.empacotar(bloco);
+    }
 
-            MensagemCluster rollback = MensagemCluster.rollbackUpload(nome, uploadId);
-            canalCluster.send(new ObjectMessage(null, rollback));
+    /**
+     * Leitura de intervalo com o tamanho e a versão do arquivo, da mesma
+     * versão confirmada dos dados. Offset negativo conta a partir do fim (-n =
+     * últimos n bytes); offset no fim ou além devolve trecho vazio (nada novo).
+     */
+    public TrechoArquivo lerTrecho(String nome, long offset, int tamanho) throws Exception {
+        if (tamanho < 0 || tamanho > TAMANHO_MAX_LEITURA) {
+            throw new RuntimeException("[LOCAL] Trecho inválido: " + tamanho + " bytes");
+        }
 
-            confirmacoesUpload.remove(uploadId);
-            contagemConfirmacoes.remove(uploadId);
+        return lerConfirmado(nome, (meta, versao) -> {
+            if (meta == null || versao == null) {
+                return null;
+            }
 
-            return false;
+            long inicio = offset < 0 ? Math.max(0, meta.tamanho + offset) : Math.min(offset, meta.tamanho);
+            byte[] bloco = versao.ler(inicio, (int) Math.min(tamanho, meta.tamanho - inicio));
+            return bloco == null ? null : new TrechoArquivo(inicio, bloco, meta.tamanho, meta.versao);
+        });
+    }
+
+    // =========================================================================
+    //  ARMAZENAMENTO CODIFICADO (REED-SOLOMON)
+    // =========================================================================
 
+    /**
+     * Guarda o arquivo em k + m fragmentos, um por nó a partir do nome no
+     * anel: ocupa (k + m) / k do tamanho em vez de N cópias e sobrevive à
+     * perda de m nós. Só sucede com todos os fragmentos gravados; senão os
+     * gravados desta versão são apagados.
+     */
+    public boolean uploadCodificado(String nome, byte[] conteudo) {
+        log("UPLOAD CODIFICADO solicitado (RPC): " + nome + " (" + conteudo.length + " bytes, k="
+                + codec.getDados() + " m=" + codec.getParidade() + ")");
+
+        GerenciadorLocks.Concessao lock = null;
+        boolean replicado;
+        try {
+            lock = adquirirLock(nome);
+            verificarToken(lock);
+            // Sob o lock e nos donos (este nó pode não ser um deles): o mesmo nome
+            // não pode existir replicado e codificado
+            replicado = existeReplicado(nome);
         } catch (Exception e) {
-            log("ERRO NO UPLOAD: " + e.getMessage());
-            e.printStackTrace();
-            try { dados.deletarArquivo(nome); } catch (Exception ignored) {}
-            metadata.remove(nome);
+            log("ERRO NO UPLOAD CODIFICADO: " + e.getMessage());
+            liberarLock(lock);
             return false;
+        }
+
+        try {
+            // Recusa do backend, fora dos try de falhas remotas: vai como está para o gateway
+            if (replicado) {
+                throw new RuntimeException("[LOCAL] " + nome + " já existe replicado; apague antes de codificar");
+            }
+            return gravarCodificado(nome, conteudo);
         } finally {
-            liberarLock(nome);
+            liberarLock(lock);
         }
     }
 
-    private void aplicarUploadCluster(Message msg, MensagemCluster m) {
-        synchronized (this) {
-            log("📥 RECEBENDO replicação UPLOAD: " + m.arquivo);
-            log("   Upload ID: " + m.uploadId);
-            log("   Origem: " + m.serverOrigin);
+    /**
+     * Codifica e grava os fragmentos (chamar com o lock); falhas remotas
+     * apagam os gravados e dão false
+     */
+    private boolean gravarCodificado(String nome, byte[] conteudo) {
+        try {
+            long versao = proximaVersao(nome);
+
+            byte[][] fragmentos = codec.codificar(conteudo);
+            List<Address> locais = locaisFragmentos(nome);
+            List<CompletableFuture<Boolean>> gravacoes = new ArrayList<>();
+            for (int i = 0; i < fragmentos.length; i++) {
+                byte[] pacote = Fragmento.empacotar(versao, conteudo.length, codec, i, fragmentos[i]);
+                gravacoes.add(dispatcher.callRemoteMethodWithFuture(locais.get(i % locais.size()),
+                        new MethodCall("gravarFragmento", new Object[]{nome, i, pacote},
+                                new Class[]{String.class, int.class, byte[].class}),
+                        new RequestOptions(ResponseMode.GET_FIRST, TIMEOUT_FRAGMENTO_MS)));
+            }
 
-            Address origin = encontrarMembroPorString(m.serverOrigin);
+            List<Integer> gravados = new ArrayList<>();
+            for (int i = 0; i < gravacoes.size(); i++) {
+                try {
+                    if (Boolean.TRUE.equals(gravacoes.get(i).get(TIMEOUT_FRAGMENTO_MS, TimeUnit.MILLISECONDS))) {
+                        gravados.add(i);
+                    }
+                } catch (Exception e) {
+                    log("⚠️ Falha ao gravar fragmento: " + e.getMessage());
+                }
+            }
 
+            boolean ok = gravados.size() == fragmentos.length;
+            log((ok ? "✅" : "❌") + " UPLOAD CODIFICADO " + nome + ": " + gravados.size() + "/" + fragmentos.length
+                    + " fragmentos em " + locais.size() + " nós");
+            if (!ok) {
+                for (int i : gravados) {
+                    descartarFragmentoRemoto(locais.get(i % locais.size()), nome, i, versao);
+                }
+            }
+            anunciarAlteracao(nome);
+            return ok;
+        } catch (Exception e) {
+            log("ERRO NO UPLOAD CODIFICADO: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Lê os k fragmentos de dados; se algum falta (ou é de outra versão),
+     * busca também os de paridade e reconstrói. Null se o arquivo não existe.
+     */
+    public byte[] downloadCodificado(String nome) throws Exception {
+        log("DOWNLOAD CODIFICADO solicitado (RPC): " + nome);
+        List<Address> locais = locaisFragmentos(nome);
+        Fragmento[] lidos = new Fragmento[codec.getTotal()];
+
+        buscarFragmentos(nome, locais, 0, codec.getDados(), lidos);
+        Long versao = versaoDecodificavel(lidos);
+        if (versao == null) {
+            buscarFragmentos(nome, locais, codec.getDados(), codec.getTotal(), lidos);
+            versao = versaoDecodificavel(lidos);
+        }
+        if (versao == null) {
+            if (Arrays.stream(lidos).allMatch(Objects::isNull)) return null;
+            throw new RuntimeException("[LOCAL] Fragmentos insuficientes para reconstruir " + nome);
+        }
+
+        Fragmento base = null;
+        byte[][] fragmentos = new byte[lidos.length][];
+        for (Fragmento f : lidos) {
+            if (f != null && f.versao == versao) {
+                fragmentos[f.indice] = f.dados;
+                base = f;
+            }
+        }
+        ReedSolomon rs = base.k == codec.getDados() && base.m == codec.getParidade()
+                ? codec : new ReedSolomon(base.k, base.m);
+        return rs.decodificar(fragmentos, (int) base.tamanho);
+    }
+
+    public boolean gravarFragmento(String nome, int indice, byte[] fragmento) {
+        return dados.salvarFragmento(nome, indice, fragmento);
+    }
+
+    public byte[] lerFragmento(String nome, int indice) {
+        return dados.lerFragmento(nome, indice);
+    }
+
+    public boolean temFragmentos(String nome) {
+        return dados.temFragmentos(nome);
+    }
+
+    public boolean descartarFragmento(String nome, int indice, long versao) {
+        return dados.apagarFragmento(nome, indice, versao);
+    }
+
+    private void descartarFragmentoRemoto(Address local, String nome, int indice, long versao) {
+        try {
+            dispatcher.callRemoteMethod(local,
+                    new MethodCall("descartarFragmento", new Object[]{nome, indice, versao},
+                            new Class[]{String.class, int.class, long.class}),
+                    new RequestOptions(ResponseMode.GET_FIRST, TIMEOUT_FRAGMENTO_MS));
+        } catch (Exception e) {
+            log("⚠️ Fragmento " + indice + " de " + nome + " ficou em " + local + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Backends (endereços RPC) que guardam os fragmentos, em ordem do anel a
+     * partir do nome; com menos nós que k + m, alguns guardam mais de um
+     */
+    private List<Address> locaisFragmentos(String nome) {
+        List<Address> locais = Posicionamento.anel(canalRPC.getView().getMembers()).donos(nome, codec.getTotal());
+        if (locais.isEmpty()) {
+            throw new RuntimeException("[LOCAL] Nenhum backend para os fragmentos de " + nome);
+        }
+        if (locais.size() < codec.getTotal()) {
+            log("⚠️ Só " + locais.size() + " nós para " + codec.getTotal() + " fragmentos: tolera menos de "
+                    + codec.getParidade() + " falhas");
+        }
+        return locais;
+    }
 
+    /**
+     * Busca os fragmentos [de, ate) no nó do anel de cada índice. Um nó que
+     * entrou ou saiu desloca os índices do anel: o que faltar é procurado
+     * em todos os backends, ficando com a versão mais nova.
+     */
+    private void buscarFragmentos(String nome, List<Address> locais, int de, int ate, Fragmento[] lidos) {
+        Map<Integer, CompletableFuture<byte[]>> leituras = new HashMap<>();
+        for (int i = de; i < ate; i++) {
             try {
-                // Salvar arquivo
-                boolean ok = dados.salvarArquivo(m.arquivo, m.conteudo);
+                leituras.put(i, dispatcher.callRemoteMethodWithFuture(locais.get(i % locais.size()),
+                        new MethodCall("lerFragmento", new Object[]{nome, i}, new Class[]{String.class, int.class}),
+                        new RequestOptions(ResponseMode.GET_FIRST, TIMEOUT_FRAGMENTO_MS)));
+            } catch (Exception e) {
+                log("⚠️ Falha ao pedir fragmento " + i + " de " + nome + ": " + e.getMessage());
+            }
+        }
+        for (Map.Entry<Integer, CompletableFuture<byte[]>> leitura : leituras.entrySet()) {
+            try {
+                byte[] pacote = leitura.getValue().get(TIMEOUT_FRAGMENTO_MS, TimeUnit.MILLISECONDS);
+                if (pacote != null) {
+                    Fragmento f = Fragmento.ler(pacote);
+                    if (f.indice == leitura.getKey()) lidos[f.indice] = f;
+                }
+            } catch (Exception e) {
+                log("⚠️ Fragmento " + leitura.getKey() + " de " + nome + " indisponível: " + e.getMessage());
+            }
+        }
 
-                if (ok) {
-                    metadata.put(m.arquivo, (long) m.conteudo.length);
-                    log("✅ Arquivo salvo: " + m.conteudo.length + " bytes");
+        for (int i = de; i < ate; i++) {
+            if (lidos[i] == null) procurarFragmento(nome, i, lidos);
+        }
+    }
 
-                    enviarConfirmacaoUpload(m.uploadId, origin);
-                } else {
-                    log("❌ Falha ao salvar arquivo");
-                    enviarConfirmacaoUploadNegativa(m.uploadId, origin);
+    private void procurarFragmento(String nome, int indice, Fragmento[] lidos) {
+        try {
+            RspList<byte[]> respostas = dispatcher.callRemoteMethods(
+                    Posicionamento.backends(canalRPC.getView().getMembers()),
+                    new MethodCall("lerFragmento", new Object[]{nome, indice}, new Class[]{String.class, int.class}),
+                    new RequestOptions(ResponseMode.GET_ALL, TIMEOUT_FRAGMENTO_MS));
+            for (Rsp<byte[]> rsp : respostas.values()) {
+                if (!rsp.wasReceived() || rsp.hasException() || rsp.getValue() == null) continue;
+                Fragmento f = Fragmento.ler(rsp.getValue());
+                if (f.indice == indice && (lidos[indice] == null || f.versao > lidos[indice].versao)) {
+                    lidos[indice] = f;
                 }
+            }
+        } catch (Exception e) {
+            log("⚠️ Fragmento " + indice + " de " + nome + " não encontrado no cluster: " + e.getMessage());
+        }
+    }
 
-            } catch (Exception e) {
-                log("❌ Erro ao aplicar upload: " + e.getMessage());
-                enviarConfirmacaoUploadNegativa(m.uploadId, origin);
+    /**
+     * Versão mais nova com pelo menos k fragmentos (um upload interrompido deixa versões misturadas)
+     */
+    private static Long versaoDecodificavel(Fragmento[] lidos) {
+        Map<Long, Integer> porVersao = new TreeMap<>(Comparator.reverseOrder());
+        Map<Long, Integer> necessarios = new HashMap<>();
+        for (Fragmento f : lidos) {
+            if (f == null) continue;
+            porVersao.merge(f.versao, 1, Integer::sum);
+            necessarios.put(f.versao, f.k);
+        }
+        for (Map.Entry<Long, Integer> e : porVersao.entrySet()) {
+            if (e.getValue() >= necessarios.get(e.getKey())) return e.getKey();
+        }
+        return null;
+    }
+
+    /**
+     * Algum dono do nome guarda o arquivo replicado?
+     */
+    private boolean existeReplicado(String nome) {
+        if (metadata.containsKey(nome)) return true;
+        try {
+            RspList<Long> respostas = dispatcher.callRemoteMethods(
+                    posicionamento.donos(Posicionamento.anel(canalRPC.getView().getMembers()), nome),
+                    new MethodCall("tamanhoArquivo", new Object[]{nome}, new Class[]{String.class}),
+                    new RequestOptions(ResponseMode.GET_ALL, TIMEOUT_FRAGMENTO_MS));
+            return respostas.values().stream()
+                    .anyMatch(r -> r.wasReceived() && r.getValue() != null && r.getValue() >= 0);
+        } catch (Exception e) {
+            throw new RuntimeException("Não foi possível consultar os donos de " + nome + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Arquivo novo (sem versão replicada aqui, que é dono): o nome não pode
+     * estar guardado codificado em outros nós. Chamar com o lock do nome.
+     */
+    private void exigirNaoCodificado(String nome) {
+        if (!metadata.containsKey(nome) && existeCodificado(nome)) {
+            throw new RuntimeException("[LOCAL] " + nome + " já existe codificado; apague antes de replicar");
+        }
+    }
+
+    /**
+     * Algum backend guarda fragmentos do arquivo?
+     */
+    private boolean existeCodificado(String nome) {
+        try {
+            RspList<Boolean> respostas = dispatcher.callRemoteMethods(
+                    Posicionamento.backends(canalRPC.getView().getMembers()),
+                    new MethodCall("temFragmentos", new Object[]{nome}, new Class[]{String.class}),
+                    new RequestOptions(ResponseMode.GET_ALL, TIMEOUT_FRAGMENTO_MS));
+            return respostas.values().stream().anyMatch(r -> r.wasReceived() && Boolean.TRUE.equals(r.getValue()));
+        } catch (Exception e) {
+            log("⚠️ Erro ao procurar fragmentos de " + nome + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // =========================================================================
+    //  QUORUM DE UPLOAD
+    // =========================================================================
+
+    /**
+     * Registra o upload para contagem de confirmações (já contando este nó):
+     * W entre as réplicas do arquivo
+     */
+    private Quorum iniciarQuorum(String uploadId, List<Address> destinos) {
+        int quorumNecessario = posicionamento.escritas(destinos.size());
+        log("⭑ Réplicas: " + destinos.size() + ", quorum necessário: " + quorumNecessario);
+
+        Quorum quorum = new Quorum(quorumNecessario);
+        quorum.confirmar(canalCluster.getAddress()); // conta eu mesmo
+        quorunsUpload.put(uploadId, quorum);
+        return quorum;
+    }
+
+    /**
+     * Aguarda o quorum (ou uma rejeição) e faz rollback em caso de falha
+     */
+    private boolean aguardarQuorum(String nome, String uploadId, Quorum quorum) throws Exception {
+        boolean ok = quorum.aguardar(TIMEOUT_QUORUM_MS);
+        quorunsUpload.remove(uploadId);
+
+        if (ok) {
+            log("✅ UPLOAD confirmado por quorum (" + quorum.getConfirmados() + "): " + nome);
+            return true;
+        }
+
+        log("❌ Quorum não atingido para uploadId=" + uploadId + " (tentando rollback)");
+        desfazerUpload(nome, uploadId);
+        return false;
+    }
+
+    /**
+     * Nada foi publicado: as réplicas só descartam a versão preparada
+     */
+    private void desfazerUpload(String nome, String uploadId) {
+        try {
+            canalCluster.send(MensagemCluster.rollbackUpload(nome, uploadId, versaoAtual(nome))
+                    .paraMensagem(null));
+        } catch (Exception ex) {
+            log("⚠️ Erro ao enviar rollback: " + ex.getMessage());
+        }
+        quorunsUpload.remove(uploadId);
+    }
+
+    /**
+     * Avisa os gateways (canal RPC) que o arquivo mudou, para invalidar caches
+     */
+    private void anunciarAlteracao(String nome) {
+        try {
+            canalRPC.send(MensagemCluster.arquivoAlterado(nome).paraMensagem(null));
+        } catch (Exception e) {
+            log("⚠️ Erro ao anunciar alteração de " + nome + ": " + e.getMessage());
+        }
+    }
+
+    private void aplicarBlocoUploadCluster(MensagemCluster m) {
+        if (!dados.gravarBlocoTemporario(m.uploadId, m.offset, m.bloco)) {
+            log("❌ Falha ao gravar bloco " + m.offset + " de " + m.arquivo);
+            return;
+        }
+
+        // Último bloco de um commit que chegou antes dele
+        MensagemCluster commit = commitsPendentes.get(m.uploadId);
+        if (commit != null && dados.tamanhoTemporario(m.uploadId) >= commit.tamanho) {
+            commitsPendentes.remove(m.uploadId);
+            prepararCommitUpload(commit);
+        }
+    }
+
+    private void aplicarCommitUploadCluster(MensagemCluster m) {
+        Address origin = m.serverOrigin;
+        if (!ehDestino(m)) {
+            anotarEscritaAlheia(m);
+            return;
+        }
+        log("📥 RECEBENDO commit de upload em blocos: " + m.arquivo + " (" + m.tamanho + " bytes)");
+
+        if (!locks.aceitarToken(m.arquivo, m.tokenLock)) {
+            log("⛔ Commit com token de lock obsoleto rejeitado: " + m.arquivo);
+            dados.descartarTemporario(m.uploadId);
+            enviarConfirmacaoUploadNegativa(m.uploadId, origin);
+            return;
+        }
+
+        // Os blocos vêm por unicast e podem chegar depois do commit (multicast);
+        // na mesma listra do arquivo, o último bloco prepara o commit
+        if (Math.max(0, dados.tamanhoTemporario(m.uploadId)) < m.tamanho) {
+            commitsPendentes.put(m.uploadId, m);
+            return;
+        }
+        prepararCommitUpload(m);
+    }
+
+    /**
+     * Primeira fase na réplica: a versão recebida fica preparada no
+     * temporário (no disco, mas invisível) e a réplica confirma
+     */
+    private void prepararCommitUpload(MensagemCluster m) {
+        Address origin = m.serverOrigin;
+        long recebido = Math.max(0, dados.tamanhoTemporario(m.uploadId));
+        if (recebido != m.tamanho || !dados.prepararTemporario(m.uploadId)) {
+            log("❌ Upload em blocos incompleto: " + recebido + "/" + m.tamanho + " bytes");
+            dados.descartarTemporario(m.uploadId);
+            publicacoesAntecipadas.remove(m.uploadId);
+            enviarConfirmacaoUploadNegativa(m.uploadId, origin);
+            return;
+        }
+
+        String nome = m.arquivo;
+        String dono = String.valueOf(m.serverOrigin);
+        prepararEscrita(m.uploadId, new EscritaPreparada(nome,
+                () -> trocarVersao(nome, () -> {
+                    if (!dados.publicarTemporario(m.uploadId, nome)) return false;
+                    registrarDoDisco(nome, m.versao, dono);
+                    return true;
+                }),
+                () -> dados.descartarTemporario(m.uploadId)));
+        log("✅ Arquivo preparado: " + m.tamanho + " bytes");
+        enviarConfirmacaoUpload(m.uploadId, origin);
+    }
+
+    /**
+     * Guarda a escrita até o PUBLICAR (ou o rollback). Preparadas antigas
+     * demais perderam o coordenador: são descartadas, e se a escrita chegou
+     * a ser publicada em outro lugar a anti-entropia a traz.
+     */
+    private void prepararEscrita(String uploadId, EscritaPreparada escrita) {
+        long limite = System.currentTimeMillis() - RETENCAO_PREPARADA_MS;
+        preparadas.entrySet().removeIf(e -> {
+            EscritaPreparada antiga = e.getValue();
+            // Descartada na listra do próprio arquivo; com a fila cheia fica para a próxima
+            if (antiga.criada >= limite || !aplicacao.tentarExecutar(antiga.nome, antiga.descartar)) {
+                return false;
             }
+            log("🧹 Escrita preparada sem resultado descartada: " + antiga.nome);
+            return true;
+        });
+
+        preparadas.put(uploadId, escrita);
+        if (publicacoesAntecipadas.remove(uploadId)) {
+            publicarPreparada(uploadId);
         }
     }
 
-    private Address encontrarMembroPorString(String addressStr) {
-        if (addressStr == null) return null;
+    private void aplicarPublicacao(MensagemCluster m) {
+        EscritaAlheia alheia = escritasAlheias.remove(m.uploadId);
+        if (alheia != null) {
+            copiasAntigas.merge(alheia.nome, alheia.versao, Math::max);
+        } else if (preparadas.containsKey(m.uploadId)) {
+            publicarPreparada(m.uploadId);
+        } else if (commitsPendentes.containsKey(m.uploadId)) {
+            // Quorum formado sem esta réplica: publica assim que os blocos chegarem
+            publicacoesAntecipadas.add(m.uploadId);
+        }
+    }
 
-        View view = canalCluster.getView();
-        for (Address addr : view.getMembers()) {
-            if (addr.toString().equals(addressStr)) {
-                return addr;
+    private void publicarPreparada(String uploadId) {
+        EscritaPreparada escrita = preparadas.remove(uploadId);
+        if (escrita == null) return;
+        escrita.publicar.run();
+        log("✅ Escrita publicada: " + escrita.nome);
+    }
+
+    private void descartarPreparada(String uploadId) {
+        EscritaPreparada escrita = preparadas.remove(uploadId);
+        if (escrita != null) {
+            escrita.descartar.run();
+        }
+    }
+
+    // =========================================================================
+    //  VERSÃO CONFIRMADA (LEITURA SEM LOCK)
+    // =========================================================================
+
+    /**
+     * Troca a versão confirmada (arquivo no disco e metadados juntos) entre
+     * dois incrementos do contador do arquivo; trocas do mesmo arquivo são
+     * serializadas pelo contador. Toda mudança visível a leitores passa por
+     * aqui, no coordenador e nas réplicas (publicação, append, apagar).
+     */
+    private boolean trocarVersao(String nome, BooleanSupplier troca) {
+        AtomicLong contador = contadorDe(nome);
+        synchronized (contador) {
+            contador.incrementAndGet();
+            try {
+                return troca.getAsBoolean();
+            } finally {
+                contador.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Apaga a versão confirmada (arquivo e metadados) numa troca, como as
+     * escritas: um leitor nunca vê os metadados de um arquivo que já saiu
+     * do disco. Se apagou, fica a lápide com a versão (se positiva).
+     */
+    private boolean apagarConfirmado(String nome, long versao) {
+        return trocarVersao(nome, () -> {
+            boolean apagou = dados.deletarArquivo(nome);
+            if (apagou) esquecerArquivo(nome, versao);
+            return apagou;
+        });
+    }
+
+    private long contadorTrocas(String nome) {
+        return contadorDe(nome).get();
+    }
+
+    private AtomicLong contadorDe(String nome) {
+        int h = nome.hashCode();
+        return trocas[(h ^ (h >>> 16)) & (FAIXAS_TROCA - 1)];
+    }
+
+    @FunctionalInterface
+    private interface LeituraConfirmada<T> {
+        /**
+         * meta null: o arquivo não existe; versao null: sumiu do disco
+         */
+        T ler(MetaArquivo meta, VersaoFixada versao) throws Exception;
+    }
+
+    /**
+     * Lê a última versão confirmada sem lock: fixa o arquivo aberto junto com
+     * os metadados dele e repete se uma troca de versão cruzou a leitura. Só
+     * os primeiros meta.tamanho bytes valem (um append em andamento escreve
+     * além deles).
+     */
+    private <T> T lerConfirmado(String nome, LeituraConfirmada<T> leitura) throws Exception {
+        while (true) {
+            long antes = contadorTrocas(nome);
+            if ((antes & 1) != 0) {
+                LockSupport.parkNanos(100_000);
+                continue;
+            }
+
+            MetaArquivo meta = metadata.get(nome);
+            if (meta == null) {
+                return leitura.ler(null, null);
+            }
+            try (VersaoFixada versao = dados.fixar(nome)) {
+                if (contadorTrocas(nome) != antes) continue;
+                return leitura.ler(meta, versao);
             }
         }
-        return null;
     }
 
 // =========================================================================
@@ -222,7 +1054,7 @@ public class ControleServer implements Receiver, Closeable {
         try {
             MensagemCluster conf = MensagemCluster.confirmarUpload(uploadId,false);
 
-            canalCluster.send(new ObjectMessage(serverOrigin, conf));
+            canalCluster.send(conf.paraMensagem(serverOrigin));
             log("📤 Confirmação NEGATIVA enviada para coordenador: " + serverOrigin);
         } catch (Exception e) {
             log("❌ Erro ao enviar confirmação negativa: " + e.getMessage());
@@ -234,143 +1066,158 @@ public class ControleServer implements Receiver, Closeable {
 // =========================================================================
 
     private void receberConfirmacaoUpload(Message msg, MensagemCluster m) {
-        Set<Address> confirmados = confirmacoesUpload.get(m.uploadId);
-        AtomicInteger contador = contagemConfirmacoes.get(m.uploadId);
+        Quorum quorum = quorunsUpload.get(m.uploadId);
 
-        if (contador != null) {
-            if (m.sucesso) {
-                // ✅ Evita contar a mesma confirmação duas vezes
-                if (confirmados != null && confirmados.add(msg.getSrc())) {
-                    int novoValor = contador.incrementAndGet();
-                    log("📊 Confirmação POSITIVA recebida de " + msg.getSrc() + " - Total: " + novoValor);
-                }
-            } else {
-                log("⚠️ Confirmação NEGATIVA recebida de " + msg.getSrc() + " - Upload FALHOU");
-                // ✅ Marca o upload como falho
-                contador.set(-1000); // valor negativo indica falha
-            }
-        } else {
+        if (quorum == null) {
             log("⚠️ Confirmação recebida para uploadId desconhecido: " + m.uploadId);
+        } else if (m.sucesso) {
+            quorum.confirmar(msg.getSrc());
+            log("📊 Confirmação POSITIVA recebida de " + msg.getSrc() + " - Total: " + quorum.getConfirmados());
+        } else {
+            log("⚠️ Confirmação NEGATIVA recebida de " + msg.getSrc() + " - Upload FALHOU");
+            quorum.rejeitar();
         }
     }
 
+    /**
+     * Append no final do arquivo: grava e replica só os bytes novos,
+     * com o tamanho esperado antes do append e o CRC32 do delta.
+     */
     public boolean editaArquivo(String nome, byte[] conteudoNovo) {
         log("EDITAR ARQUIVO solicitado (RPC): " + nome + " (" + conteudoNovo.length + " bytes)");
 
-        // Lê o conteúdo atual
-        byte[] conteudoAtual = dados.lerArquivo(nome);
+        List<Address> destinos = exigirDono(nome);
+        String uploadId = UUID.randomUUID().toString();
+        long tamanhoAnterior = -1;
+        GerenciadorLocks.Concessao lock = null;
+        try {
+            lock = adquirirLock(nome);
+            verificarToken(lock);
+
+            // Existência e tamanho confirmado lidos sob o lock: é esse tamanho que as
+            // réplicas precisam ter. Os bytes novos ficam além dele até a publicação.
+            long atual = tamanhoArquivo(nome);
+            if (atual < 0) {
+                log("⚠️ Arquivo não existe, criando novo...");
+                return gravarVersao(nome, conteudoNovo, uploadId, destinos, lock);
+            }
 
-        if (conteudoAtual == null) {
-            log("⚠️ Arquivo não existe, criando novo...");
-            return upload(nome, conteudoNovo);
+            long versao = proximaVersao(nome);
+            descartarNaoConfirmado(nome);
+            if (!dados.anexarArquivo(nome, conteudoNovo, atual)) {
+                log("Falha ao anexar no disco: " + nome);
+                return false;
+            }
+            tamanhoAnterior = atual;
+            log("📌 Append de " + conteudoNovo.length + " bytes - novo tamanho: " + (atual + conteudoNovo.length));
+
+            CRC32 crc = new CRC32();
+            crc.update(conteudoNovo);
+
+            Quorum quorum = iniciarQuorum(uploadId, destinos);
+            canalCluster.send(MensagemCluster.append(nome, conteudoNovo, uploadId, atual, crc.getValue(),
+                    canalCluster.getAddress(), destinos, lock.token, versao).paraMensagem(null));
+
+            boolean ok = quorum.aguardar(TIMEOUT_QUORUM_MS);
+            quorunsUpload.remove(uploadId);
+            if (ok) {
+                log("✅ APPEND confirmado por quorum (" + quorum.getConfirmados() + "): " + nome);
+                String dono = canalCluster.getAddress().toString();
+                trocarVersao(nome, () -> {
+                    registrarAppend(nome, atual, conteudoNovo, versao, dono);
+                    return true;
+                });
+                publicarNasReplicas(nome, uploadId);
+                anunciarAlteracao(nome);
+                return true;
+            }
+
+            log("❌ Quorum não atingido para append uploadId=" + uploadId + " (tentando rollback)");
+            desfazerAppend(nome, uploadId, tamanhoAnterior);
+            return false;
+
+        } catch (Exception e) {
+            log("ERRO NO APPEND: " + e.getMessage());
+            if (tamanhoAnterior >= 0) {
+                desfazerAppend(nome, uploadId, tamanhoAnterior);
+            }
+            return false;
+        } finally {
+            liberarLock(lock);
         }
+    }
 
-        // Junta o conteúdo antigo + o novo
-        byte[] combinado = new byte[conteudoAtual.length + conteudoNovo.length];
-        System.arraycopy(conteudoAtual, 0, combinado, 0, conteudoAtual.length);
-        System.arraycopy(conteudoNovo, 0, combinado, conteudoAtual.length, conteudoNovo.length);
+    /**
+     * Corta localmente os bytes não publicados e pede o mesmo às réplicas
+     */
+    private void desfazerAppend(String nome, String uploadId, long tamanhoAnterior) {
+        dados.truncarArquivo(nome, tamanhoAnterior);
 
-        log("📌 Novo tamanho final: " + combinado.length + " bytes");
+        try {
+            canalCluster.send(MensagemCluster.rollbackAppend(nome, uploadId, tamanhoAnterior, versaoAtual(nome))
+                    .paraMensagem(null));
+        } catch (Exception ex) {
+            log("⚠️ Erro ao enviar rollback de append: " + ex.getMessage());
+        }
 
-        // Reutiliza o mecanismo de upload (com lock + replicação)
-        return upload(nome, combinado);
+        quorunsUpload.remove(uploadId);
     }
 
 
-    public byte[] download(String nome) {
+    public byte[] download(String nome) throws Exception {
         log("DOWNLOAD solicitado (RPC): " + nome);
-        return dados.lerArquivo(nome);
+
+        // Sem lock: a versão confirmada fica fixada mesmo que uma escrita a troque
+        return lerConfirmado(nome, (meta, versao) ->
+                meta == null || versao == null ? null : versao.ler(0, (int) meta.tamanho));
     }
 
+    /**
+     * Raiz da árvore de Merkle dos arquivos deste nó (O(1), sem reler arquivos)
+     */
     public String gerarHashLocal() {
-        log("🔐 HASH LOCAL solicitado (RPC)");
-//        try {
-//            MessageDigest md = MessageDigest.getInstance("SHA-256");
-//
-//            List<String> arquivos = dados.listarArquivos();
-//
-//            // ✅ Proteção contra NULL
-//            if (arquivos == null) {
-//                log("⚠️ Lista de arquivos retornou NULL");
-//                arquivos = new ArrayList<>();
-//            }
-//
-//            Collections.sort(arquivos);
-//            log("📊 Calculando hash de " + arquivos.size() + " arquivos...");
-//
-//            // ✅ Hash vazio se não há arquivos
-//            if (arquivos.isEmpty()) {
-//                log("⚠️ Nenhum arquivo encontrado - retornando hash vazio");
-//                byte[] digest = md.digest();
-//                StringBuilder sb = new StringBuilder();
-//                for (byte b : digest) {
-//                    sb.append(String.format("%02x", b));
-//                }
-//                return sb.toString();
-//            }
-//
-//            for (String nomeArquivo : arquivos) {
-//                try {
-//                    byte[] conteudo = dados.lerArquivo(nomeArquivo);
-//
-//                    if (conteudo != null) {
-//                        md.update(nomeArquivo.getBytes());
-//                        md.update(conteudo);
-//                        log("   ✓ Hash de: " + nomeArquivo + " (" + conteudo.length + " bytes)");
-//                    } else {
-//                        log("   ⚠️ Arquivo NULL: " + nomeArquivo);
-//                    }
-//                } catch (Exception e) {
-//                    log("   ❌ Erro ao ler arquivo '" + nomeArquivo + "': " + e.getMessage());
-//                }
-//            }
-//
-//            byte[] digest = md.digest();
-//            StringBuilder sb = new StringBuilder();
-//            for (byte b : digest) {
-//                sb.append(String.format("%02x", b));
-//            }
-//
-//            String hash = sb.toString();
-//            log("✅ HASH LOCAL calculado: " + hash);
-//            return hash;
-//
-//        } catch (Exception e) {
-//            log("❌ ERRO CRÍTICO ao calcular hash: " + e.getMessage());
-//            e.printStackTrace();
-//            return "ERRO-HASH: " + e.getMessage();
-//        }
-        return "HASH-FUNCTION-DISABLED";
+        String hash = arvore.raizHex();
+        log("🔐 HASH LOCAL solicitado (RPC): " + hash);
+        return hash;
     }
 
+    /**
+     * Apagar é escrita como as outras: no dono, com o lock, preparado nas
+     * réplicas e publicado só com o quorum W. O arquivo codificado não tem
+     * cópia replicada: o PUBLICAR leva os fragmentos espalhados pelos nós.
+     */
     public boolean apagar(String nameFile){
         log("APAGAR ARQUIVO solicitado (RPC): " + nameFile);
+        String uploadId = UUID.randomUUID().toString();
+        GerenciadorLocks.Concessao lock = null;
         try {
-            adquirirLock(nameFile);
+            List<Address> destinos = exigirDono(nameFile);
+            lock = adquirirLock(nameFile);
+            verificarToken(lock);
 
-            boolean ok = dados.deletarArquivo(nameFile);
-            if (ok) {
-                metadata.remove(nameFile);
-                log("✅ Arquivo apagado: " + nameFile);
+            if (!metadata.containsKey(nameFile) && !existeCodificado(nameFile)) {
+                log("⚠️ Arquivo não encontrado para apagar: " + nameFile);
+                return false;
+            }
 
-                try {
-                    MensagemCluster msg = MensagemCluster.apagarArquivo(nameFile);
-                    // Envia para todos (null) -> broadcast
-                    canalCluster.send(new ObjectMessage(null, msg));
-                    log("📤 Mensagem de APAGAR enviada ao cluster: " + nameFile);
-                } catch (Exception e) {
-                    log("❌ Erro ao enviar mensagem de APAGAR ao cluster: " + e.getMessage());
-                    // Não falha a operação local só por causa da mensagem, mas registra
-                }
-            } else {
-                log("⚠️ Falha ao apagar arquivo: " + nameFile);
+            long versao = proximaVersao(nameFile);
+            Quorum quorum = iniciarQuorum(uploadId, destinos);
+            canalCluster.send(MensagemCluster.apagarArquivo(nameFile, uploadId, canalCluster.getAddress(),
+                    destinos, lock.token, versao).paraMensagem(null));
+            if (!aguardarQuorum(nameFile, uploadId, quorum)) {
+                return false;
             }
-            return ok;
+
+            aplicarApagar(nameFile, versao);
+            publicarNasReplicas(nameFile, uploadId);
+            anunciarAlteracao(nameFile);
+            log("✅ Arquivo apagado: " + nameFile);
+            return true;
         } catch (Exception e) {
             log("❌ ERRO ao apagar arquivo: " + e.getMessage());
             return false;
         } finally {
-            liberarLock(nameFile);
+            liberarLock(lock);
         }
     }
 
@@ -406,31 +1253,20 @@ public class ControleServer implements Receiver, Closeable {
                 return true;
             }
 
-            transacoesAguardando.put(transactionId, servidores);
-            statusTransacao.put(transactionId, true);
+            // Todos os outros servidores precisam confirmar
+            Quorum quorum = new Quorum(servidores.size());
+            quorunsTransacao.put(transactionId, quorum);
 
             MensagemCluster msg = MensagemCluster.salvarUsuario(usuario, transactionId);
-            canalCluster.send(new ObjectMessage(null, msg));
-
-            // Aguardar confirmações
-            long inicio = System.currentTimeMillis();
-            while (System.currentTimeMillis() - inicio < 5000) {
-                Set<Address> pendentes = transacoesAguardando.get(transactionId);
+            canalCluster.send(msg.paraMensagem(null));
 
-                if (pendentes == null || pendentes.isEmpty()) {
-                    Boolean sucesso = statusTransacao.get(transactionId);
+            boolean sucesso = quorum.aguardar(TIMEOUT_TRANSACAO_MS);
+            quorunsTransacao.remove(transactionId);
 
-                    if (sucesso != null && sucesso) {
-                        log("✅ TRANSAÇÃO CONCLUÍDA");
-                        log("════════════════════════════════════════");
-                        transacoesAguardando.remove(transactionId);
-                        statusTransacao.remove(transactionId);
-                        return true;
-                    } else {
-                        break;
-                    }
-                }
-                Thread.sleep(100);
+            if (sucesso) {
+                log("✅ TRANSAÇÃO CONCLUÍDA");
+                log("════════════════════════════════════════");
+                return true;
             }
 
             // Rollback
@@ -440,7 +1276,7 @@ public class ControleServer implements Receiver, Closeable {
             MensagemCluster rollback = MensagemCluster.rollbackUsuario(
                     usuario.getUsername(), transactionId
             );
-            canalCluster.send(new ObjectMessage(null, rollback));
+            canalCluster.send(rollback.paraMensagem(null));
             throw new RuntimeException("[Transação Abortada] Falha ao sincronizar usuário " + usuario.getUsername());
         } catch (Exception e) {
             log("❌ ERRO na transação: " + e.getMessage());
@@ -452,72 +1288,149 @@ public class ControleServer implements Receiver, Closeable {
         }
     }
 
+    /**
+     * Nada do upload foi publicado aqui: descarta a versão preparada (ou os blocos recebidos)
+     */
     private void aplicarRollbackUpload(MensagemCluster m) {
-        synchronized (this) {
-            log("🔙 RECEBENDO ROLLBACK de upload: " + m.arquivo);
+        log("🔙 RECEBENDO ROLLBACK de upload: " + m.arquivo);
+
+        commitsPendentes.remove(m.uploadId);
+        publicacoesAntecipadas.remove(m.uploadId);
+        escritasAlheias.remove(m.uploadId);
+        descartarPreparada(m.uploadId);
+        dados.descartarTemporario(m.uploadId);
+        log("✅ Rollback de upload aplicado");
+    }
 
-            try {
-                dados.deletarArquivo(m.arquivo);
-                metadata.remove(m.arquivo);
+    private void aplicarAppendCluster(MensagemCluster m) {
+        Address origin = m.serverOrigin;
+        if (!ehDestino(m)) {
+            anotarEscritaAlheia(m);
+            return;
+        }
+        log("📥 RECEBENDO replicação APPEND: " + m.arquivo + " (+" + m.conteudo.length + " bytes)");
 
-                log("✅ Rollback de upload aplicado");
-            } catch (Exception e) {
-                log("❌ Erro no rollback: " + e.getMessage());
-            }
+        if (!locks.aceitarToken(m.arquivo, m.tokenLock)) {
+            log("⛔ Append com token de lock obsoleto rejeitado: " + m.arquivo);
+            enviarConfirmacaoUploadNegativa(m.uploadId, origin);
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(m.conteudo);
+        if (crc.getValue() != m.checksum) {
+            log("❌ Checksum do append não confere: " + m.arquivo);
+            enviarConfirmacaoUploadNegativa(m.uploadId, origin);
+            return;
+        }
+
+        descartarNaoConfirmado(m.arquivo);
+        if (!dados.anexarArquivo(m.arquivo, m.conteudo, m.offset)) {
+            log("❌ Falha ao aplicar append (réplica divergente?)");
+            enviarConfirmacaoUploadNegativa(m.uploadId, origin);
+            return;
         }
+
+        // Os bytes novos ficam além do tamanho confirmado: invisíveis até o PUBLICAR
+        String nome = m.arquivo;
+        String dono = String.valueOf(m.serverOrigin);
+        prepararEscrita(m.uploadId, new EscritaPreparada(nome,
+                () -> trocarVersao(nome, () -> {
+                    registrarAppend(nome, m.offset, m.conteudo, m.versao, dono);
+                    return true;
+                }),
+                () -> dados.truncarArquivo(nome, m.offset)));
+        log("✅ Append preparado: " + (m.offset + m.conteudo.length) + " bytes");
+        enviarConfirmacaoUpload(m.uploadId, origin);
     }
 
     /**
-     * ✅ Aplicar rollback de append
+     * Bytes além do tamanho confirmado são de um append que não foi publicado
      */
-    private void aplicarRollbackAppend(MensagemCluster m) {
-        synchronized (this) {
-            log("🔙 RECEBENDO ROLLBACK de append: " + m.arquivo);
-
-            try {
-                // Restaurar conteúdo anterior
-                if (m.conteudo != null) {
-                    dados.salvarArquivo(m.arquivo, m.conteudo);
-                    metadata.put(m.arquivo, (long) m.conteudo.length);
-
-                    log("✅ Rollback de append aplicado - Restaurado para " + m.conteudo.length + " bytes");
-                } else {
-                    log("⚠️ Conteúdo anterior NULL - não foi possível restaurar");
-                }
-            } catch (Exception e) {
-                log("❌ Erro no rollback: " + e.getMessage());
-            }
+    private void descartarNaoConfirmado(String nome) {
+        MetaArquivo meta = metadata.get(nome);
+        if (meta != null && dados.tamanhoArquivo(nome) > meta.tamanho) {
+            dados.truncarArquivo(nome, meta.tamanho);
         }
     }
 
+    /**
+     * ✅ Aplicar rollback de append: corta os bytes preparados (nunca foram visíveis)
+     */
+    private void aplicarRollbackAppend(MensagemCluster m) {
+        log("🔙 RECEBENDO ROLLBACK de append: " + m.arquivo + " (volta para " + m.offset + " bytes)");
+        escritasAlheias.remove(m.uploadId);
+        descartarPreparada(m.uploadId);
+        log("✅ Rollback de append aplicado");
+    }
+
     // =========================================================================
     //  CALLBACKS JGROUPS
     // =========================================================================
 
     @Override
     public void receive(Message msg) {
-        if (msg.getSrc() != null && msg.getSrc().equals(canalCluster.getAddress())) {
+        // A própria mensagem não é aplicada: não precisa descomprimir o corpo
+        boolean propria = msg.getSrc() != null && msg.getSrc().equals(canalCluster.getAddress());
+        MensagemCluster m = MensagemCluster.de(msg, !propria);
+        if (m == null) return;
+
+        // Todos os membros contam as escritas na ordem de entrega, inclusive as próprias
+        switch (m.acao) {
+            case UPLOAD_COMMIT, APPEND, ROLLBACK_UPLOAD, ROLLBACK_APPEND, APAGAR_ARQUIVO, PUBLICAR_ESCRITA ->
+                    registro.registrar(m.arquivo);
+            case PEDIDO_CATCHUP -> {
+                if (propria) registro.iniciarCatchup();
+            }
+            default -> {}
+        }
+
+        if (propria) {
             return;
         }
 
-        Object obj = msg.getObject();
-        if (!(obj instanceof MensagemCluster)) return;
-        MensagemCluster m = (MensagemCluster) obj;
-
+        // Escritas vão para a listra do arquivo (ou do usuário); locks e
+        // confirmações são leves e continuam na thread de entrega
         switch (m.acao) {
-            case UPLOAD -> aplicarUploadCluster(msg, m);
-            case LOCK_REQUEST -> processarPedidoDeLock(msg.getSrc(), m.arquivo);
-            case LOCK_RELEASE -> processarLiberacaoDeLock(m.arquivo);
-            case LOCK_CONCEDIDO -> receberLockConcedido(m.arquivo);
-            case SALVAR_USUARIO -> aplicarSalvarUsuarioCluster(m);
-            case ROLLBACK_USUARIO -> aplicarRollbackUsuario(m);
+            case UPLOAD_BLOCO -> aplicacao.executar(m.arquivo, () -> aplicarBlocoUploadCluster(m));
+            case UPLOAD_COMMIT -> aplicarEscrita(m, () -> aplicarCommitUploadCluster(m));
+            case LOCK_REQUEST, LOCK_RELEASE, LOCK_CONCEDIDO, LOCK_RENOVAR, LOCK_REAFIRMAR ->
+                    locks.processar(msg.getSrc(), m);
+            case SALVAR_USUARIO -> aplicacao.executar(chaveUsuario(m), () -> aplicarSalvarUsuarioCluster(m));
+            case ROLLBACK_USUARIO -> aplicacao.executar(chaveUsuario(m), () -> aplicarRollbackUsuario(m));
             case CONFIRMACAO_TRANSACAO -> receberConfirmacaoTransacao(msg, m);
-            case ROLLBACK_UPLOAD -> aplicarRollbackUpload(m);
+            case ROLLBACK_UPLOAD -> aplicarEscrita(m, () -> aplicarRollbackUpload(m));
+            case APPEND -> aplicarEscrita(m, () -> aplicarAppendCluster(m));
+            case ROLLBACK_APPEND -> aplicarEscrita(m, () -> aplicarRollbackAppend(m));
+            case PUBLICAR_ESCRITA -> aplicarEscrita(m, () -> aplicarPublicacao(m));
             case CONFIRMACAO_UPLOAD -> receberConfirmacaoUpload(msg, m);
-            case APAGAR_ARQUIVO -> aplicarApagarCluster(m);
+            case APAGAR_ARQUIVO -> aplicarEscrita(m, () -> aplicarApagarCluster(m));
+            case PEDIDO_ARQUIVO -> envioEstado.executar(m.arquivo, () -> enviarArquivo(msg.getSrc(), m));
+            case ARQUIVO_BLOCO -> aplicacao.executar(m.arquivo, () -> receberBlocoArquivo(m));
+            case ARQUIVO_FIM -> aplicacao.executar(m.arquivo, () -> receberFimArquivo(m));
+            case PEDIDO_CATCHUP -> responderCatchup(msg.getSrc(), m);
+            case CATCHUP_RESPOSTA -> respostaCatchup.complete(m);
+            case AE_PEDIDO_NOS, AE_NOS, AE_PEDIDO_BALDES, AE_BALDES -> antiEntropia.processar(msg.getSrc(), m);
         }
     }
 
+    /**
+     * Escrita replicada na listra do arquivo; durante a sincronização
+     * o arquivo fica marcado para não ser sobrescrito pela cópia do doador
+     */
+    private void aplicarEscrita(MensagemCluster m, Runnable handler) {
+        aplicacao.executar(m.arquivo, () -> {
+            if (sincronizando) {
+                alteradosNaSincronizacao.add(m.arquivo);
+            }
+            handler.run();
+        });
+    }
+
+    private static String chaveUsuario(MensagemCluster m) {
+        return "usuario:" + m.usuario.getUsername();
+    }
+
     @Override
     public void viewAccepted(View view) {
         log("═══════════════════════════════════════");
@@ -529,6 +1442,8 @@ public class ControleServer implements Receiver, Closeable {
         lider = novoLider;
 
         log("👑 LÍDER: " + lider);
+        anel = Posicionamento.anel(view.getMembers());
+        locks.viewMudou(view);
         log("📋 MEMBROS:");
         for (int i = 0; i < view.getMembers().size(); i++) {
             Address addr = view.getMembers().get(i);
@@ -538,75 +1453,442 @@ public class ControleServer implements Receiver, Closeable {
         }
         log("═══════════════════════════════════════");
 
-        if (souNovoMembro && !souLider()) {
+        if (souNovoMembro && souLider()) {
+            // Sozinho: ninguém para comparar, a numeração recomeça num histórico novo
+            registro.novoHistorico();
+        } else if (souNovoMembro) {
+            sincronizando = true;
+            Thread t = new Thread(this::recuperarEstado, "catchup");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    // =========================================================================
+    //  CATCH-UP APÓS REINÍCIO
+    // =========================================================================
+
+    /**
+     * Tenta o catch-up incremental pelo log de alterações; se o coordenador
+     * não cobre o ponto em que este nó parou, cai na transferência de estado
+     * por manifesto.
+     */
+    private void recuperarEstado() {
+        Address doador = lider;
+        MensagemCluster resposta = null;
+        try {
+            // Após queda, o que estava nas listras pode não ter sido aplicado; além
+            // desta margem (filas acima do limite de aviso) a anti-entropia repara
+            long seq = registro.seqSeguro(THREADS_APLICACAO * (FILA_APLICACAO + 1));
+            log("🆕 SOU NOVO MEMBRO - pedindo catch-up desde seq " + seq + " (histórico " + registro.getHistorico() + ")");
+            canalCluster.send(MensagemCluster.pedidoCatchup(registro.getHistorico(), seq).paraMensagem(null));
+
+            resposta = respostaCatchup.get(TIMEOUT_CATCHUP_MS, TimeUnit.MILLISECONDS);
+            replicarUsuariosFaltantes(resposta.usuarios);
+
+            if (resposta.nomes != null) {
+                log("⚡ Catch-up incremental: " + resposta.nomes.size() + " arquivos alterados desde seq " + seq);
+                concluirRecuperacao(resposta, sincronizarNomes(doador, resposta.nomes));
+                return;
+            }
+            log("📦 Log do coordenador não cobre seq " + seq + " - usando transferência de estado");
+        } catch (Exception e) {
+            log("⚠️ Catch-up sem resposta (" + e.getMessage() + ") - usando transferência de estado");
+        }
+
+        boolean ok = false;
+        try {
+            canalCluster.getState(null, 10000);
+            log("✅ Estado recebido!");
+            ok = manifestoRecebido != null && sincronizarArquivos(doador, manifestoRecebido);
+        } catch (Exception e) {
+            log("❌ Erro ao solicitar estado: " + e.getMessage());
+            encerrarSincronizacao();
+        }
+        concluirRecuperacao(resposta, ok);
+    }
+
+    /**
+     * Só agora a numeração do coordenador é gravada: se o processo cair no
+     * meio da sincronização, o próximo reinício pede o mesmo trecho de novo.
+     * Sincronização incompleta começa um histórico novo, o que força a
+     * comparação por manifesto no próximo reinício.
+     */
+    private void concluirRecuperacao(MensagemCluster resposta, boolean ok) {
+        if (resposta != null) {
+            registro.definirBase(resposta.historico, resposta.seq);
+        }
+        if (resposta == null || !ok) {
+            registro.novoHistorico();
+        }
+    }
+
+    /**
+     * Coordenador: responde com os nomes alterados desde a seq pedida
+     * (capturados no ponto de entrega do pedido) e a lista de usuários
+     */
+    private void responderCatchup(Address destino, MensagemCluster pedido) {
+        if (!souLider()) return;
+
+        RegistroAlteracoes.Catchup catchup = registro.alteradosDesde(pedido.historico, pedido.seq);
+        envioEstado.executar("catchup", () -> {
             try {
-                log("🆕 SOU NOVO MEMBRO - Solicitando estado...");
-                Thread.sleep(500);
-                canalCluster.getState(null, 10000);
-                log("✅ Estado recebido!");
+                List<Usuario> usuarios = dados.listarUsuarios();
+                canalCluster.send(MensagemCluster.respostaCatchup(catchup.historico, catchup.seq, catchup.nomes,
+                        usuarios == null ? null : new ArrayList<>(usuarios)).paraMensagem(destino));
+                log("📤 Catch-up para " + destino + ": " +
+                        (catchup.nomes == null ? "não coberto" : catchup.nomes.size() + " arquivos"));
             } catch (Exception e) {
-                log("❌ Erro ao solicitar estado: " + e.getMessage());
+                log("❌ Erro ao responder catch-up: " + e.getMessage());
+            }
+        });
+    }
+
+    private void replicarUsuariosFaltantes(List<Usuario> usuarios) {
+        if (usuarios == null) return;
+        int novos = 0;
+        for (Usuario u : usuarios) {
+            if (dados.buscarUsuarioPorUsername(u.getUsername()) == null && dados.replicarUsuario(u)) {
+                novos++;
             }
         }
+        log("👤 Usuários recebidos: " + novos);
     }
 
+    /**
+     * Estado = usuários + manifesto dos arquivos (nome, tamanho, digest).
+     * O conteúdo não vai aqui: o novo membro pede só o que difere.
+     */
     @Override
     public void getState(OutputStream out) throws Exception {
         log("📤 ENVIANDO ESTADO...");
-        EstadoCluster estado = new EstadoCluster();
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+
+        List<Usuario> usuarios = dados.listarUsuarios();
+        Util.objectToStream(usuarios == null ? new ArrayList<Usuario>() : new ArrayList<>(usuarios), dos);
+
+        Manifesto manifesto = gerarManifesto();
+        manifesto.escrever(dos);
+        dos.flush();
+
+        log("✅ Estado enviado: " + manifesto.size() + " arquivos no manifesto, " +
+                (usuarios == null ? 0 : usuarios.size()) + " usuários");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void setState(InputStream in) throws Exception {
+        log("📥 RECEBENDO ESTADO...");
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+
+        replicarUsuariosFaltantes((List<Usuario>) Util.objectFromStream(dis));
+
+        Manifesto manifesto = Manifesto.ler(dis);
+        log("✅ Estado aplicado: manifesto com " + manifesto.size() + " arquivos");
+
+        // Os arquivos são buscados por recuperarEstado, fora do callback de estado
+        manifestoRecebido = manifesto;
+    }
+
+    // =========================================================================
+    //  SINCRONIZAÇÃO DE ARQUIVOS (NOVO MEMBRO)
+    // =========================================================================
+
+    private Manifesto gerarManifesto() {
+        Manifesto manifesto = new Manifesto();
+        for (Map.Entry<String, MetaArquivo> e : metadata.entrySet()) {
+            manifesto.adicionar(e.getKey(), e.getValue().tamanho, e.getValue().digest);
+        }
+        return manifesto;
+    }
+
+    /**
+     * Compara o manifesto do doador com o disco local, apaga o que sobrou
+     * e busca um a um só os arquivos que faltam ou diferem.
+     */
+    private boolean sincronizarArquivos(Address doador, Manifesto remoto) {
+        try {
+            Manifesto local = gerarManifesto();
+
+            // Só conta a ausência no doador se ele é réplica do arquivo
+            int apagados = 0;
+            for (String nome : remoto.sobrando(local.getEntradas().keySet())) {
+                if (donos(nome).contains(doador) && !alteradosNaSincronizacao.contains(nome)
+                        && apagarConfirmado(nome, versaoAtual(nome))) {
+                    apagados++;
+                }
+            }
+            log("🗑️ Arquivos que o doador não tem mais, apagados: " + apagados);
 
-        estado.metadata = new HashMap<>();
-        synchronized (metadata) {
-            estado.metadata.putAll(metadata);
+            List<String> buscar = remoto.diferentes(local);
+            log("🔄 Sincronizando: " + buscar.size() + " de " + remoto.size() + " arquivos diferem do doador");
+            return sincronizarNomes(doador, buscar);
+        } finally {
+            encerrarSincronizacao();
         }
+    }
 
-        estado.arquivos = new HashMap<>();
-        for (String nome : estado.metadata.keySet()) {
-            byte[] conteudo = dados.lerArquivo(nome);
-            if (conteudo != null) {
-                estado.arquivos.put(nome, conteudo);
+    /**
+     * Busca um a um os arquivos de que este nó é réplica, do doador se ele
+     * também for réplica, senão das outras réplicas em ordem do anel (se a
+     * réplica não tiver mais o arquivo, apaga o local)
+     */
+    private boolean sincronizarNomes(Address doador, List<String> nomes) {
+        try {
+            int falhas = 0;
+            int meus = 0;
+            for (String nome : nomes) {
+                if (alteradosNaSincronizacao.contains(nome) || !souDono(nome)) continue;
+                meus++;
+                if (!buscarDeDonos(doador, nome)) {
+                    log("⚠️ Falha ao buscar " + nome + " das réplicas");
+                    falhas++;
+                }
             }
+            log("✅ Sincronização concluída: " + (meus - falhas) + "/" + meus + " arquivos");
+            return falhas == 0;
+        } finally {
+            encerrarSincronizacao();
         }
+    }
 
-        estado.usuarios = dados.listarUsuarios();
-        if (estado.usuarios == null) {
-            estado.usuarios = Collections.emptyList();
+    private boolean buscarDeDonos(Address preferido, String nome) {
+        List<Address> fontes = new ArrayList<>(donos(nome));
+        fontes.remove(canalCluster.getAddress());
+        if (fontes.remove(preferido)) {
+            fontes.add(0, preferido);
+        }
+        for (Address fonte : fontes) {
+            if (buscarArquivo(fonte, nome, false)) return true;
         }
+        return false;
+    }
 
-        Util.objectToStream(estado, new DataOutputStream(out));
-        log("✅ Estado enviado: " + estado.arquivos.size() + " arquivos, " +
-                estado.usuarios.size() + " usuários");
+    private void encerrarSincronizacao() {
+        sincronizando = false;
+        alteradosNaSincronizacao.clear();
     }
 
-    @Override
-    public void setState(InputStream in) throws Exception {
-        log("📥 RECEBENDO ESTADO...");
-        EstadoCluster estado = (EstadoCluster) Util.objectFromStream(new DataInputStream(in));
+    /**
+     * Pede um arquivo ao doador e espera ele chegar inteiro. Em segundo plano
+     * (anti-entropia) o doador respeita o limite de banda e a cópia só é
+     * aceita se for mais nova que a local.
+     */
+    private boolean buscarArquivo(Address doador, String nome, boolean segundoPlano) {
+        String sessao = UUID.randomUUID().toString();
+        CompletableFuture<Boolean> fim = new CompletableFuture<>();
+        transferencias.put(sessao, fim);
+        if (segundoPlano) transferenciasSegundoPlano.add(sessao);
+        try {
+            canalCluster.send(MensagemCluster.pedidoArquivo(nome, sessao, segundoPlano).paraMensagem(doador));
+            return fim.get(TIMEOUT_QUORUM_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log("⚠️ Erro ao buscar " + nome + ": " + e.getMessage());
+            return false;
+        } finally {
+            transferencias.remove(sessao);
+            transferenciasSegundoPlano.remove(sessao);
+            dados.descartarTemporario(sessao);
+        }
+    }
+
+    /**
+     * Doador: envia a versão confirmada em blocos mapeados do disco, sem lock
+     * (a versão fica fixada durante o envio)
+     */
+    private void enviarArquivo(Address destino, MensagemCluster pedido) {
+        String nome = pedido.arquivo;
+        try {
+            lerConfirmado(nome, (meta, versao) -> {
+                long tamanho = meta == null || versao == null ? -1 : meta.tamanho;
+                for (long offset = 0; offset < tamanho; offset += TAMANHO_BLOCO_CLUSTER) {
+                    int len = (int) Math.min(TAMANHO_BLOCO_CLUSTER, tamanho - offset);
+                    ByteBuffer bloco = versao.mapear(offset, len);
+                    if (bloco == null) {
+                        throw new IOException("Falha ao mapear bloco " + offset + " de " + nome);
+                    }
+                    if (pedido.segundoPlano) {
+                        banda.consumir(len);
+                    }
+                    canalCluster.send(MensagemCluster.blocoArquivo(nome, pedido.uploadId, offset, bloco)
+                            .paraMensagem(destino));
+                }
+                canalCluster.send(MensagemCluster.fimArquivo(nome, pedido.uploadId, tamanho, tamanho >= 0,
+                        meta != null ? meta.versao : versaoAtual(nome)).paraMensagem(destino));
+                log("📤 Arquivo enviado para " + destino + ": " + nome + " (" + tamanho + " bytes)");
+                return null;
+            });
+        } catch (Exception e) {
+            log("❌ Erro ao enviar " + nome + " para " + destino + ": " + e.getMessage());
+        }
+    }
+
+    private void receberBlocoArquivo(MensagemCluster m) {
+        if (transferencias.containsKey(m.uploadId)) {
+            dados.gravarBlocoTemporario(m.uploadId, m.offset, m.bloco);
+        }
+    }
+
+    private void receberFimArquivo(MensagemCluster m) {
+        CompletableFuture<Boolean> fim = transferencias.get(m.uploadId);
+        if (fim == null) return;
+
+        boolean ok;
+        if (alteradosNaSincronizacao.contains(m.arquivo)
+                || (transferenciasSegundoPlano.contains(m.uploadId) && versaoAtual(m.arquivo) >= m.versao)) {
+            // A replicação já trouxe uma versão mais nova
+            ok = true;
+        } else if (!m.sucesso) {
+            apagarConfirmado(m.arquivo, m.versao);
+            esquecerArquivo(m.arquivo, m.versao);
+            ok = true;
+        } else {
+            ok = Math.max(0, dados.tamanhoTemporario(m.uploadId)) == m.tamanho
+                    && dados.prepararTemporario(m.uploadId)
+                    && trocarVersao(m.arquivo, () -> {
+                        if (!dados.publicarTemporario(m.uploadId, m.arquivo)) return false;
+                        registrarDoDisco(m.arquivo, m.versao, null);
+                        return true;
+                    });
+        }
+        anunciarAlteracao(m.arquivo);
+        fim.complete(ok);
+    }
+
+    // =========================================================================
+    //  ANTI-ENTROPIA
+    // =========================================================================
+
+    /**
+     * Visão desta réplica para o anti-entropia
+     */
+    private class ReplicaLocal implements AntiEntropia.Replica {
+
+        @Override
+        public ArvoreMerkle arvore() {
+            return arvore;
+        }
+
+        @Override
+        public List<AntiEntropia.Entrada> entradasBalde(int balde) {
+            List<AntiEntropia.Entrada> entradas = new ArrayList<>();
+            for (String nome : arvore.conteudoBalde(balde).keySet()) {
+                MetaArquivo meta = metadata.get(nome);
+                if (meta != null) {
+                    entradas.add(new AntiEntropia.Entrada(nome, meta.digest, meta.versao));
+                }
+            }
+            for (Lapide lapide : lapides.values()) {
+                if (arvore.balde(lapide.getNome()) == balde) {
+                    entradas.add(new AntiEntropia.Entrada(lapide.getNome(), null, lapide.getVersao()));
+                }
+            }
+            return entradas;
+        }
+
+        @Override
+        public boolean buscar(Address par, String nome) {
+            // Arquivo de outras réplicas: a cópia mais nova do par não é deste nó
+            return souDono(nome) && buscarArquivo(par, nome, true);
+        }
+
+        @Override
+        public void apagar(String nome, long versao) {
+            // Na listra do arquivo, para não cruzar com uma escrita replicada
+            aplicacao.executar(nome, () -> {
+                if (versaoAtual(nome) < versao && apagarConfirmado(nome, versao)) {
+                    anunciarAlteracao(nome);
+                }
+            });
+        }
+
+        @Override
+        public List<Address> pares() {
+            List<Address> pares = new ArrayList<>(canalCluster.getView().getMembers());
+            pares.remove(canalCluster.getAddress());
+            return pares;
+        }
+
+        @Override
+        public boolean ocupado() {
+            return sincronizando;
+        }
 
-        if (estado == null) return;
+        @Override
+        public void aposRodada() {
+            int orfaos = dados.limparTemporariosAntigos(TIMEOUT_SESSAO_MS);
+            if (orfaos > 0) log("🧹 Temporários abandonados apagados: " + orfaos);
 
-        synchronized (metadata) {
-            metadata.clear();
-            metadata.putAll(estado.metadata);
+            coletarLapides(System.currentTimeMillis() - TTL_LAPIDE_MS);
+            descartarCopiasAntigas();
         }
+    }
+
+    /**
+     * Lápide vencida só sai quando todos os donos atuais do nome confirmam
+     * que não guardam cópia anterior ao apagamento: sem a lápide, uma cópia
+     * velha num dono voltaria pelo anti-entropia como a versão mais nova.
+     * O prazo conta da hora do apagamento, não da versão.
+     */
+    private void coletarLapides(long limite) {
+        List<String> vencidas = new ArrayList<>();
+        lapides.forEach((nome, lapide) -> {
+            if (lapide.getApagadoEm() < limite) vencidas.add(nome);
+        });
+        if (vencidas.isEmpty()) return;
 
-        int arquivos = 0;
-        for (Map.Entry<String, byte[]> e : estado.arquivos.entrySet()) {
-            if (dados.salvarArquivo(e.getKey(), e.getValue())) {
-                arquivos++;
+        AnelHash<Address> anelRpc = Posicionamento.anel(canalRPC.getView().getMembers());
+        Map<Address, List<String>> porDono = new HashMap<>();
+        for (String nome : vencidas) {
+            for (Address dono : posicionamento.donos(anelRpc, nome)) {
+                porDono.computeIfAbsent(dono, d -> new ArrayList<>()).add(nome);
             }
         }
 
-        int usuarios = 0;
-        for (Usuario u : estado.usuarios) {
-            if (dados.buscarUsuarioPorUsername(u.getUsername()) == null) {
-                if (dados.replicarUsuario(u)) {
-                    usuarios++;
+        Map<String, Integer> confirmacoes = new HashMap<>();
+        for (Map.Entry<Address, List<String>> e : porDono.entrySet()) {
+            String[] nomes = e.getValue().toArray(new String[0]);
+            long[] versoes = new long[nomes.length];
+            for (int i = 0; i < nomes.length; i++) {
+                Lapide lapide = lapides.get(nomes[i]);
+                versoes[i] = lapide == null ? Long.MAX_VALUE : lapide.getVersao();
+            }
+            try {
+                boolean[] confirmados = dispatcher.callRemoteMethod(e.getKey(),
+                        new MethodCall("confirmarApagados", new Object[]{nomes, versoes},
+                                new Class[]{String[].class, long[].class}),
+                        new RequestOptions(ResponseMode.GET_FIRST, TIMEOUT_FRAGMENTO_MS));
+                for (int i = 0; i < nomes.length; i++) {
+                    if (confirmados[i]) confirmacoes.merge(nomes[i], 1, Integer::sum);
                 }
+            } catch (Exception ex) {
+                log("⚠️ Dono " + e.getKey() + " não confirmou lápides: " + ex.getMessage());
+            }
+        }
+
+        int coletadas = 0;
+        for (String nome : vencidas) {
+            int donos = posicionamento.donos(anelRpc, nome).size();
+            Lapide lapide = lapides.get(nome);
+            if (donos > 0 && lapide != null && confirmacoes.getOrDefault(nome, 0) == donos
+                    && lapides.remove(nome, lapide)) {
+                dados.removerLapide(nome);
+                coletadas++;
             }
         }
+        if (coletadas > 0) log("🧹 Lápides coletadas: " + coletadas + "/" + vencidas.size());
+    }
 
-        log("✅ Estado aplicado: " + arquivos + " arquivos, " + usuarios + " usuários");
+    /**
+     * Para cada nome: este nó não tem cópia com versão até a do apagamento?
+     */
+    public boolean[] confirmarApagados(String[] nomes, long[] versoes) {
+        boolean[] confirmados = new boolean[nomes.length];
+        for (int i = 0; i < nomes.length; i++) {
+            MetaArquivo meta = metadata.get(nomes[i]);
+            confirmados[i] = meta == null || meta.versao > versoes[i];
+        }
+        return confirmados;
     }
 
     // =========================================================================
@@ -620,55 +1902,63 @@ public class ControleServer implements Receiver, Closeable {
     private void enviarConfirmacaoUpload(String uploadId, Address coordenador) {
         try {
             MensagemCluster conf = MensagemCluster.confirmarUpload(uploadId, true);
-            canalCluster.send(new ObjectMessage(coordenador, conf));
+            canalCluster.send(conf.paraMensagem(coordenador));
             log("📤 Confirmação enviada para: " + coordenador);
         } catch (Exception e) {
             log("❌ Erro ao enviar confirmação: " + e.getMessage());
         }
     }
 
+    /**
+     * Primeira fase do apagar: as réplicas confirmam e todos os nós guardam o
+     * apagamento até o PUBLICAR (quem não é réplica pode ter cópia velha ou
+     * fragmentos do arquivo)
+     */
     private void aplicarApagarCluster(MensagemCluster m) {
-        synchronized (this) {
-            String nome = m.arquivo;
-            log("📥 RECEBENDO APAGAR do cluster: " + nome + " (origem=" + m.serverOrigin + ")");
-            try {
-                boolean ok = dados.deletarArquivo(nome);
-                metadata.remove(nome);
-                if (ok) {
-                    log("✅ Arquivo removido via cluster: " + nome);
-                } else {
-                    log("⚠️ Arquivo não encontrado/no deletado via cluster: " + nome);
-                }
-            } catch (Exception e) {
-                log("❌ Erro ao aplicar APAGAR do cluster: " + e.getMessage());
-            }
+        String nome = m.arquivo;
+        log("📥 RECEBENDO APAGAR do cluster: " + nome + " (origem=" + m.serverOrigin + ")");
+        if (!locks.aceitarToken(nome, m.tokenLock)) {
+            log("⛔ APAGAR com token de lock obsoleto rejeitado: " + nome);
+            if (ehDestino(m)) enviarConfirmacaoUploadNegativa(m.uploadId, m.serverOrigin);
+            return;
         }
+
+        prepararEscrita(m.uploadId, new EscritaPreparada(nome, () -> aplicarApagar(nome, m.versao), () -> {}));
+        if (ehDestino(m)) enviarConfirmacaoUpload(m.uploadId, m.serverOrigin);
+    }
+
+    /**
+     * Apagar publicado: cópia replicada e fragmentos saem, fica a lápide
+     */
+    private void aplicarApagar(String nome, long versao) {
+        boolean ok = apagarConfirmado(nome, versao);
+        ok |= dados.apagarFragmentos(nome, versao);
+        esquecerArquivo(nome, versao);
+        log(ok ? "✅ Arquivo removido: " + nome : "⚠️ Nada de " + nome + " guardado aqui para remover");
     }
 
     private void aplicarSalvarUsuarioCluster(MensagemCluster m) {
-        synchronized (this) {
-            log("📥 RECEBENDO replicação USUÁRIO: " + m.usuario.getUsername());
+        log("📥 RECEBENDO replicação USUÁRIO: " + m.usuario.getUsername());
 
-            try {
-                Usuario existente = dados.buscarUsuarioPorUsername(m.usuario.getUsername());
-                if (existente != null) {
-                    log("⚠️ Usuário já existe");
-                    enviarConfirmacaoTransacao(m.transactionId, false);
-                    return;
-                }
+        try {
+            Usuario existente = dados.buscarUsuarioPorUsername(m.usuario.getUsername());
+            if (existente != null) {
+                log("⚠️ Usuário já existe");
+                enviarConfirmacaoTransacao(m.transactionId, false);
+                return;
+            }
 
-                boolean ok = dados.replicarUsuario(m.usuario);
-                enviarConfirmacaoTransacao(m.transactionId, ok);
+            boolean ok = dados.replicarUsuario(m.usuario);
+            enviarConfirmacaoTransacao(m.transactionId, ok);
 
-                if (ok) {
-                    log("✅ Replicação aplicada");
-                } else {
-                    log("❌ Falha na replicação");
-                }
-            } catch (Exception e) {
-                log("❌ Erro: " + e.getMessage());
-                enviarConfirmacaoTransacao(m.transactionId, false);
+            if (ok) {
+                log("✅ Replicação aplicada");
+            } else {
+                log("❌ Falha na replicação");
             }
+        } catch (Exception e) {
+            log("❌ Erro: " + e.getMessage());
+            enviarConfirmacaoTransacao(m.transactionId, false);
         }
     }
 
@@ -685,167 +1975,294 @@ public class ControleServer implements Receiver, Closeable {
     private void enviarConfirmacaoTransacao(String txId, boolean sucesso) {
         try {
             MensagemCluster conf = MensagemCluster.confirmarTransacao(txId, sucesso);
-            canalCluster.send(new ObjectMessage(lider, conf));
+            canalCluster.send(conf.paraMensagem(lider));
         } catch (Exception e) {
             log("❌ Erro ao enviar confirmação: " + e.getMessage());
         }
     }
 
     private void receberConfirmacaoTransacao(Message msg, MensagemCluster m) {
-        Set<Address> pendentes = transacoesAguardando.get(m.transactionId);
-        if (pendentes != null) {
-            pendentes.remove(msg.getSrc());
-            if (!m.sucesso) {
-                statusTransacao.put(m.transactionId, false);
+        Quorum quorum = quorunsTransacao.get(m.transactionId);
+        if (quorum != null) {
+            if (m.sucesso) {
+                quorum.confirmar(msg.getSrc());
+            } else {
+                quorum.rejeitar();
             }
         }
     }
 
     // =========================================================================
-    //  LOCK DISTRIBUÍDO
+    //  POSICIONAMENTO
     // =========================================================================
 
-    private void adquirirLock(String arquivo) throws Exception {
-        if (souLider()) {
-            log("👑 Sou LÍDER. Bloqueando localmente: " + arquivo);
-            bloquearOuEnfileirar(arquivo, canalCluster.getAddress());
+    private List<Address> donos(String nome) {
+        return posicionamento.donos(anel, nome);
+    }
 
-            // ✅ LÍDER TAMBÉM PRECISA ESPERAR se o lock estiver ocupado
-            long inicio = System.currentTimeMillis();
-            while (!possoUsar(arquivo)) {
-                if (System.currentTimeMillis() - inicio > 30000) {
-                    throw new Exception("Timeout ao aguardar lock: " + arquivo);
-                }
-                Thread.sleep(100);
-            }
-            log("✅ LOCK CONCEDIDO (líder): " + arquivo);
-            return;
+    private boolean souDono(String nome) {
+        return donos(nome).contains(canalCluster.getAddress());
+    }
+
+    /**
+     * Réplicas do arquivo; escrita recebida por quem não é réplica é recusada
+     * (o gateway encaminha para a primeira réplica)
+     */
+    private List<Address> exigirDono(String nome) {
+        List<Address> destinos = donos(nome);
+        if (!destinos.contains(canalCluster.getAddress())) {
+            throw new RuntimeException(Posicionamento.ERRO_NAO_DONO + " " + canalCluster.getAddress()
+                    + " não é réplica de " + nome);
         }
+        return destinos;
+    }
+
+    /**
+     * Escrita replicada endereçada a este nó? (sem lista: vai para todos)
+     */
+    private boolean ehDestino(MensagemCluster m) {
+        return m.destinos == null || m.destinos.contains(canalCluster.getAddress());
+    }
 
-        log("Solicitando LOCK ao líder: " + arquivo);
-        MensagemCluster req = MensagemCluster.solicitarLock(arquivo);
-        canalCluster.send(new ObjectMessage(lider, req));
+    /**
+     * Escrita de outros donos sobre um arquivo de que este nó guarda cópia
+     * de quando era réplica. A cópia só fica descartável depois do PUBLICAR:
+     * até lá a escrita pode não atingir o quorum, e a cópia velha pode ser a
+     * única da versão confirmada.
+     */
+    private void anotarEscritaAlheia(MensagemCluster m) {
+        if (dados.existeArquivo(m.arquivo)) {
+            escritasAlheias.put(m.uploadId, new EscritaAlheia(m.arquivo, m.versao));
+        }
+    }
 
-        long inicio = System.currentTimeMillis();
-        while (!possoUsar(arquivo)) {
-            if (System.currentTimeMillis() - inicio > 30000) {
-                throw new Exception("Timeout ao aguardar lock: " + arquivo);
+    /**
+     * Apaga as cópias velhas cuja escrita nova já foi publicada, desde que
+     * todos os donos atuais confirmem ter essa versão (sem lápide: o
+     * arquivo continua existindo nos donos)
+     */
+    private void descartarCopiasAntigas() {
+        long limite = System.currentTimeMillis() - RETENCAO_PREPARADA_MS;
+        escritasAlheias.values().removeIf(e -> e.criada < limite);
+
+        for (Map.Entry<String, Long> e : copiasAntigas.entrySet()) {
+            String nome = e.getKey();
+            long versao = e.getValue();
+            if (souDono(nome) || !dados.existeArquivo(nome)) {
+                copiasAntigas.remove(nome, versao);
+                continue;
             }
-            Thread.sleep(100);
+            if (!donosTemVersao(nome, versao)) continue; // tenta na próxima rodada
+
+            copiasAntigas.remove(nome, versao);
+            aplicacao.executar(nome, () -> {
+                if (!souDono(nome) && versaoAtual(nome) < versao && apagarConfirmado(nome, 0)) {
+                    log("🧹 Cópia antiga descartada (não sou mais réplica): " + nome);
+                }
+            });
         }
-        log("✅ LOCK CONCEDIDO: " + arquivo);
     }
 
-    private void liberarLock(String arquivo) {
+    private boolean donosTemVersao(String nome, long versao) {
+        List<Address> donos = posicionamento.donos(Posicionamento.anel(canalRPC.getView().getMembers()), nome);
+        if (donos.isEmpty()) return false;
         try {
-            MensagemCluster m = MensagemCluster.liberarLock(arquivo);
-            canalCluster.send(new ObjectMessage(null, m));
-        } catch (Exception ignored) {}
+            RspList<Long> respostas = dispatcher.callRemoteMethods(donos,
+                    new MethodCall("versaoArquivo", new Object[]{nome}, new Class[]{String.class}),
+                    new RequestOptions(ResponseMode.GET_ALL, TIMEOUT_FRAGMENTO_MS));
+            return respostas.size() == donos.size() && respostas.values().stream()
+                    .allMatch(r -> r.wasReceived() && r.getValue() != null && r.getValue() >= versao);
+        } catch (Exception ex) {
+            log("⚠️ Erro ao consultar donos de " + nome + ": " + ex.getMessage());
+            return false;
+        }
     }
 
-    private void bloquearOuEnfileirar(String arquivo, Address solicitante) {
-        boolean bloqueado = arquivosBloqueados.getOrDefault(arquivo, false);
-        Queue<Address> fila = filasDeLock.computeIfAbsent(arquivo, f -> new ArrayDeque<>());
+    // =========================================================================
+    //  LOCK DISTRIBUÍDO
+    // =========================================================================
 
-        if (!bloqueado) {
-            arquivosBloqueados.put(arquivo, true);
-            fila.add(solicitante);
-            log("✅ LOCK concedido imediatamente para " + solicitante);
+    private GerenciadorLocks.Concessao adquirirLock(String arquivo) throws Exception {
+        return locks.adquirir(arquivo, TIMEOUT_LOCK_MS);
+    }
 
-            // Se não é para mim mesmo, notifica
-            if (!solicitante.equals(canalCluster.getAddress())) {
-                notificarLockConcedido(solicitante, arquivo);
-            }
-        } else {
-            fila.add(solicitante);
-            log("⏳ LOCK ocupado - enfileirando: " + solicitante + " (posição " + fila.size() + ")");
+    /**
+     * Registra o token da concessão localmente (fencing) antes de escrever
+     */
+    private void verificarToken(GerenciadorLocks.Concessao lock) throws Exception {
+        if (!locks.aceitarToken(lock.arquivo, lock.token)) {
+            throw new Exception("Token de lock obsoleto para " + lock.arquivo);
         }
     }
 
-    private void processarPedidoDeLock(Address origem, String arquivo) {
-        if (!souLider()) return;
-
-        log("👑 LÍDER processando lock de " + origem + " para " + arquivo);
-        bloquearOuEnfileirar(arquivo, origem);
+    private void liberarLock(GerenciadorLocks.Concessao lock) {
+        try {
+            locks.liberar(lock);
+        } catch (Exception e) {
+            log("⚠️ Erro ao liberar lock: " + e.getMessage());
+        }
     }
 
-    private void processarLiberacaoDeLock(String arquivo) {
-        if (!souLider()) return;
-
-        Queue<Address> fila = filasDeLock.get(arquivo);
-        if (fila == null || fila.isEmpty()) {
-            log("⚠️ Tentativa de liberar lock sem fila: " + arquivo);
-            return;
-        }
+    private boolean souLider() {
+        return lider != null && canalCluster.getAddress().equals(lider);
+    }
 
-        log("🔓 LÍDER liberando lock: " + arquivo);
-        log("   Fila antes: " + fila.size() + " aguardando");
+    // =========================================================================
+    //  METADADOS E ÁRVORE DE MERKLE
+    // =========================================================================
 
-        // Remove quem estava usando
-        Address atual = fila.poll();
-        log("   Removido: " + atual);
+    /**
+     * Versão da próxima escrita: relógio de parede, mas sempre acima da
+     * versão atual do arquivo (escritas no mesmo arquivo são serializadas pelo lock)
+     */
+    private long proximaVersao(String nome) {
+        return Math.max(System.currentTimeMillis(), versaoAtual(nome) + 1);
+    }
 
-        if (fila.isEmpty()) {
-            // Ninguém mais aguardando - libera completamente
-            arquivosBloqueados.put(arquivo, false);
-            log("✅ Arquivo completamente liberado: " + arquivo);
-        } else {
-            // Próximo na fila recebe o lock
-            Address proximo = fila.peek();
-            log("➡️  Próximo na fila: " + proximo);
+    private long versaoAtual(String nome) {
+        MetaArquivo meta = metadata.get(nome);
+        if (meta != null) return meta.versao;
+        Lapide lapide = lapides.get(nome);
+        return lapide == null ? 0L : lapide.getVersao();
+    }
 
-            // ✅ NOTIFICA o próximo (se não for o próprio líder)
-            if (!proximo.equals(canalCluster.getAddress())) {
-                notificarLockConcedido(proximo, arquivo);
-            } else {
-                log("   (próximo sou eu mesmo - não precisa notificar)");
-            }
+    /**
+     * Arquivo gravado por outro caminho (blocos, sincronização, truncamento): relê do disco
+     */
+    private void registrarDoDisco(String nome, long versao, String dono) {
+        MessageDigest md = dados.estadoDigest(nome);
+        if (md == null) {
+            esquecerArquivo(nome, versao);
+            return;
         }
+        registrarDigest(nome, dados.tamanhoArquivo(nome), md, versao, dono);
     }
 
-    private void notificarLockConcedido(Address destino, String arquivo) {
-        try {
-            MensagemCluster msg = MensagemCluster.lockConcedido(arquivo);
-            canalCluster.send(new ObjectMessage(destino, msg));
-        } catch (Exception e) {
-            log("❌ Erro ao notificar lock: " + e.getMessage());
+    /**
+     * Append: continua o SHA-256 guardado se ele é do tamanho anterior, senão relê do disco
+     */
+    private void registrarAppend(String nome, long tamanhoAnterior, byte[] delta, long versao, String dono) {
+        EstadoDigest estado = estadosDigest.get(nome);
+        if (estado == null || estado.tamanho != tamanhoAnterior) {
+            registrarDoDisco(nome, versao, dono);
+            return;
         }
+        MessageDigest md = clonar(estado.md);
+        md.update(delta);
+        registrarDigest(nome, tamanhoAnterior + delta.length, md, versao, dono);
     }
 
-    private void receberLockConcedido(String arquivo) {
-        log("📥 LOCK CONCEDIDO para " + arquivo);
-        Queue<Address> fila = filasDeLock.computeIfAbsent(arquivo, f -> new ArrayDeque<>());
-        if (fila.isEmpty()) {
-            fila.add(canalCluster.getAddress());
-        }
+    /**
+     * A versão também vai para o mtime do arquivo, e a entrada para o índice
+     * persistente (dono null mantém o anterior: rollback, sincronização)
+     */
+    private void registrarDigest(String nome, long tamanho, MessageDigest md, long versao, String dono) {
+        estadosDigest.put(nome, new EstadoDigest(tamanho, clonar(md)));
+        byte[] digest = md.digest();
+        dados.definirVersao(nome, versao);
+
+        MetaArquivo anterior = metadata.get(nome);
+        if (dono == null && anterior != null) dono = anterior.dono;
+        MetaArquivo meta = new MetaArquivo(tamanho, HexFormat.of().formatHex(digest), versao, dono);
+        dados.indexarArquivo(nome, tamanho, versao, meta.digest, dono);
+
+        metadata.put(nome, meta);
+        if (lapides.remove(nome) != null) dados.removerLapide(nome);
+        arvore.atualizar(nome, digest);
     }
 
-    private boolean possoUsar(String arquivo) {
-        Queue<Address> fila = filasDeLock.get(arquivo);
-        return fila != null && !fila.isEmpty() && fila.peek().equals(canalCluster.getAddress());
+    /**
+     * Arquivo apagado: fica a lápide com a versão, para o anti-entropia não ressuscitá-lo
+     */
+    private void esquecerArquivo(String nome, long versao) {
+        if (metadata.remove(nome) != null) {
+            dados.removerDoIndice(nome);
+        }
+        estadosDigest.remove(nome);
+        arvore.remover(nome);
+        if (versao > 0) {
+            dados.gravarLapide(lapides.merge(nome, new Lapide(nome, versao, System.currentTimeMillis()),
+                    (atual, nova) -> atual.getVersao() >= nova.getVersao() ? atual : nova));
+        }
     }
 
-    private boolean souLider() {
-        return lider != null && canalCluster.getAddress().equals(lider);
+    private static MessageDigest clonar(MessageDigest md) {
+        try {
+            return (MessageDigest) md.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     // =========================================================================
     //  UTILITÁRIOS
     // =========================================================================
 
+    /**
+     * Carrega os metadados do índice persistente; só relê do disco os
+     * arquivos sem entrada ou alterados por fora (tamanho ou mtime diferentes)
+     */
     private void atualizarMetadataLocal() {
+        Map<String, Arquivo> indice = new HashMap<>();
+        for (Arquivo entrada : dados.listarIndice()) {
+            indice.put(entrada.getNome(), entrada);
+        }
+
+        int relidos = 0;
         for (String f : dados.listarArquivos()) {
-            byte[] content = dados.lerArquivo(f);
-            metadata.put(f, content == null ? 0L : (long) content.length);
+            Arquivo entrada = indice.remove(f);
+            // Bytes além do tamanho indexado: append que não chegou a ser publicado antes da parada
+            if (entrada != null && dados.tamanhoArquivo(f) > entrada.getTamanho()
+                    && dados.truncarArquivo(f, entrada.getTamanho())) {
+                dados.definirVersao(f, entrada.getModificado());
+            }
+            if (entrada != null && dados.indiceConfere(entrada)) {
+                metadata.put(f, new MetaArquivo(entrada.getTamanho(), entrada.getDigest(), entrada.getVersao(),
+                        entrada.getDono()));
+                arvore.atualizar(f, HexFormat.of().parseHex(entrada.getDigest()));
+            } else {
+                registrarDoDisco(f, dados.versaoArquivo(f), entrada == null ? null : entrada.getDono());
+                relidos++;
+            }
         }
-        log("Metadata carregada: " + metadata.size() + " arquivos");
+
+        // Entradas de arquivos que sumiram do disco com o nó parado
+        for (String nome : indice.keySet()) {
+            dados.removerDoIndice(nome);
+        }
+
+        for (Lapide lapide : dados.listarLapides()) {
+            MetaArquivo meta = metadata.get(lapide.getNome());
+            if (meta == null || meta.versao < lapide.getVersao()) {
+                if (lapide.getApagadoEm() == 0) {
+                    // Gravada antes de a hora existir: o prazo conta a partir de agora
+                    lapide.setApagadoEm(System.currentTimeMillis());
+                    dados.gravarLapide(lapide);
+                }
+                lapides.put(lapide.getNome(), lapide);
+            } else {
+                dados.removerLapide(lapide.getNome());
+            }
+        }
+        log("Metadata carregada: " + metadata.size() + " arquivos, " + relidos + " relidos do disco (raiz Merkle "
+                + arvore.raizHex() + ")");
     }
 
     @Override
     public void close() {
+        if (locks != null) locks.close();
+        sessoesUpload.close();
+        if (antiEntropia != null) antiEntropia.close();
         if (dispatcher != null) dispatcher.stop();
         if (canalRPC != null) canalRPC.close();
         if (canalCluster != null) canalCluster.close();
+
+        // Sem novas entregas: aplica o que ficou na fila antes de marcar o log como limpo
+        aplicacao.close();
+        envioEstado.close();
+        if (dados != null) dados.close();
+        if (registro != null) registro.close();
+        if (no != null) no.liberar();
     }
 
     public static void main(String[] args) {
@@ -14,6 +14,14 @@ public interface ControleService extends Remote {
     byte[] download(String nome) throws RemoteException;
     String gerarHashLocal() throws RemoteException;
 
+    // Transferência em blocos
+    String abrirUpload(String nome) throws RemoteException;
+    boolean escreverBloco(String sessao, byte[] bloco) throws RemoteException;
+    boolean concluirUpload(String sessao) throws RemoteException;
+    void cancelarUpload(String sessao) throws RemoteException;
+    long tamanhoArquivo(String nome) throws RemoteException;
+    byte[] lerBloco(String nome, long versaoEsperada, long offset, int tamanho) throws RemoteException;
+
     boolean salvarUsuario(Usuario usuario) throws RemoteException; // ✅ ADICIONE AQUI
     boolean isBackend();
 }
\ No newline at end of file
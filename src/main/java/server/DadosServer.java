@@ -1,21 +1,65 @@
 package server;
 
+import database.ArquivoDAO;
 import database.JPAUtil;
+import database.LapideDAO;
 import database.UsuarioDAO;
+import model.Arquivo;
+import model.Lapide;
 import model.Usuario;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class DadosServer {
+public class DadosServer implements Closeable {
 
     private final String diretorio;
     private final UsuarioDAO usuarioDAO;
+    private final ArquivoDAO arquivoDAO;
+    private final LapideDAO lapideDAO;
+
+    // Arquivos quentes mapeados: leituras repetidas sem abrir/ler o arquivo de novo
+    // (limite flexível: despejados só são desmapeados pelo GC)
+    private final CacheMapeados mapeados =
+            new CacheMapeados(Long.getLong("app.cache.mapeados.bytes", 256L * 1024 * 1024));
+
+    // fsync das escritas: nenhum, sempre ou em grupo (app.fsync)
+    private final Durabilidade durabilidade = Durabilidade.doSistema();
+
+    // Entradas do índice de metadados ainda não gravadas no banco (null = remover).
+    // O índice só evita reler arquivos no reinício (vale se tamanho e mtime batem),
+    // então perder o lote numa queda custa uma releitura, não dados.
+    private final Map<String, Arquivo> indicePendente = new LinkedHashMap<>();
+    private final ScheduledExecutorService gravadorIndice = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "indice-arquivos");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Nomes guardados no nó (arquivos inteiros e codificados): listar e checar existência sem ir à pasta
+    private final IndiceNomes arquivos;
+    private final IndiceNomes codificados;
 
     public DadosServer() {
+        this(IdentidadeNo.reservar());
+    }
+
+    /**
+     * Arquivos e banco dentro do diretório do nó, preservados entre reinícios
+     */
+    public DadosServer(IdentidadeNo no) {
         this(
-                System.getProperty("app.storage", "./storage-" + UUID.randomUUID()),
-                System.getProperty("app.db", "usuarios-" + UUID.randomUUID() + ".db")
+                System.getProperty("app.storage", no.getDiretorio().resolve("storage").toString()),
+                System.getProperty("app.db", no.getDiretorio().resolve("usuarios.db").toString())
         );
     }
 
@@ -23,54 +67,779 @@ public class DadosServer {
         this.diretorio = diretorio;
         JPAUtil.init(nomeBanco);
         this.usuarioDAO = new UsuarioDAO();
+        this.arquivoDAO = new ArquivoDAO();
+        this.lapideDAO = new LapideDAO();
+        this.arquivos = new IndiceNomes(Paths.get(diretorio, ".indice", "arquivos"));
+        this.codificados = new IndiceNomes(Paths.get(diretorio, ".indice", "codificados"));
 
         try {
             Files.createDirectories(Paths.get(diretorio));
+            limparTemporarios();
+            migrarLayoutPlano(Paths.get(diretorio), false);
+            migrarLayoutPlano(pastaFragmentos(), true);
+            carregarIndices();
         } catch (IOException e) {
             System.err.println("Erro ao criar diretório: " + e.getMessage());
         }
+
+        long intervalo = Long.getLong("app.indice.intervalo", 200);
+        gravadorIndice.scheduleWithFixedDelay(this::descarregarIndice, intervalo, intervalo, TimeUnit.MILLISECONDS);
     }
 
     public DadosServer(String diretorio) {
         this(diretorio, "usuarios-" + UUID.randomUUID() + ".db");
     }
 
+    // =========================================================================
+    //  LAYOUT EM DISCO E ÍNDICE DE NOMES
+    // =========================================================================
+
+    /**
+     * Pasta de dois níveis (xx/yy) escolhida pelo hash do nome: com 65536
+     * pastas folha nenhuma delas cresce com o total de arquivos do nó
+     */
+    static Path pastaDoNome(Path raiz, String nome) {
+        int h = nome.hashCode() * 0x9E3779B1;
+        HexFormat hex = HexFormat.of();
+        return raiz.resolve(hex.toHexDigits((byte) (h >>> 24))).resolve(hex.toHexDigits((byte) (h >>> 16)));
+    }
+
+    private Path caminho(String nome) {
+        return pastaDoNome(Paths.get(diretorio), nome).resolve(nome);
+    }
+
+    public boolean existeArquivo(String nome) {
+        return arquivos.contem(nome);
+    }
+
+    /**
+     * Snapshot do último encerramento limpo; sem ele, varre as pastas do layout
+     */
+    private void carregarIndices() throws IOException {
+        if (!arquivos.carregar()) {
+            arquivos.adicionarTodos(varrerLayout(Paths.get(diretorio), false));
+        }
+        if (!codificados.carregar()) {
+            codificados.adicionarTodos(varrerLayout(pastaFragmentos(), true));
+        }
+    }
+
+    /**
+     * Nomes guardados em raiz/xx/yy (fragmentos "<nome>.<índice>" contam pelo nome do arquivo)
+     */
+    private List<String> varrerLayout(Path raiz, boolean fragmentos) throws IOException {
+        List<String> nomes = new ArrayList<>();
+        if (!Files.isDirectory(raiz)) return nomes;
+
+        try (DirectoryStream<Path> nivel1 = Files.newDirectoryStream(raiz, DadosServer::pastaDoLayout)) {
+            for (Path p1 : nivel1) {
+                try (DirectoryStream<Path> nivel2 = Files.newDirectoryStream(p1, DadosServer::pastaDoLayout)) {
+                    for (Path p2 : nivel2) {
+                        try (DirectoryStream<Path> ds = Files.newDirectoryStream(p2, Files::isRegularFile)) {
+                            for (Path p : ds) {
+                                String f = p.getFileName().toString();
+                                String nome = fragmentos ? nomeDoFragmento(f) : f;
+                                if (nome != null) nomes.add(nome);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return nomes;
+    }
+
+    private static boolean pastaDoLayout(Path p) {
+        String f = p.getFileName().toString();
+        return f.length() == 2 && HexFormat.isHexDigit(f.charAt(0)) && HexFormat.isHexDigit(f.charAt(1))
+                && Files.isDirectory(p);
+    }
+
+    /**
+     * Arquivos soltos na raiz (layout plano antigo) vão para a pasta do hash
+     */
+    private void migrarLayoutPlano(Path raiz, boolean fragmentos) throws IOException {
+        if (!Files.isDirectory(raiz)) return;
+
+        int movidos = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(raiz, Files::isRegularFile)) {
+            for (Path p : ds) {
+                String f = p.getFileName().toString();
+                String nome = fragmentos ? nomeDoFragmento(f) : f;
+                if (nome == null) continue;
+                Path destino = pastaDoNome(raiz, nome).resolve(f);
+                Files.createDirectories(destino.getParent());
+                Files.move(p, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                movidos++;
+            }
+        }
+        if (movidos > 0) {
+            durabilidade.sincronizar(raiz);
+            System.out.println("📂 " + movidos + " arquivos movidos para o layout em pastas de " + raiz);
+        }
+    }
+
+    /**
+     * Encerramento limpo: grava os snapshots dos índices de nomes
+     * (chamar só depois da última escrita)
+     */
+    @Override
+    public void close() {
+        gravadorIndice.shutdown();
+        descarregarIndice();
+        try {
+            Files.createDirectories(Paths.get(diretorio, ".indice"));
+            arquivos.salvar(durabilidade);
+            codificados.salvar(durabilidade);
+        } catch (IOException e) {
+            System.err.println("Erro ao gravar índice de nomes: " + e.getMessage());
+        }
+    }
+
     // =========================================================================
     //  MÉTODOS DE ARQUIVOS
     // =========================================================================
 
+    /**
+     * Grava num temporário e troca pelo nome definitivo: leitores com a
+     * versão anterior mapeada continuam vendo o inode antigo inteiro, e uma
+     * queda deixa o arquivo antigo ou o novo, nunca um pela metade
+     */
     public boolean salvarArquivo(String nome, byte[] conteudo) {
+        String sessao = UUID.randomUUID().toString();
         try {
-            Path caminho = Paths.get(diretorio, nome);
-            Files.write(caminho, conteudo);
-            return true;
+            Path temporario = caminhoTemporario(sessao);
+            Files.createDirectories(temporario.getParent());
+            Files.write(temporario, conteudo);
+            return efetivarTemporario(sessao, nome);
         } catch (IOException e) {
             System.err.println("Erro ao salvar arquivo: " + e.getMessage());
+            descartarTemporario(sessao);
             return false;
         }
     }
 
+    /**
+     * Conteúdo inteiro; arquivo quente sai do mapeamento em cache (só a cópia do resultado)
+     */
     public byte[] lerArquivo(String nome) {
+        ByteBuffer mapa = mapearArquivo(nome);
+        if (mapa != null) {
+            byte[] conteudo = new byte[mapa.remaining()];
+            mapa.get(conteudo);
+            return conteudo;
+        }
+
         try {
-            Path caminho = Paths.get(diretorio, nome);
-            return Files.readAllBytes(caminho);
+            return Files.readAllBytes(caminho(nome));
         } catch (IOException e) {
             System.err.println("Erro ao ler arquivo: " + e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Arquivo inteiro mapeado só para leitura, do cache de arquivos quentes
+     * (mapeia e guarda no primeiro acesso). Null se não existe ou é grande
+     * demais para o cache: aí a leitura vai pelo canal.
+     */
+    public ByteBuffer mapearArquivo(String nome) {
+        if (!arquivos.contem(nome)) {
+            return null;
+        }
+        ByteBuffer emCache = mapeados.buscar(nome);
+        if (emCache != null) {
+            return emCache;
+        }
+
+        long versao = mapeados.versao(nome);
+        try (FileChannel canal = FileChannel.open(caminho(nome), StandardOpenOption.READ)) {
+            long tamanho = canal.size();
+            if (!mapeados.cabe(tamanho)) {
+                return null;
+            }
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+            mapeados.guardar(nome, versao, mapa);
+            return mapa.duplicate();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Nomes em ordem alfabética, do índice em memória
+     */
     public List<String> listarArquivos() {
+        return arquivos.listar();
+    }
+
+    public long tamanhoArquivo(String nome) {
+        if (!arquivos.contem(nome)) {
+            return -1;
+        }
+        try {
+            return Files.size(caminho(nome));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Fixa a versão atual do arquivo para leitura (mapeamento em cache se o
+     * arquivo é quente, senão um canal aberto); null se não existe
+     */
+    public VersaoFixada fixar(String nome) {
+        ByteBuffer mapa = mapearArquivo(nome);
+        if (mapa != null) {
+            return new VersaoFixada(mapa);
+        }
+
+        if (!arquivos.contem(nome)) {
+            return null;
+        }
+        FileChannel canal = null;
+        try {
+            canal = FileChannel.open(caminho(nome), StandardOpenOption.READ);
+            return new VersaoFixada(canal);
+        } catch (IOException e) {
+            if (canal != null) {
+                try { canal.close(); } catch (IOException ignored) {}
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Leitura posicional de um trecho do arquivo (não carrega o arquivo inteiro)
+     */
+    public byte[] lerBloco(String nome, long offset, int tamanho) {
+        try (VersaoFixada versao = fixar(nome)) {
+            return versao == null ? null : versao.ler(offset, tamanho);
+        } catch (IOException e) {
+            System.err.println("Erro ao ler bloco: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Mapeia um trecho do arquivo só para leitura (sem cópia para o heap):
+     * fatia do mapeamento em cache se o arquivo é quente, senão um mapeamento
+     * só do trecho. O mapeamento continua válido depois que o canal é fechado.
+     */
+    public ByteBuffer mapearBloco(String nome, long offset, int tamanho) {
+        try (VersaoFixada versao = fixar(nome)) {
+            return versao == null ? null : versao.mapear(offset, tamanho);
+        } catch (IOException e) {
+            System.err.println("Erro ao mapear bloco: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Acrescenta bytes ao final do arquivo, desde que ele tenha exatamente
+     * tamanhoEsperado bytes (réplica divergente recusa o append)
+     */
+    public boolean anexarArquivo(String nome, byte[] delta, long tamanhoEsperado) {
+        Path caminho = caminho(nome);
+
+        // Sem CREATE: append só vale sobre a cópia que o coordenador também tem
+        try (FileChannel canal = FileChannel.open(caminho, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (canal.size() != tamanhoEsperado) {
+                System.err.println("Tamanho divergente em " + nome + ": " + canal.size() + " != " + tamanhoEsperado);
+                return false;
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(delta);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            durabilidade.sincronizar(caminho);
+        } catch (NoSuchFileException e) {
+            System.err.println("Append em arquivo ausente: " + nome);
+            return false;
+        } catch (IOException e) {
+            System.err.println("Erro ao anexar ao arquivo: " + e.getMessage());
+            return false;
+        } finally {
+            mapeados.invalidar(nome);
+        }
+
+        arquivos.adicionar(nome);
+        return true;
+    }
+
+    /**
+     * Corta o arquivo em tamanho bytes (desfaz um append; não cresce o arquivo)
+     */
+    public boolean truncarArquivo(String nome, long tamanho) {
+        try (FileChannel canal = FileChannel.open(caminho(nome), StandardOpenOption.WRITE)) {
+            canal.truncate(tamanho);
+            durabilidade.sincronizar(caminho(nome));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erro ao truncar arquivo: " + e.getMessage());
+            return false;
+        } finally {
+            mapeados.invalidar(nome);
+        }
+    }
+
+    /**
+     * Versão (last-writer-wins) guardada no mtime do arquivo
+     */
+    public long versaoArquivo(String nome) {
+        try {
+            return Files.getLastModifiedTime(caminho(nome)).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    public void definirVersao(String nome, long versao) {
         try {
-            return Files.list(Paths.get(diretorio))
-                    .filter(Files::isRegularFile)
-                    .map(p -> p.getFileName().toString())
-                    .toList();
+            Files.setLastModifiedTime(caminho(nome), FileTime.fromMillis(versao));
         } catch (IOException e) {
-            return Collections.emptyList();
+            System.err.println("Erro ao gravar versão de " + nome + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * SHA-256 do arquivo em hexadecimal, lido do disco em blocos (null se não existir)
+     */
+    public String digestArquivo(String nome) {
+        MessageDigest md = estadoDigest(nome);
+        return md == null ? null : HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * SHA-256 alimentado com o arquivo inteiro e ainda não finalizado
+     * (pode ser clonado e continuado por um append)
+     */
+    public MessageDigest estadoDigest(String nome) {
+        try (InputStream in = Files.newInputStream(caminho(nome))) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int lidos;
+            while ((lidos = in.read(buffer)) > 0) {
+                md.update(buffer, 0, lidos);
+            }
+            return md;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
         }
     }
 
+    // =========================================================================
+    //  ÍNDICE DE METADADOS
+    // =========================================================================
+
+    /**
+     * Agenda a entrada do arquivo no índice, com o mtime atual do disco;
+     * vai para o banco no próximo lote
+     */
+    public void indexarArquivo(String nome, long tamanho, long versao, String digest, String dono) {
+        Arquivo entrada = new Arquivo(nome, tamanho, versao, digest, versaoArquivo(nome), dono);
+        synchronized (indicePendente) {
+            indicePendente.remove(nome);
+            indicePendente.put(nome, entrada);
+        }
+    }
+
+    public void removerDoIndice(String nome) {
+        synchronized (indicePendente) {
+            indicePendente.remove(nome);
+            indicePendente.put(nome, null);
+        }
+    }
+
+    public List<Arquivo> listarIndice() {
+        descarregarIndice();
+        return arquivoDAO.listarTodos();
+    }
+
+    /**
+     * Grava as entradas pendentes numa só transação; se falhar, elas voltam
+     * para o próximo lote (sem passar por cima de uma entrada mais nova).
+     * Um lote de cada vez, para um lote velho não gravar depois de um novo.
+     */
+    synchronized void descarregarIndice() {
+        Map<String, Arquivo> lote;
+        synchronized (indicePendente) {
+            if (indicePendente.isEmpty()) return;
+            lote = new LinkedHashMap<>(indicePendente);
+            indicePendente.clear();
+        }
+
+        List<Arquivo> salvar = new ArrayList<>();
+        List<String> remover = new ArrayList<>();
+        lote.forEach((nome, entrada) -> {
+            if (entrada == null) remover.add(nome);
+            else salvar.add(entrada);
+        });
+
+        if (!arquivoDAO.gravarLote(salvar, remover)) {
+            synchronized (indicePendente) {
+                lote.forEach(indicePendente::putIfAbsent);
+            }
+        }
+    }
+
+    public boolean gravarLapide(Lapide lapide) {
+        return lapideDAO.salvar(lapide);
+    }
+
+    public boolean removerLapide(String nome) {
+        return lapideDAO.remover(nome);
+    }
+
+    public List<Lapide> listarLapides() {
+        return lapideDAO.listarTodas();
+    }
+
+    /**
+     * Entrada ainda vale para o arquivo em disco (mesmo tamanho e mtime)?
+     */
+    public boolean indiceConfere(Arquivo entrada) {
+        try {
+            Path caminho = caminho(entrada.getNome());
+            return Files.size(caminho) == entrada.getTamanho()
+                    && Files.getLastModifiedTime(caminho).toMillis() == entrada.getModificado();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // =========================================================================
+    //  ARQUIVOS TEMPORÁRIOS (TRANSFERÊNCIA EM BLOCOS)
+    // =========================================================================
+
+    private Path caminhoTemporario(String sessao) {
+        return Paths.get(diretorio, ".parts", sessao);
+    }
+
+    /**
+     * Nova versão inteira num temporário, invisível até publicarTemporario
+     */
+    public boolean salvarTemporario(String sessao, byte[] conteudo) {
+        try {
+            Path caminho = caminhoTemporario(sessao);
+            Files.createDirectories(caminho.getParent());
+            Files.write(caminho, conteudo);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erro ao gravar temporário: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean iniciarTemporario(String sessao) {
+        try {
+            Path caminho = caminhoTemporario(sessao);
+            Files.createDirectories(caminho.getParent());
+            Files.write(caminho, new byte[0]);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erro ao criar temporário: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Acrescenta um bloco ao final do temporário da sessão
+     */
+    public boolean anexarTemporario(String sessao, byte[] bloco) {
+        try {
+            Files.write(caminhoTemporario(sessao), bloco, StandardOpenOption.APPEND);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erro ao anexar bloco: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Grava um bloco numa posição fixa do temporário (usado pela replicação)
+     */
+    public boolean gravarBlocoTemporario(String sessao, long offset, byte[] bloco) {
+        return gravarBlocoTemporario(sessao, offset, ByteBuffer.wrap(bloco));
+    }
+
+    /**
+     * Idem, direto do buffer recebido (heap ou direto) para o canal
+     */
+    public boolean gravarBlocoTemporario(String sessao, long offset, ByteBuffer bloco) {
+        Path caminho = caminhoTemporario(sessao);
+        try {
+            Files.createDirectories(caminho.getParent());
+            try (FileChannel canal = FileChannel.open(caminho,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = bloco.slice();
+                while (buffer.hasRemaining()) {
+                    canal.write(buffer, offset + buffer.position());
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erro ao gravar bloco: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Trecho do temporário mapeado só para leitura (replicação da versão preparada)
+     */
+    public ByteBuffer mapearBlocoTemporario(String sessao, long offset, int tamanho) {
+        try (FileChannel canal = FileChannel.open(caminhoTemporario(sessao), StandardOpenOption.READ)) {
+            long restante = canal.size() - offset;
+            if (offset < 0 || restante < 0) {
+                return null;
+            }
+            return canal.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(tamanho, restante));
+        } catch (IOException e) {
+            System.err.println("Erro ao mapear temporário: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public long tamanhoTemporario(String sessao) {
+        try {
+            return Files.size(caminhoTemporario(sessao));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Move o temporário para o nome definitivo (substitui a versão anterior)
+     */
+    public boolean efetivarTemporario(String sessao, String nome) {
+        return prepararTemporario(sessao) && publicarTemporario(sessao, nome);
+    }
+
+    /**
+     * Leva o conteúdo do temporário para o disco: depois disso a versão
+     * preparada sobrevive a uma queda e só falta a troca de nome
+     */
+    public boolean prepararTemporario(String sessao) {
+        try {
+            Path origem = caminhoTemporario(sessao);
+            if (!Files.exists(origem)) {
+                Files.createDirectories(origem.getParent());
+                Files.write(origem, new byte[0]);
+            }
+            durabilidade.sincronizar(origem);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erro ao preparar temporário: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Torna a versão preparada a atual com uma troca de nome atômica (e a
+     * pasta no disco depois dela). Leitores que já fixaram a versão anterior
+     * continuam nela.
+     */
+    public boolean publicarTemporario(String sessao, String nome) {
+        try {
+            Path destino = caminho(nome);
+            Files.createDirectories(destino.getParent());
+            Files.move(caminhoTemporario(sessao), destino,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            arquivos.adicionar(nome);
+            durabilidade.sincronizar(destino.getParent());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erro ao publicar temporário: " + e.getMessage());
+            return false;
+        } finally {
+            mapeados.invalidar(nome);
+        }
+    }
+
+    public void descartarTemporario(String sessao) {
+        try {
+            Files.deleteIfExists(caminhoTemporario(sessao));
+        } catch (IOException e) {
+            System.err.println("Erro ao descartar temporário: " + e.getMessage());
+        }
+    }
+
+    private void limparTemporarios() throws IOException {
+        Path pasta = Paths.get(diretorio, ".parts");
+        if (!Files.isDirectory(pasta)) return;
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(pasta)) {
+            for (Path p : ds) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Apaga temporários sem escrita há mais de idadeMs (sessões e
+     * transferências abandonadas com o nó no ar); devolve quantos apagou
+     */
+    public int limparTemporariosAntigos(long idadeMs) {
+        Path pasta = Paths.get(diretorio, ".parts");
+        if (!Files.isDirectory(pasta)) return 0;
+
+        long limite = System.currentTimeMillis() - idadeMs;
+        int apagados = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(pasta)) {
+            for (Path p : ds) {
+                try {
+                    if (Files.getLastModifiedTime(p).toMillis() < limite && Files.deleteIfExists(p)) {
+                        apagados++;
+                    }
+                } catch (NoSuchFileException e) {
+                    // publicado ou descartado durante a varredura
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao limpar temporários: " + e.getMessage());
+        }
+        return apagados;
+    }
+
+    // =========================================================================
+    //  FRAGMENTOS (ARMAZENAMENTO CODIFICADO)
+    // =========================================================================
+
+    private Path pastaFragmentos() {
+        return Paths.get(diretorio, ".fragmentos");
+    }
+
+    private Path caminhoFragmento(String nome, int indice) {
+        return pastaDoNome(pastaFragmentos(), nome).resolve(nome + "." + indice);
+    }
+
+    /**
+     * Nome do arquivo de "<nome>.<índice>", ou null se não é um fragmento
+     */
+    private static String nomeDoFragmento(String f) {
+        int ponto = f.lastIndexOf('.');
+        if (ponto <= 0 || ponto == f.length() - 1
+                || !f.substring(ponto + 1).chars().allMatch(Character::isDigit)) return null;
+        return f.substring(0, ponto);
+    }
+
+    /**
+     * Grava (ou substitui) um fragmento; passa pelo temporário para nunca ficar pela metade
+     */
+    public boolean salvarFragmento(String nome, int indice, byte[] fragmento) {
+        String sessao = UUID.randomUUID().toString();
+        try {
+            Path temporario = caminhoTemporario(sessao);
+            Path destino = caminhoFragmento(nome, indice);
+            Files.createDirectories(temporario.getParent());
+            Files.createDirectories(destino.getParent());
+            Files.write(temporario, fragmento);
+            durabilidade.sincronizar(temporario);
+            Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            codificados.adicionar(nome);
+            durabilidade.sincronizar(destino.getParent());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Erro ao salvar fragmento: " + e.getMessage());
+            descartarTemporario(sessao);
+            return false;
+        }
+    }
+
+    public byte[] lerFragmento(String nome, int indice) {
+        try {
+            return Files.readAllBytes(caminhoFragmento(nome, indice));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Erro ao ler fragmento: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Arquivos codificados com algum fragmento neste nó, do índice em memória
+     */
+    public List<String> listarCodificados() {
+        return codificados.listar();
+    }
+
+    public boolean temFragmentos(String nome) {
+        return codificados.contem(nome);
+    }
+
+    /**
+     * Apaga os fragmentos do arquivo com versão anterior a versaoLimite
+     * (um fragmento já regravado por um upload mais novo fica)
+     */
+    public boolean apagarFragmentos(String nome, long versaoLimite) {
+        boolean apagou = false;
+        for (Path p : fragmentos(nome)) {
+            try (FileChannel canal = FileChannel.open(p, StandardOpenOption.READ)) {
+                ByteBuffer versao = ByteBuffer.allocate(8);
+                canal.read(versao, 0);
+                if (versao.position() == 8 && versao.getLong(0) >= versaoLimite) continue;
+            } catch (IOException e) {
+                // ilegível: apaga também
+            }
+            try {
+                apagou |= Files.deleteIfExists(p);
+            } catch (IOException e) {
+                System.err.println("Erro ao apagar fragmento: " + e.getMessage());
+            }
+        }
+        if (apagou && fragmentos(nome).isEmpty()) {
+            codificados.remover(nome);
+        }
+        return apagou;
+    }
+
+    /**
+     * Apaga o fragmento indice só se ele é da versão dada (desfaz um upload
+     * codificado incompleto sem tocar num fragmento regravado depois)
+     */
+    public boolean apagarFragmento(String nome, int indice, long versao) {
+        Path p = caminhoFragmento(nome, indice);
+        try (FileChannel canal = FileChannel.open(p, StandardOpenOption.READ)) {
+            ByteBuffer lida = ByteBuffer.allocate(8);
+            canal.read(lida, 0);
+            if (lida.position() < 8 || lida.getLong(0) != versao) return false;
+        } catch (IOException e) {
+            return false;
+        }
+        try {
+            boolean apagou = Files.deleteIfExists(p);
+            if (apagou && fragmentos(nome).isEmpty()) {
+                codificados.remover(nome);
+            }
+            return apagou;
+        } catch (IOException e) {
+            System.err.println("Erro ao apagar fragmento: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Fragmentos "<nome>.<índice>" de um arquivo (só a pasta do hash do nome)
+     */
+    private List<Path> fragmentos(String nome) {
+        List<Path> encontrados = new ArrayList<>();
+        Path pasta = pastaDoNome(pastaFragmentos(), nome);
+        if (!Files.isDirectory(pasta)) return encontrados;
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(pasta)) {
+            for (Path p : ds) {
+                if (nome.equals(nomeDoFragmento(p.getFileName().toString()))) {
+                    encontrados.add(p);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao listar fragmentos: " + e.getMessage());
+        }
+        return encontrados;
+    }
+
     // =========================================================================
     //  MÉTODOS DE USUÁRIOS
     // =========================================================================
@@ -122,13 +891,20 @@ public class DadosServer {
         return usuarioDAO.buscarPorUsername(username);
     }
 
+    public Durabilidade getDurabilidade() {
+        return durabilidade;
+    }
+
     public boolean deletarArquivo(String nome) {
         try {
-            Path caminho = Paths.get(diretorio, nome);
-            return Files.deleteIfExists(caminho);
+            boolean apagou = Files.deleteIfExists(caminho(nome));
+            arquivos.remover(nome);
+            return apagou;
         } catch (IOException e) {
             System.err.println("Erro ao deletar arquivo: " + e.getMessage());
             return false;
+        } finally {
+            mapeados.invalidar(nome);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Política de fsync das escritas do nó (app.fsync):
+ * <ul>
+ *   <li>nenhum: confia no cache do sistema operacional (queda pode perder escritas recentes)</li>
+ *   <li>sempre: um fsync por escrita, antes de responder</li>
+ *   <li>grupo: escritas concorrentes dentro de app.fsync.janela.ms esperam um único
+ *       lote de fsyncs (cada arquivo e pasta sincronizado uma vez por lote)</li>
+ * </ul>
+ * Quem chama só continua depois que os caminhos pedidos estão no disco. Um
+ * caminho que falha no lote só derruba quem o pediu.
+ */
+public class Durabilidade {
+
+    public enum Politica { NENHUM, SEMPRE, GRUPO }
+
+    private static class Lote {
+        // Um resultado por caminho: quem pediu só o caminho que deu certo não vê o erro do outro
+        final Map<Path, CompletableFuture<Void>> caminhos = new LinkedHashMap<>();
+    }
+
+    private final Politica politica;
+    private final long janelaMs;
+
+    // Lote aberto (protegido por synchronized(this)); o agendador o descarrega ao fim da janela
+    private Lote loteAtual;
+    private ScheduledExecutorService agendador;
+
+    private final AtomicLong pedidos = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+
+    public Durabilidade(Politica politica, long janelaMs) {
+        this.politica = politica;
+        this.janelaMs = janelaMs;
+    }
+
+    public static Durabilidade doSistema() {
+        String politica = System.getProperty("app.fsync", "grupo").trim().toUpperCase();
+        return new Durabilidade(Politica.valueOf(politica), Long.getLong("app.fsync.janela.ms", 2));
+    }
+
+    /**
+     * Garante no disco o conteúdo dos arquivos (ou as entradas das pastas) pedidos
+     */
+    public void sincronizar(Path... caminhos) throws IOException {
+        if (politica == Politica.NENHUM) {
+            return;
+        }
+        pedidos.incrementAndGet();
+
+        if (politica == Politica.SEMPRE) {
+            lotes.incrementAndGet();
+            for (Path caminho : caminhos) {
+                forcar(caminho);
+            }
+            return;
+        }
+
+        List<CompletableFuture<Void>> fins = new ArrayList<>(caminhos.length);
+        synchronized (this) {
+            if (loteAtual == null) {
+                loteAtual = new Lote();
+                agendador().schedule(this::descarregar, janelaMs, TimeUnit.MILLISECONDS);
+            }
+            for (Path caminho : caminhos) {
+                fins.add(loteAtual.caminhos.computeIfAbsent(caminho, c -> new CompletableFuture<>()));
+            }
+        }
+
+        try {
+            for (CompletableFuture<Void> fim : fins) {
+                fim.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido esperando o fsync", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Fecha o lote aberto e sincroniza cada caminho dele; escritas que
+     * chegam enquanto isso abrem o próximo lote
+     */
+    private void descarregar() {
+        Lote lote;
+        synchronized (this) {
+            lote = loteAtual;
+            loteAtual = null;
+        }
+        if (lote == null) return;
+
+        lotes.incrementAndGet();
+        lote.caminhos.forEach((caminho, fim) -> {
+            try {
+                forcar(caminho);
+                fim.complete(null);
+            } catch (IOException | RuntimeException e) {
+                fim.completeExceptionally(e);
+            }
+        });
+    }
+
+    private void forcar(Path caminho) throws IOException {
+        fsyncs.incrementAndGet();
+        try (FileChannel canal = FileChannel.open(caminho, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // Nem todo sistema permite abrir/sincronizar uma pasta; o arquivo em si é obrigatório
+            if (!Files.isDirectory(caminho)) throw e;
+        }
+    }
+
+    private synchronized ScheduledExecutorService agendador() {
+        if (agendador == null) {
+            agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fsync-grupo");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return agendador;
+    }
+
+    public Politica getPolitica() {
+        return politica;
+    }
+
+    public long getPedidos() {
+        return pedidos.get();
+    }
+
+    public long getLotes() {
+        return lotes.get();
+    }
+
+    public long getFsyncs() {
+        return fsyncs.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Durabilidade{" +
+                "politica=" + politica +
+                ", pedidos=" + pedidos.get() +
+                ", lotes=" + lotes.get() +
+                ", fsyncs=" + fsyncs.get() +
+                '}';
+    }
+}
@@ -0,0 +1,127 @@
+package server;
+
+import java.io.Closeable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Executor "listrado": tarefas com a mesma chave rodam em ordem na mesma
+ * thread; chaves diferentes rodam em paralelo nas outras listras.
+ *
+ * executar nunca bloqueia nem descarta: quem enfileira é a thread de
+ * entrega do JGroups, e segurá-la pararia o canal inteiro (inclusive views
+ * e heartbeats) por causa de uma listra lenta. As filas não têm limite
+ * rígido; o limite dado é só um aviso de sobrecarga no log e o teto de
+ * tentarExecutar, usado para trabalho que pode ser adiado.
+ */
+public class ExecutorListrado implements Closeable {
+
+    private static final Runnable FIM = () -> {};
+
+    private final BlockingQueue<Runnable>[] filas;
+    private final boolean[] sobrecarregada;
+    private final Thread[] threads;
+    private final int limiteFila;
+    private final String nome;
+    private final Consumer<String> log;
+    private volatile boolean fechado;
+
+    @SuppressWarnings("unchecked")
+    public ExecutorListrado(String nome, int listras, int limiteFila, Consumer<String> log) {
+        this.filas = new BlockingQueue[listras];
+        this.sobrecarregada = new boolean[listras];
+        this.threads = new Thread[listras];
+        this.limiteFila = limiteFila;
+        this.nome = nome;
+        this.log = log;
+
+        for (int i = 0; i < listras; i++) {
+            BlockingQueue<Runnable> fila = new LinkedBlockingQueue<>();
+            filas[i] = fila;
+            threads[i] = new Thread(() -> processar(fila), nome + "-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    public void executar(String chave, Runnable tarefa) {
+        int listra = Math.floorMod(chave.hashCode(), filas.length);
+        BlockingQueue<Runnable> fila = filas[listra];
+        fila.add(tarefa);
+        avisarSobrecarga(listra, fila.size());
+    }
+
+    /**
+     * Como executar, mas recusa (false) se a listra já passou do limite
+     * (seguro de chamar de dentro de uma listra)
+     */
+    public boolean tentarExecutar(String chave, Runnable tarefa) {
+        BlockingQueue<Runnable> fila = filas[Math.floorMod(chave.hashCode(), filas.length)];
+        if (fila.size() >= limiteFila) return false;
+        return fila.add(tarefa);
+    }
+
+    /**
+     * Tarefas enfileiradas e ainda não iniciadas, somando todas as listras
+     */
+    public int pendentes() {
+        int total = 0;
+        for (BlockingQueue<Runnable> fila : filas) {
+            total += fila.size();
+        }
+        return total;
+    }
+
+    // Um aviso ao passar do limite e outro ao voltar para baixo da metade
+    private void avisarSobrecarga(int listra, int tamanho) {
+        synchronized (sobrecarregada) {
+            if (!sobrecarregada[listra] && tamanho >= limiteFila) {
+                sobrecarregada[listra] = true;
+                log.accept("⚠️ Listra " + nome + "-" + listra + " sobrecarregada: " + tamanho + " tarefas na fila");
+            } else if (sobrecarregada[listra] && tamanho < limiteFila / 2) {
+                sobrecarregada[listra] = false;
+            }
+        }
+    }
+
+    private void processar(BlockingQueue<Runnable> fila) {
+        while (true) {
+            Runnable tarefa;
+            try {
+                tarefa = fila.take();
+            } catch (InterruptedException e) {
+                if (fechado) return;
+                continue;
+            }
+            if (tarefa == FIM) return;
+
+            try {
+                tarefa.run();
+            } catch (Exception e) {
+                log.accept("❌ Erro ao aplicar tarefa replicada: " + e.getMessage());
+            }
+            // Interrupção deixada por uma tarefa não pode derrubar a listra
+            if (Thread.interrupted() && fechado) return;
+        }
+    }
+
+    /**
+     * Encerra as listras depois de executar o que já estava na fila
+     */
+    @Override
+    public void close() {
+        fechado = true;
+        for (BlockingQueue<Runnable> fila : filas) {
+            fila.add(FIM);
+        }
+        for (Thread t : threads) {
+            try {
+                t.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            t.interrupt();
+        }
+    }
+}
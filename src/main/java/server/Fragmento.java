@@ -0,0 +1,50 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fragmento de um arquivo codificado, como é transferido e gravado:
+ * versão, tamanho original, k, m e índice, seguidos dos dados do fragmento.
+ * A versão fica nos 8 primeiros bytes (DadosServer a lê sem carregar o resto).
+ */
+final class Fragmento {
+
+    static final int CABECALHO = 8 + 8 + 1 + 1 + 2;
+
+    final long versao;
+    final long tamanho;
+    final int k;
+    final int m;
+    final int indice;
+    final byte[] dados;
+
+    private Fragmento(long versao, long tamanho, int k, int m, int indice, byte[] dados) {
+        this.versao = versao;
+        this.tamanho = tamanho;
+        this.k = k;
+        this.m = m;
+        this.indice = indice;
+        this.dados = dados;
+    }
+
+    static byte[] empacotar(long versao, long tamanho, ReedSolomon codec, int indice, byte[] dados) {
+        return ByteBuffer.allocate(CABECALHO + dados.length)
+                .putLong(versao)
+                .putLong(tamanho)
+                .put((byte) (codec.getDados() - 1))
+                .put((byte) codec.getParidade())
+                .putShort((short) indice)
+                .put(dados)
+                .array();
+    }
+
+    static Fragmento ler(byte[] pacote) {
+        if (pacote.length < CABECALHO) {
+            throw new IllegalArgumentException("fragmento truncado: " + pacote.length + " bytes");
+        }
+        ByteBuffer b = ByteBuffer.wrap(pacote);
+        return new Fragmento(b.getLong(), b.getLong(), (b.get() & 0xff) + 1, b.get() & 0xff,
+                b.getShort() & 0xffff, Arrays.copyOfRange(pacote, CABECALHO, pacote.length));
+    }
+}
@@ -0,0 +1,399 @@
+package server;
+
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.View;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Lock distribuído e exclusivo de arquivos, tomado pelos coordenadores de
+ * escrita. Leituras não pegam lock: leem a versão confirmada.
+ *
+ * O dono do lock (definido por donoDoLock) mantém a tabela de titulares e
+ * filas FIFO.
+ *
+ * Cada concessão tem um lease renovado periodicamente pelo titular e um
+ * token de fencing crescente; leases vencidos e titulares que saíram da
+ * view são liberados automaticamente. Quem pede o lock bloqueia num future
+ * completado pela mensagem LOCK_CONCEDIDO, sem polling.
+ *
+ * O lock só ordena os coordenadores de escrita entre si. Nas réplicas a
+ * escrita replicada é aplicada sem ele: quem a isola das leituras é a
+ * troca de versão confirmada do ControleServer, que o coordenador e as
+ * réplicas fazem do mesmo jeito.
+ */
+public class GerenciadorLocks implements Closeable {
+
+    // Após uma troca de view, titulares têm este prazo para se reafirmar
+    private static final long CARENCIA_MS = 1000;
+    private static final long INTERVALO_VERIFICACAO_MS = 500;
+
+    /**
+     * Lock obtido por este nó; o token deve acompanhar as escritas replicadas
+     */
+    public static class Concessao {
+        public final String arquivo;
+        public final String lockId;
+        public final long token;
+        volatile Address dono;
+
+        Concessao(String arquivo, String lockId, long token, Address dono) {
+            this.arquivo = arquivo;
+            this.lockId = lockId;
+            this.token = token;
+            this.dono = dono;
+        }
+    }
+
+    private static class Pedido {
+        final Address origem;
+        final String lockId;
+
+        Pedido(Address origem, String lockId) {
+            this.origem = origem;
+            this.lockId = lockId;
+        }
+    }
+
+    private static class Titular {
+        final Address origem;
+        final String lockId;
+        final long token;
+        long expiraEm;
+
+        Titular(Address origem, String lockId, long token, long expiraEm) {
+            this.origem = origem;
+            this.lockId = lockId;
+            this.token = token;
+            this.expiraEm = expiraEm;
+        }
+    }
+
+    private static class EstadoLock {
+        // No máximo um titular (mapa pelo lockId para liberação e renovação)
+        final Map<String, Titular> titulares = new HashMap<>();
+        final Deque<Pedido> fila = new ArrayDeque<>();
+
+        boolean livre() {
+            return titulares.isEmpty();
+        }
+    }
+
+    private static class Espera {
+        final String arquivo;
+        final CompletableFuture<Concessao> futuro = new CompletableFuture<>();
+        volatile Address dono;
+
+        Espera(String arquivo) {
+            this.arquivo = arquivo;
+        }
+    }
+
+    private final JChannel canal;
+    private final Function<String, Address> donoDoLock;
+    private final Consumer<String> log;
+    private final long leaseMs;
+
+    // Lado do dono (protegido por synchronized(this))
+    private final Map<String, EstadoLock> tabela = new HashMap<>();
+    private final AtomicLong contadorTokens = new AtomicLong();
+    private volatile long carenciaAte = 0;
+    private View viewAnterior;
+
+    // Lado de quem pede
+    private final Map<String, Espera> esperas = new ConcurrentHashMap<>();
+    private final Map<String, Concessao> mantidos = new ConcurrentHashMap<>();
+
+    // Maior token já visto por arquivo (fencing nas réplicas)
+    private final Map<String, Long> ultimoToken = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "locks");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public GerenciadorLocks(JChannel canal, Function<String, Address> donoDoLock,
+                            long leaseMs, Consumer<String> log) {
+        this.canal = canal;
+        this.donoDoLock = donoDoLock;
+        this.leaseMs = leaseMs;
+        this.log = log;
+
+        agendador.scheduleWithFixedDelay(this::verificarLeases,
+                INTERVALO_VERIFICACAO_MS, INTERVALO_VERIFICACAO_MS, TimeUnit.MILLISECONDS);
+        agendador.scheduleWithFixedDelay(this::renovarLeases,
+                leaseMs / 3, leaseMs / 3, TimeUnit.MILLISECONDS);
+    }
+
+    // =========================================================================
+    //  API (LADO DE QUEM PEDE)
+    // =========================================================================
+
+    public Concessao adquirir(String arquivo, long timeoutMs) throws Exception {
+        String lockId = UUID.randomUUID().toString();
+        Espera espera = new Espera(arquivo);
+        espera.dono = donoDoLock.apply(arquivo);
+        esperas.put(lockId, espera);
+
+        log.accept("Solicitando LOCK a " + espera.dono + ": " + arquivo);
+        enviar(espera.dono, MensagemCluster.solicitarLock(arquivo, lockId));
+
+        try {
+            Concessao concessao = espera.futuro.get(timeoutMs, TimeUnit.MILLISECONDS);
+            log.accept("✅ LOCK CONCEDIDO: " + arquivo + " (token " + concessao.token + ")");
+            return concessao;
+        } catch (TimeoutException e) {
+            // Concessão e timeout disputam o future: se a concessão chegou
+            // primeiro, o lock é nosso e não pode ficar perdido em mantidos
+            if (!espera.futuro.completeExceptionally(e)) {
+                Concessao concessao = espera.futuro.join();
+                log.accept("✅ LOCK CONCEDIDO no limite do timeout: " + arquivo + " (token " + concessao.token + ")");
+                return concessao;
+            }
+            // Cancela o pedido para não deixar a fila do dono órfã
+            enviar(espera.dono, MensagemCluster.liberarLock(arquivo, lockId));
+            throw new Exception("Timeout ao aguardar lock: " + arquivo);
+        } finally {
+            esperas.remove(lockId);
+        }
+    }
+
+    public void liberar(Concessao concessao) {
+        if (concessao == null) return;
+
+        mantidos.remove(concessao.lockId);
+        enviar(concessao.dono, MensagemCluster.liberarLock(concessao.arquivo, concessao.lockId));
+    }
+
+    /**
+     * Fencing: rejeita escritas com token menor que o último aceito para o arquivo
+     */
+    public boolean aceitarToken(String arquivo, long token) {
+        if (token == 0) return true;
+
+        boolean[] aceito = {true};
+        ultimoToken.compute(arquivo, (k, atual) -> {
+            if (atual != null && token < atual) {
+                aceito[0] = false;
+                return atual;
+            }
+            return token;
+        });
+        return aceito[0];
+    }
+
+    // =========================================================================
+    //  MENSAGENS
+    // =========================================================================
+
+    public void processar(Address origem, MensagemCluster m) {
+        switch (m.acao) {
+            case LOCK_REQUEST -> processarPedido(origem, m.arquivo, m.lockId);
+            case LOCK_RELEASE -> processarLiberacao(m.arquivo, m.lockId);
+            case LOCK_RENOVAR -> processarRenovacao(m.arquivo, m.lockId);
+            case LOCK_REAFIRMAR -> processarReafirmacao(origem, m.arquivo, m.lockId, m.tokenLock);
+            case LOCK_CONCEDIDO -> receberConcessao(origem, m.arquivo, m.lockId, m.tokenLock);
+            default -> {}
+        }
+    }
+
+    private void receberConcessao(Address dono, String arquivo, String lockId, long token) {
+        Espera espera = esperas.get(lockId);
+        if (espera == null) {
+            // Desistimos antes da concessão chegar: devolve o lock
+            log.accept("⚠️ LOCK concedido para pedido já encerrado: " + arquivo);
+            enviar(dono, MensagemCluster.liberarLock(arquivo, lockId));
+            return;
+        }
+
+        // Em mantidos antes de completar: quem recebe a concessão pode liberá-la logo
+        Concessao concessao = new Concessao(arquivo, lockId, token, dono);
+        mantidos.put(lockId, concessao);
+        if (!espera.futuro.complete(concessao)) {
+            // O pedido acabou de vencer o timeout
+            mantidos.remove(lockId);
+            enviar(dono, MensagemCluster.liberarLock(arquivo, lockId));
+        }
+    }
+
+    // =========================================================================
+    //  LADO DO DONO
+    // =========================================================================
+
+    private synchronized void processarPedido(Address origem, String arquivo, String lockId) {
+        EstadoLock estado = tabela.computeIfAbsent(arquivo, f -> new EstadoLock());
+        estado.fila.add(new Pedido(origem, lockId));
+
+        if (estado.fila.size() > 1 || !estado.livre()) {
+            log.accept("⏳ LOCK ocupado - enfileirando: " + origem + " (posição " + estado.fila.size() + ")");
+        }
+        concederProximos(arquivo, estado);
+    }
+
+    private synchronized void processarLiberacao(String arquivo, String lockId) {
+        EstadoLock estado = tabela.get(arquivo);
+        if (estado == null) return;
+
+        if (estado.titulares.remove(lockId) != null) {
+            log.accept("🔓 Liberando lock: " + arquivo);
+        } else {
+            estado.fila.removeIf(p -> p.lockId.equals(lockId));
+        }
+        concederProximos(arquivo, estado);
+    }
+
+    private synchronized void processarRenovacao(String arquivo, String lockId) {
+        EstadoLock estado = tabela.get(arquivo);
+        Titular titular = estado == null ? null : estado.titulares.get(lockId);
+        if (titular != null) {
+            titular.expiraEm = System.currentTimeMillis() + leaseMs;
+        }
+    }
+
+    /**
+     * Titular de um lock concedido pelo dono anterior se apresenta ao novo dono
+     */
+    private synchronized void processarReafirmacao(Address origem, String arquivo, String lockId, long token) {
+        EstadoLock estado = tabela.computeIfAbsent(arquivo, f -> new EstadoLock());
+        Titular existente = estado.titulares.get(lockId);
+
+        if (existente != null) {
+            existente.expiraEm = System.currentTimeMillis() + leaseMs;
+        } else if (estado.livre()) {
+            estado.titulares.put(lockId, new Titular(origem, lockId, token, System.currentTimeMillis() + leaseMs));
+            log.accept("🔁 LOCK reafirmado por " + origem + ": " + arquivo);
+        } else {
+            log.accept("⚠️ Reafirmação conflitante de " + origem + " para " + arquivo + " (ignorada)");
+        }
+    }
+
+    /**
+     * Concede o lock ao primeiro da fila se ele está livre (chamar com o monitor)
+     */
+    private void concederProximos(String arquivo, EstadoLock estado) {
+        if (!estado.fila.isEmpty() && !emCarencia() && estado.livre()) {
+            Pedido p = estado.fila.poll();
+            Titular t = new Titular(p.origem, p.lockId, proximoToken(), System.currentTimeMillis() + leaseMs);
+            estado.titulares.put(p.lockId, t);
+
+            log.accept("✅ LOCK concedido para " + p.origem + ": " + arquivo);
+            enviar(p.origem, MensagemCluster.lockConcedido(arquivo, p.lockId, t.token));
+        }
+
+        if (estado.titulares.isEmpty() && estado.fila.isEmpty()) {
+            tabela.remove(arquivo);
+        }
+    }
+
+    private synchronized void verificarLeases() {
+        long agora = System.currentTimeMillis();
+        for (Map.Entry<String, EstadoLock> e : new ArrayList<>(tabela.entrySet())) {
+            EstadoLock estado = e.getValue();
+            estado.titulares.values().removeIf(t -> {
+                if (t.expiraEm >= agora) return false;
+                log.accept("⌛ Lease vencido de " + t.origem + ": " + e.getKey());
+                return true;
+            });
+            concederProximos(e.getKey(), estado);
+        }
+    }
+
+    private boolean emCarencia() {
+        return System.currentTimeMillis() < carenciaAte;
+    }
+
+    /**
+     * Token crescente entre views: o id da view ocupa os bits altos
+     */
+    private long proximoToken() {
+        long viewId = canal.getView() == null ? 0 : canal.getView().getViewId().getId();
+        return (viewId << 32) | (contadorTokens.incrementAndGet() & 0xffffffffL);
+    }
+
+    // =========================================================================
+    //  TROCA DE VIEW
+    // =========================================================================
+
+    public void viewMudou(View view) {
+        Address eu = canal.getAddress();
+        List<Address> membros = view.getMembers();
+
+        synchronized (this) {
+            if (viewAnterior != null) {
+                carenciaAte = System.currentTimeMillis() + CARENCIA_MS;
+            }
+            viewAnterior = view;
+
+            Iterator<Map.Entry<String, EstadoLock>> it = tabela.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, EstadoLock> e = it.next();
+                if (!Objects.equals(donoDoLock.apply(e.getKey()), eu)) {
+                    it.remove();
+                    continue;
+                }
+
+                EstadoLock estado = e.getValue();
+                estado.titulares.values().removeIf(t -> {
+                    if (membros.contains(t.origem)) return false;
+                    log.accept("🧹 Titular saiu do cluster, liberando: " + e.getKey());
+                    return true;
+                });
+                estado.fila.removeIf(p -> !membros.contains(p.origem));
+            }
+        }
+
+        // Locks mantidos e pedidos pendentes migram para o novo dono
+        for (Concessao c : mantidos.values()) {
+            Address novo = donoDoLock.apply(c.arquivo);
+            if (!Objects.equals(novo, c.dono)) {
+                c.dono = novo;
+                enviar(novo, MensagemCluster.reafirmarLock(c.arquivo, c.lockId, c.token));
+            }
+        }
+        for (Map.Entry<String, Espera> e : esperas.entrySet()) {
+            Espera espera = e.getValue();
+            Address novo = donoDoLock.apply(espera.arquivo);
+            if (!Objects.equals(novo, espera.dono)) {
+                espera.dono = novo;
+                enviar(novo, MensagemCluster.solicitarLock(espera.arquivo, e.getKey()));
+            }
+        }
+    }
+
+    private void renovarLeases() {
+        for (Concessao c : mantidos.values()) {
+            enviar(c.dono, MensagemCluster.renovarLock(c.arquivo, c.lockId));
+        }
+    }
+
+    // =========================================================================
+    //  UTILITÁRIOS
+    // =========================================================================
+
+    private void enviar(Address destino, MensagemCluster m) {
+        if (destino == null) return;
+
+        if (destino.equals(canal.getAddress())) {
+            processar(destino, m);
+            return;
+        }
+
+        try {
+            canal.send(m.paraMensagem(destino));
+        } catch (Exception e) {
+            log.accept("❌ Erro ao enviar " + m.acao + " para " + destino + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        agendador.shutdownNow();
+    }
+}
@@ -0,0 +1,102 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Identidade estável do nó: id, diretório de dados e banco sobrevivem a
+ * reinícios. O id vem de -Dapp.node ou é o primeiro slot livre
+ * data/node-N; o slot fica reservado por um FileLock enquanto o processo
+ * vive, então várias instâncias na mesma máquina não se misturam.
+ */
+public class IdentidadeNo {
+
+    private final String id;
+    private final Path diretorio;
+    private final FileChannel canalLock;
+    private final FileLock lock;
+
+    private IdentidadeNo(String id, Path diretorio, FileChannel canalLock, FileLock lock) {
+        this.id = id;
+        this.diretorio = diretorio;
+        this.canalLock = canalLock;
+        this.lock = lock;
+    }
+
+    /**
+     * Reserva o nó configurado por -Dapp.data / -Dapp.node (ou o primeiro slot livre)
+     */
+    public static IdentidadeNo reservar() {
+        try {
+            return reivindicar(Paths.get(System.getProperty("app.data", "data")), System.getProperty("app.node"));
+        } catch (IOException e) {
+            throw new IllegalStateException("Não foi possível reservar o diretório do nó: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reserva o nó pedido ou, se id for null, o primeiro node-N livre em raiz
+     */
+    public static IdentidadeNo reivindicar(Path raiz, String id) throws IOException {
+        Files.createDirectories(raiz);
+
+        if (id != null) {
+            IdentidadeNo no = tentar(raiz, id);
+            if (no == null) {
+                throw new IOException("Nó " + id + " já está em uso por outro processo");
+            }
+            return no;
+        }
+
+        for (int n = 1; ; n++) {
+            IdentidadeNo no = tentar(raiz, "node-" + n);
+            if (no != null) {
+                return no;
+            }
+        }
+    }
+
+    private static IdentidadeNo tentar(Path raiz, String id) throws IOException {
+        Path dir = raiz.resolve(id);
+        Files.createDirectories(dir);
+
+        FileChannel canal = FileChannel.open(dir.resolve(".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = canal.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // slot já reservado por esta mesma JVM
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+
+        if (lock == null) {
+            canal.close();
+            return null;
+        }
+        return new IdentidadeNo(id, dir, canal, lock);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Path getDiretorio() {
+        return diretorio;
+    }
+
+    public void liberar() {
+        try {
+            lock.release();
+            canalLock.close();
+        } catch (IOException ignored) {}
+    }
+}
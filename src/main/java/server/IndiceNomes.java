@@ -0,0 +1,110 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Nomes guardados numa pasta do nó, em memória e em ordem (skip-list):
+ * listar e verificar existência não dependem do tamanho da pasta.
+ *
+ * O snapshot só é gravado no encerramento limpo e é apagado ao ser
+ * carregado; sem ele (queda, primeira execução) quem usa o índice o
+ * reconstrói varrendo o disco.
+ */
+public class IndiceNomes {
+
+    private final Path arquivoSnapshot;
+    private final NavigableSet<String> nomes = new ConcurrentSkipListSet<>();
+
+    public IndiceNomes(Path arquivoSnapshot) {
+        this.arquivoSnapshot = arquivoSnapshot;
+    }
+
+    /**
+     * Carrega o snapshot do último encerramento limpo; false se não havia
+     * (ou estava ilegível) e o índice precisa ser reconstruído
+     */
+    public boolean carregar() {
+        if (!Files.exists(arquivoSnapshot)) {
+            return false;
+        }
+
+        boolean ok;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(arquivoSnapshot)))) {
+            int quantidade = in.readInt();
+            for (int i = 0; i < quantidade; i++) {
+                nomes.add(in.readUTF());
+            }
+            ok = true;
+        } catch (IOException e) {
+            System.err.println("Snapshot de nomes ilegível: " + e.getMessage());
+            nomes.clear();
+            ok = false;
+        }
+
+        // A partir daqui o disco pode mudar sem o snapshot acompanhar
+        try {
+            Files.deleteIfExists(arquivoSnapshot);
+        } catch (IOException e) {
+            System.err.println("Erro ao apagar snapshot de nomes: " + e.getMessage());
+            nomes.clear();
+            return false;
+        }
+        return ok;
+    }
+
+    /**
+     * Grava o snapshot (temporário + troca de nome); chamar só quando não há mais escritas
+     */
+    public void salvar(Durabilidade durabilidade) throws IOException {
+        Path temporario = arquivoSnapshot.resolveSibling(arquivoSnapshot.getFileName() + ".tmp");
+        List<String> copia = listar();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporario)))) {
+            out.writeInt(copia.size());
+            for (String nome : copia) {
+                out.writeUTF(nome);
+            }
+        }
+        durabilidade.sincronizar(temporario);
+        Files.move(temporario, arquivoSnapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        durabilidade.sincronizar(arquivoSnapshot.getParent());
+    }
+
+    public void adicionar(String nome) {
+        nomes.add(nome);
+    }
+
+    public void adicionarTodos(Collection<String> lista) {
+        nomes.addAll(lista);
+    }
+
+    public void remover(String nome) {
+        nomes.remove(nome);
+    }
+
+    public boolean contem(String nome) {
+        return nomes.contains(nome);
+    }
+
+    /**
+     * Cópia em ordem alfabética
+     */
+    public List<String> listar() {
+        return new ArrayList<>(nomes);
+    }
+
+    public int tamanho() {
+        return nomes.size();
+    }
+}
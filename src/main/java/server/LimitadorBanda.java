@@ -0,0 +1,45 @@
+package server;
+
+/**
+ * Balde de fichas em bytes/s. Quem passa do limite fica devendo e dorme
+ * o tempo da dívida; a capacidade do balde é um segundo de tráfego.
+ */
+public class LimitadorBanda {
+
+    private final long bytesPorSegundo;
+    private double fichas;
+    private long ultimaRecarga = System.nanoTime();
+
+    /**
+     * @param bytesPorSegundo limite; zero ou negativo desliga o limitador
+     */
+    public LimitadorBanda(long bytesPorSegundo) {
+        this.bytesPorSegundo = bytesPorSegundo;
+        this.fichas = bytesPorSegundo;
+    }
+
+    /**
+     * Bloqueia o tempo necessário para que n bytes caibam no limite
+     */
+    public void consumir(long n) throws InterruptedException {
+        if (bytesPorSegundo <= 0) return;
+
+        long esperaNanos;
+        synchronized (this) {
+            long agora = System.nanoTime();
+            fichas = Math.min(bytesPorSegundo, fichas + (agora - ultimaRecarga) * bytesPorSegundo / 1e9);
+            ultimaRecarga = agora;
+
+            fichas -= n;
+            esperaNanos = fichas < 0 ? (long) (-fichas * 1e9 / bytesPorSegundo) : 0;
+        }
+
+        if (esperaNanos > 0) {
+            Thread.sleep(esperaNanos / 1_000_000, (int) (esperaNanos % 1_000_000));
+        }
+    }
+
+    public long getBytesPorSegundo() {
+        return bytesPorSegundo;
+    }
+}
@@ -0,0 +1,95 @@
+package server;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lista dos arquivos de um nó (nome, tamanho e digest), enviada na
+ * transferência de estado no lugar do conteúdo. O novo membro compara
+ * com o que já tem em disco e só busca os arquivos que diferem.
+ */
+public class Manifesto {
+
+    public static class Entrada {
+        public final long tamanho;
+        public final String digest;
+
+        public Entrada(long tamanho, String digest) {
+            this.tamanho = tamanho;
+            this.digest = digest;
+        }
+
+        boolean igual(Entrada outra) {
+            return outra != null && tamanho == outra.tamanho && digest.equals(outra.digest);
+        }
+    }
+
+    private final Map<String, Entrada> entradas = new TreeMap<>();
+
+    public void adicionar(String nome, long tamanho, String digest) {
+        entradas.put(nome, new Entrada(tamanho, digest));
+    }
+
+    public Entrada get(String nome) {
+        return entradas.get(nome);
+    }
+
+    public Map<String, Entrada> getEntradas() {
+        return Collections.unmodifiableMap(entradas);
+    }
+
+    public int size() {
+        return entradas.size();
+    }
+
+    /**
+     * Arquivos deste manifesto que faltam ou estão diferentes no local
+     */
+    public List<String> diferentes(Manifesto local) {
+        List<String> nomes = new ArrayList<>();
+        for (Map.Entry<String, Entrada> e : entradas.entrySet()) {
+            if (!e.getValue().igual(local.get(e.getKey()))) {
+                nomes.add(e.getKey());
+            }
+        }
+        return nomes;
+    }
+
+    /**
+     * Arquivos locais que não existem mais neste manifesto
+     */
+    public List<String> sobrando(Collection<String> locais) {
+        List<String> nomes = new ArrayList<>();
+        for (String nome : locais) {
+            if (!entradas.containsKey(nome)) {
+                nomes.add(nome);
+            }
+        }
+        return nomes;
+    }
+
+    public void escrever(DataOutput out) throws IOException {
+        out.writeInt(entradas.size());
+        for (Map.Entry<String, Entrada> e : entradas.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeLong(e.getValue().tamanho);
+            out.writeUTF(e.getValue().digest);
+        }
+    }
+
+    public static Manifesto ler(DataInput in) throws IOException {
+        Manifesto m = new Manifesto();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            m.adicionar(in.readUTF(), in.readLong(), in.readUTF());
+        }
+        return m;
+    }
+}
@@ -1,26 +1,74 @@
 package server;
 
+import model.Compressao;
 import model.Usuario;
 import org.jgroups.Address;
+import org.jgroups.BytesMessage;
+import org.jgroups.Constructable;
+import org.jgroups.Message;
+import org.jgroups.NioMessage;
+import org.jgroups.ObjectMessage;
+import org.jgroups.conf.ClassConfigurator;
+import org.jgroups.util.Bits;
+import org.jgroups.util.SizeStreamable;
+import org.jgroups.util.Util;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 
-public class MensagemCluster implements Serializable {
-    private static final long serialVersionUID = 1L;
+/**
+ * Mensagem trocada entre os membros do cluster.
+ *
+ * Codificação binária própria (sem serialização Java): um byte com a ação,
+ * uma máscara (varint) dos campos presentes e só esses campos, com inteiros
+ * e tamanhos em varint e endereços no formato nativo do JGroups. Mensagens
+ * com conteúdo viajam como BytesMessage apontando para o próprio array, e
+ * blocos de arquivo como NioMessage sobre o buffer mapeado, com os demais
+ * campos num cabeçalho (ver {@link CabecalhoCluster}). Corpos que
+ * comprimem bem vão comprimidos (ver {@link Compressao}).
+ */
+public class MensagemCluster implements SizeStreamable, Constructable<MensagemCluster> {
+
+    /** Números mágicos no ClassConfigurator (acima de 1024, reservados para a aplicação) */
+    static final short MAGIC_MENSAGEM = 2000;
+    static final short MAGIC_CABECALHO = 2001;
 
     public enum Acao {
-        UPLOAD,
+        UPLOAD_BLOCO,            // Bloco de um upload (lido do arquivo mapeado na origem)
+        UPLOAD_COMMIT,           // Fim do upload em partes (efetiva o temporário)
         CONFIRMACAO_UPLOAD,      // ✅ Confirmação de upload recebido
         ROLLBACK_UPLOAD,         // ✅ Desfazer upload
+        APPEND,                  // Bytes acrescentados ao final do arquivo
+        ROLLBACK_APPEND,         // Desfaz um append (trunca no tamanho anterior)
         LOCK_REQUEST,
         LOCK_RELEASE,
         LOCK_CONCEDIDO,
+        LOCK_RENOVAR,            // Renovação do lease pelo titular
+        LOCK_REAFIRMAR,          // Titular se apresenta ao novo dono do lock
         SALVAR_USUARIO,
         ROLLBACK_USUARIO,
         CONFIRMACAO_TRANSACAO,
         REGISTER_RPC_ADDRESS,
         APAGAR_ARQUIVO,
+        ARQUIVO_ALTERADO,        // Aviso aos gateways (canal RPC) para invalidar cache
+        PEDIDO_ARQUIVO,          // Novo membro pede um arquivo ao doador do estado
+        ARQUIVO_BLOCO,           // Bloco do arquivo pedido
+        ARQUIVO_FIM,             // Fim do arquivo pedido (tamanho final)
+        PEDIDO_CATCHUP,          // Nó reiniciado informa até onde já aplicou (multicast)
+        CATCHUP_RESPOSTA,        // Coordenador responde com os nomes alterados desde então
+        AE_PEDIDO_NOS,           // Anti-entropia: pede hashes de nós da árvore de Merkle
+        AE_NOS,                  // Anti-entropia: hashes pedidos
+        AE_PEDIDO_BALDES,        // Anti-entropia: pede o conteúdo de baldes (folhas)
+        AE_BALDES,               // Anti-entropia: (nome, digest, versão) dos baldes pedidos
+        PUBLICAR_ESCRITA,        // Quorum formado: as réplicas publicam a escrita preparada
     }
 
     public Acao acao;
@@ -28,29 +76,141 @@ public class MensagemCluster implements Serializable {
     public String uploadId;          // ✅ ID para rastreamento de upload
     public String arquivo;
     public byte[] conteudo;
+    public ByteBuffer bloco;         // Bloco de arquivo (só no corpo de uma NioMessage)
+    public int comprimidoDe;         // Tamanho original do corpo, se ele foi comprimido no envio
+    public long offset;
+    public long tamanho;
+    public long checksum;
+    public long versao;              // Relógio da escrita (last-writer-wins no anti-entropia)
+    public boolean segundoPlano;     // Transferência limitada por banda (anti-entropia)
     public Usuario usuario;
     public String rpcAddress;
     public boolean replicado = false;
-    public String serverOrigin = null;
+    public Address serverOrigin = null;
+    public List<Address> destinos;   // Donos do arquivo que recebem a escrita (os demais só a contam)
+
+    // Campos de lock (id do pedido e token de fencing da concessão)
+    public String lockId;
+    public long tokenLock;
+
+    // Catch-up após reinício (histórico e sequência do log de alterações)
+    public String historico;
+    public long seq;
+    public List<String> nomes;
+    public List<Usuario> usuarios;
 
     // Campos para controle de transações
     public String transactionId;
     public boolean sucesso;
 
-    private MensagemCluster() {}
+    public MensagemCluster() {}
+
+    /**
+     * Registra a mensagem e o cabeçalho no JGroups; chamar antes de conectar o canal
+     */
+    public static synchronized void registrarTipos() {
+        ClassConfigurator.addIfAbsent(MAGIC_MENSAGEM, MensagemCluster.class);
+        ClassConfigurator.addIfAbsent(MAGIC_CABECALHO, CabecalhoCluster.class);
+    }
+
+    /**
+     * Mensagem JGroups para o destino (null = multicast). Com conteúdo, o
+     * array (ou o buffer do bloco) vai sem cópia no corpo e o resto no cabeçalho.
+     */
+    public Message paraMensagem(Address destino) {
+        ByteBuffer corpo = bloco != null ? bloco : conteudo != null ? ByteBuffer.wrap(conteudo) : null;
+        byte[] comprimido = (corpo != null && Compressao.HABILITADA) ? Compressao.comprimir(corpo) : null;
+        if (comprimido != null) {
+            comprimidoDe = corpo.remaining();
+            return new BytesMessage(destino, comprimido).putHeader(CabecalhoCluster.ID, new CabecalhoCluster(this));
+        }
+        comprimidoDe = 0;
+
+        if (bloco != null) {
+            // Quem recebe aloca o bloco fora do heap e grava direto no canal do arquivo
+            return new NioMessage(destino, bloco).useDirectMemory(true)
+                    .putHeader(CabecalhoCluster.ID, new CabecalhoCluster(this));
+        }
+        if (conteudo == null) {
+            return new ObjectMessage(destino, this);
+        }
+        return new BytesMessage(destino, conteudo).putHeader(CabecalhoCluster.ID, new CabecalhoCluster(this));
+    }
+
+    /**
+     * MensagemCluster contida numa mensagem JGroups, ou null se for outra coisa
+     */
+    public static MensagemCluster de(Message msg) {
+        return de(msg, true);
+    }
+
+    /**
+     * @param comCorpo false para só ler os campos (ex.: a própria mensagem, que não será aplicada)
+     */
+    public static MensagemCluster de(Message msg, boolean comCorpo) {
+        CabecalhoCluster cabecalho = msg.getHeader(CabecalhoCluster.ID);
+        if (cabecalho != null) {
+            MensagemCluster m = cabecalho.mensagem;
+            if (!comCorpo) {
+                return m;
+            }
+            if (msg instanceof NioMessage nio) {
+                m.bloco = nio.getBuf();
+                return m;
+            }
+
+            byte[] array = msg.getArray();
+            byte[] corpo;
+            if (m.comprimidoDe > 0) {
+                corpo = Compressao.descomprimir(array, msg.getOffset(), msg.getLength(), m.comprimidoDe);
+            } else if (msg.getOffset() == 0 && msg.getLength() == array.length) {
+                corpo = array;
+            } else {
+                corpo = Arrays.copyOfRange(array, msg.getOffset(), msg.getOffset() + msg.getLength());
+            }
+
+            // Blocos de arquivo são lidos como buffer, mesmo que tenham vindo comprimidos
+            if (m.acao == Acao.UPLOAD_BLOCO || m.acao == Acao.ARQUIVO_BLOCO) {
+                m.bloco = ByteBuffer.wrap(corpo);
+            } else {
+                m.conteudo = corpo;
+            }
+            return m;
+        }
+        if (!(msg instanceof ObjectMessage)) return null;
+        Object obj = msg.getObject();
+        return obj instanceof MensagemCluster m ? m : null;
+    }
 
     // ================== MÉTODOS DE ARQUIVO ==================
 
     /**
-     * Upload de arquivo com ID para rastreamento
+     * Bloco de um upload (gravado no temporário do uploadId)
+     */
+    public static MensagemCluster blocoUpload(String arquivo, String uploadId, long offset, ByteBuffer bloco) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.UPLOAD_BLOCO;
+        m.arquivo = arquivo;
+        m.uploadId = uploadId;
+        m.offset = offset;
+        m.bloco = bloco;
+        return m;
+    }
+
+    /**
+     * Fim do upload: as réplicas efetivam o temporário e confirmam
      */
-    public static MensagemCluster upload(String arquivo, byte[] conteudo, String uploadId, Address serverOrigin) {
+    public static MensagemCluster commitUpload(String arquivo, String uploadId, long tamanho, Address serverOrigin,
+                                               List<Address> destinos, long tokenLock, long versao) {
         MensagemCluster m = new MensagemCluster();
-        m.acao = Acao.UPLOAD;
+        m.acao = Acao.UPLOAD_COMMIT;
+        m.destinos = destinos;
+        m.versao = versao;
+        m.tokenLock = tokenLock;
         m.arquivo = arquivo;
-        m.conteudo = conteudo;
-        m.uploadId = uploadId;  // ✅ Usa uploadId para rastrear confirmações
-        m.serverOrigin = serverOrigin.toString();
+        m.uploadId = uploadId;
+        m.tamanho = tamanho;
+        m.serverOrigin = serverOrigin;
         return m;
     }
 
@@ -65,47 +225,129 @@ public class MensagemCluster implements Serializable {
         return m;
     }
 
+    /**
+     * Segunda fase de um upload ou append confirmado pelo quorum
+     */
+    public static MensagemCluster publicarEscrita(String arquivo, String uploadId) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.PUBLICAR_ESCRITA;
+        m.arquivo = arquivo;
+        m.uploadId = uploadId;
+        return m;
+    }
+
     /**
      * Rollback de upload (desfazer em todas as réplicas)
      */
-    public static MensagemCluster rollbackUpload(String arquivo, String uploadId) {
+    public static MensagemCluster rollbackUpload(String arquivo, String uploadId, long versao) {
         MensagemCluster m = new MensagemCluster();
         m.acao = Acao.ROLLBACK_UPLOAD;
+        m.versao = versao;
         m.arquivo = arquivo;
         m.uploadId = uploadId;
         return m;
     }
 
-    public static MensagemCluster apagarArquivo(String nameFile) {
+    /**
+     * Append replicado: só o delta, o tamanho esperado antes dele (offset) e o CRC32 do delta
+     */
+    public static MensagemCluster append(String arquivo, byte[] delta, String uploadId, long tamanhoAnterior,
+                                         long checksum, Address serverOrigin, List<Address> destinos,
+                                         long tokenLock, long versao) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.APPEND;
+        m.destinos = destinos;
+        m.versao = versao;
+        m.tokenLock = tokenLock;
+        m.arquivo = arquivo;
+        m.conteudo = delta;
+        m.uploadId = uploadId;
+        m.offset = tamanhoAnterior;
+        m.checksum = checksum;
+        m.serverOrigin = serverOrigin;
+        return m;
+    }
+
+    /**
+     * Rollback de append: réplicas truncam o arquivo no tamanho anterior
+     */
+    public static MensagemCluster rollbackAppend(String arquivo, String uploadId, long tamanhoAnterior, long versao) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.ROLLBACK_APPEND;
+        m.versao = versao;
+        m.arquivo = arquivo;
+        m.uploadId = uploadId;
+        m.offset = tamanhoAnterior;
+        return m;
+    }
+
+    public static MensagemCluster apagarArquivo(String nameFile, String uploadId, Address serverOrigin,
+                                                List<Address> destinos, long tokenLock, long versao) {
         MensagemCluster m = new MensagemCluster();
         m.acao = Acao.APAGAR_ARQUIVO;
+        m.destinos = destinos;
+        m.versao = versao;
+        m.tokenLock = tokenLock;
+        m.arquivo = nameFile;
+        m.uploadId = uploadId;
+        m.serverOrigin = serverOrigin;
+        return m;
+    }
+
+    /**
+     * Aviso de que o conteúdo do arquivo mudou (upload, edição, remoção ou rollback)
+     */
+    public static MensagemCluster arquivoAlterado(String nameFile) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.ARQUIVO_ALTERADO;
         m.arquivo = nameFile;
         return m;
     }
 
     // ================== MÉTODOS DE LOCK ==================
 
-    public static MensagemCluster solicitarLock(String arquivo) {
+    public static MensagemCluster solicitarLock(String arquivo, String lockId) {
         MensagemCluster m = new MensagemCluster();
         m.acao = Acao.LOCK_REQUEST;
         m.arquivo = arquivo;
+        m.lockId = lockId;
         return m;
     }
 
-    public static MensagemCluster liberarLock(String arquivo) {
+    public static MensagemCluster liberarLock(String arquivo, String lockId) {
         MensagemCluster m = new MensagemCluster();
         m.acao = Acao.LOCK_RELEASE;
         m.arquivo = arquivo;
+        m.lockId = lockId;
         return m;
     }
 
     /**
-     * Notificação de que lock foi concedido
+     * Notificação de que lock foi concedido (com token de fencing)
      */
-    public static MensagemCluster lockConcedido(String arquivo) {
+    public static MensagemCluster lockConcedido(String arquivo, String lockId, long tokenLock) {
         MensagemCluster m = new MensagemCluster();
         m.acao = Acao.LOCK_CONCEDIDO;
         m.arquivo = arquivo;
+        m.lockId = lockId;
+        m.tokenLock = tokenLock;
+        return m;
+    }
+
+    public static MensagemCluster renovarLock(String arquivo, String lockId) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.LOCK_RENOVAR;
+        m.arquivo = arquivo;
+        m.lockId = lockId;
+        return m;
+    }
+
+    public static MensagemCluster reafirmarLock(String arquivo, String lockId, long tokenLock) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.LOCK_REAFIRMAR;
+        m.arquivo = arquivo;
+        m.lockId = lockId;
+        m.tokenLock = tokenLock;
         return m;
     }
 
@@ -151,6 +393,7 @@ public class MensagemCluster implements Serializable {
                 "acao=" + acao +
                 (arquivo != null ? ", arquivo=" + arquivo : "") +
                 (uploadId != null ? ", uploadId=" + uploadId : "") +
+                (lockId != null ? ", lockId=" + lockId : "") +
                 (usuario != null ? ", usuario=" + usuario.getUsername() : "") +
                 (rpcAddress != null ? ", rpcAddr=" + rpcAddress : "") +
                 (transactionId != null ? ", txId=" + transactionId : "") +
@@ -158,4 +401,346 @@ public class MensagemCluster implements Serializable {
                 ", sucesso=" + sucesso +
                 '}';
     }
-}
\ No newline at end of file
+
+    // ================== TRANSFERÊNCIA DE ESTADO ==================
+
+    public static MensagemCluster pedidoArquivo(String arquivo, String sessao, boolean segundoPlano) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.PEDIDO_ARQUIVO;
+        m.segundoPlano = segundoPlano;
+        m.arquivo = arquivo;
+        m.uploadId = sessao;
+        return m;
+    }
+
+    public static MensagemCluster blocoArquivo(String arquivo, String sessao, long offset, ByteBuffer bloco) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.ARQUIVO_BLOCO;
+        m.arquivo = arquivo;
+        m.uploadId = sessao;
+        m.offset = offset;
+        m.bloco = bloco;
+        return m;
+    }
+
+    /**
+     * Fim da transferência; existe=false quando o doador não tem mais o arquivo
+     */
+    public static MensagemCluster fimArquivo(String arquivo, String sessao, long tamanho, boolean existe, long versao) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.ARQUIVO_FIM;
+        m.versao = versao;
+        m.arquivo = arquivo;
+        m.uploadId = sessao;
+        m.tamanho = tamanho;
+        m.sucesso = existe;
+        return m;
+    }
+
+    /**
+     * Enviado em multicast: o ponto em que é entregue na ordem total é o
+     * ponto de corte comum entre o nó que pede e o coordenador
+     */
+    public static MensagemCluster pedidoCatchup(String historico, long seq) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.PEDIDO_CATCHUP;
+        m.historico = historico;
+        m.seq = seq;
+        return m;
+    }
+
+    /**
+     * nomes == null: o log do coordenador não cobre o pedido (usar transferência de estado)
+     */
+    public static MensagemCluster respostaCatchup(String historico, long seq, List<String> nomes,
+                                                  List<Usuario> usuarios) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = Acao.CATCHUP_RESPOSTA;
+        m.historico = historico;
+        m.seq = seq;
+        m.nomes = nomes;
+        m.usuarios = usuarios;
+        return m;
+    }
+
+    // ================== ANTI-ENTROPIA ==================
+
+    /**
+     * Pedido/resposta do anti-entropia; o corpo é codificado pela classe AntiEntropia
+     */
+    public static MensagemCluster antiEntropia(Acao acao, String sessao, byte[] corpo) {
+        MensagemCluster m = new MensagemCluster();
+        m.acao = acao;
+        m.uploadId = sessao;
+        m.conteudo = corpo;
+        return m;
+    }
+
+    // ================== CODIFICAÇÃO BINÁRIA ==================
+
+    private static final Acao[] ACOES = Acao.values();
+
+    // Bits da máscara de campos presentes
+    private static final int UUID_ = 1;
+    private static final int UPLOAD_ID = 1 << 1;
+    private static final int ARQUIVO = 1 << 2;
+    private static final int CONTEUDO = 1 << 3;
+    private static final int OFFSET = 1 << 4;
+    private static final int TAMANHO = 1 << 5;
+    private static final int CHECKSUM = 1 << 6;
+    private static final int VERSAO = 1 << 7;
+    private static final int SEGUNDO_PLANO = 1 << 8;
+    private static final int USUARIO = 1 << 9;
+    private static final int RPC_ADDRESS = 1 << 10;
+    private static final int REPLICADO = 1 << 11;
+    private static final int ORIGEM = 1 << 12;
+    private static final int LOCK_ID = 1 << 13;
+    private static final int TOKEN_LOCK = 1 << 14;
+    private static final int HISTORICO = 1 << 15;
+    private static final int SEQ = 1 << 16;
+    private static final int NOMES = 1 << 17;
+    private static final int USUARIOS = 1 << 18;
+    private static final int TRANSACAO = 1 << 19;
+    private static final int SUCESSO = 1 << 20;
+    private static final int COMPRIMIDO = 1 << 21;
+    private static final int DESTINOS = 1 << 22;
+
+    @Override
+    public Supplier<? extends MensagemCluster> create() {
+        return MensagemCluster::new;
+    }
+
+    @Override
+    public int serializedSize() {
+        return tamanhoSerializado(true);
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        escrever(out, true);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        ler(in);
+    }
+
+    private int mascara(boolean comConteudo) {
+        int m = 0;
+        if (uuid != null) m |= UUID_;
+        if (uploadId != null) m |= UPLOAD_ID;
+        if (arquivo != null) m |= ARQUIVO;
+        if (comConteudo && conteudo != null) m |= CONTEUDO;
+        if (offset != 0) m |= OFFSET;
+        if (tamanho != 0) m |= TAMANHO;
+        if (checksum != 0) m |= CHECKSUM;
+        if (versao != 0) m |= VERSAO;
+        if (segundoPlano) m |= SEGUNDO_PLANO;
+        if (usuario != null) m |= USUARIO;
+        if (rpcAddress != null) m |= RPC_ADDRESS;
+        if (replicado) m |= REPLICADO;
+        if (serverOrigin != null) m |= ORIGEM;
+        if (lockId != null) m |= LOCK_ID;
+        if (tokenLock != 0) m |= TOKEN_LOCK;
+        if (historico != null) m |= HISTORICO;
+        if (seq != 0) m |= SEQ;
+        if (nomes != null) m |= NOMES;
+        if (usuarios != null) m |= USUARIOS;
+        if (transactionId != null) m |= TRANSACAO;
+        if (sucesso) m |= SUCESSO;
+        if (!comConteudo && comprimidoDe > 0) m |= COMPRIMIDO;
+        if (destinos != null) m |= DESTINOS;
+        return m;
+    }
+
+    /**
+     * @param comConteudo false no cabeçalho de uma BytesMessage (o conteúdo vai no corpo)
+     */
+    void escrever(DataOutput out, boolean comConteudo) throws IOException {
+        int m = mascara(comConteudo);
+        out.writeByte(acao.ordinal());
+        Bits.writeIntCompressed(m, out);
+
+        if ((m & UUID_) != 0) escreverTexto(uuid, out);
+        if ((m & UPLOAD_ID) != 0) escreverTexto(uploadId, out);
+        if ((m & ARQUIVO) != 0) escreverTexto(arquivo, out);
+        if ((m & CONTEUDO) != 0) {
+            Bits.writeIntCompressed(conteudo.length, out);
+            out.write(conteudo);
+        }
+        if ((m & OFFSET) != 0) Bits.writeLongCompressed(offset, out);
+        if ((m & TAMANHO) != 0) Bits.writeLongCompressed(tamanho, out);
+        if ((m & CHECKSUM) != 0) Bits.writeLongCompressed(checksum, out);
+        if ((m & VERSAO) != 0) Bits.writeLongCompressed(versao, out);
+        if ((m & USUARIO) != 0) escreverUsuario(usuario, out);
+        if ((m & RPC_ADDRESS) != 0) escreverTexto(rpcAddress, out);
+        if ((m & ORIGEM) != 0) Util.writeAddress(serverOrigin, out);
+        if ((m & LOCK_ID) != 0) escreverTexto(lockId, out);
+        if ((m & TOKEN_LOCK) != 0) Bits.writeLongCompressed(tokenLock, out);
+        if ((m & HISTORICO) != 0) escreverTexto(historico, out);
+        if ((m & SEQ) != 0) Bits.writeLongCompressed(seq, out);
+        if ((m & NOMES) != 0) {
+            Bits.writeIntCompressed(nomes.size(), out);
+            for (String nome : nomes) escreverTexto(nome, out);
+        }
+        if ((m & USUARIOS) != 0) {
+            Bits.writeIntCompressed(usuarios.size(), out);
+            for (Usuario u : usuarios) escreverUsuario(u, out);
+        }
+        if ((m & TRANSACAO) != 0) escreverTexto(transactionId, out);
+        if ((m & COMPRIMIDO) != 0) Bits.writeIntCompressed(comprimidoDe, out);
+        if ((m & DESTINOS) != 0) {
+            Bits.writeIntCompressed(destinos.size(), out);
+            for (Address a : destinos) Util.writeAddress(a, out);
+        }
+    }
+
+    void ler(DataInput in) throws IOException {
+        acao = ACOES[in.readUnsignedByte()];
+        int m = Bits.readIntCompressed(in);
+
+        segundoPlano = (m & SEGUNDO_PLANO) != 0;
+        replicado = (m & REPLICADO) != 0;
+        sucesso = (m & SUCESSO) != 0;
+
+        if ((m & UUID_) != 0) uuid = lerTexto(in);
+        if ((m & UPLOAD_ID) != 0) uploadId = lerTexto(in);
+        if ((m & ARQUIVO) != 0) arquivo = lerTexto(in);
+        if ((m & CONTEUDO) != 0) {
+            conteudo = new byte[Bits.readIntCompressed(in)];
+            in.readFully(conteudo);
+        }
+        if ((m & OFFSET) != 0) offset = Bits.readLongCompressed(in);
+        if ((m & TAMANHO) != 0) tamanho = Bits.readLongCompressed(in);
+        if ((m & CHECKSUM) != 0) checksum = Bits.readLongCompressed(in);
+        if ((m & VERSAO) != 0) versao = Bits.readLongCompressed(in);
+        if ((m & USUARIO) != 0) usuario = lerUsuario(in);
+        if ((m & RPC_ADDRESS) != 0) rpcAddress = lerTexto(in);
+        if ((m & ORIGEM) != 0) serverOrigin = lerEndereco(in);
+        if ((m & LOCK_ID) != 0) lockId = lerTexto(in);
+        if ((m & TOKEN_LOCK) != 0) tokenLock = Bits.readLongCompressed(in);
+        if ((m & HISTORICO) != 0) historico = lerTexto(in);
+        if ((m & SEQ) != 0) seq = Bits.readLongCompressed(in);
+        if ((m & NOMES) != 0) {
+            int n = Bits.readIntCompressed(in);
+            nomes = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) nomes.add(lerTexto(in));
+        }
+        if ((m & USUARIOS) != 0) {
+            int n = Bits.readIntCompressed(in);
+            usuarios = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) usuarios.add(lerUsuario(in));
+        }
+        if ((m & TRANSACAO) != 0) transactionId = lerTexto(in);
+        if ((m & COMPRIMIDO) != 0) comprimidoDe = Bits.readIntCompressed(in);
+        if ((m & DESTINOS) != 0) {
+            int n = Bits.readIntCompressed(in);
+            destinos = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) destinos.add(lerEndereco(in));
+        }
+    }
+
+    int tamanhoSerializado(boolean comConteudo) {
+        int m = mascara(comConteudo);
+        int t = 1 + Bits.size(m);
+
+        if ((m & UUID_) != 0) t += tamanhoTexto(uuid);
+        if ((m & UPLOAD_ID) != 0) t += tamanhoTexto(uploadId);
+        if ((m & ARQUIVO) != 0) t += tamanhoTexto(arquivo);
+        if ((m & CONTEUDO) != 0) t += Bits.size(conteudo.length) + conteudo.length;
+        if ((m & OFFSET) != 0) t += Bits.size(offset);
+        if ((m & TAMANHO) != 0) t += Bits.size(tamanho);
+        if ((m & CHECKSUM) != 0) t += Bits.size(checksum);
+        if ((m & VERSAO) != 0) t += Bits.size(versao);
+        if ((m & USUARIO) != 0) t += tamanhoUsuario(usuario);
+        if ((m & RPC_ADDRESS) != 0) t += tamanhoTexto(rpcAddress);
+        if ((m & ORIGEM) != 0) t += Util.size(serverOrigin);
+        if ((m & LOCK_ID) != 0) t += tamanhoTexto(lockId);
+        if ((m & TOKEN_LOCK) != 0) t += Bits.size(tokenLock);
+        if ((m & HISTORICO) != 0) t += tamanhoTexto(historico);
+        if ((m & SEQ) != 0) t += Bits.size(seq);
+        if ((m & NOMES) != 0) {
+            t += Bits.size(nomes.size());
+            for (String nome : nomes) t += tamanhoTexto(nome);
+        }
+        if ((m & USUARIOS) != 0) {
+            t += Bits.size(usuarios.size());
+            for (Usuario u : usuarios) t += tamanhoUsuario(u);
+        }
+        if ((m & TRANSACAO) != 0) t += tamanhoTexto(transactionId);
+        if ((m & COMPRIMIDO) != 0) t += Bits.size(comprimidoDe);
+        if ((m & DESTINOS) != 0) {
+            t += Bits.size(destinos.size());
+            for (Address a : destinos) t += Util.size(a);
+        }
+        return t;
+    }
+
+    private static Address lerEndereco(DataInput in) throws IOException {
+        try {
+            return Util.readAddress(in);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("endereço inválido", e);
+        }
+    }
+
+    // Textos: varint (bytes UTF-8 + 1), zero = null
+
+    private static void escreverTexto(String s, DataOutput out) throws IOException {
+        if (s == null) {
+            Bits.writeIntCompressed(0, out);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        Bits.writeIntCompressed(b.length + 1, out);
+        out.write(b);
+    }
+
+    private static String lerTexto(DataInput in) throws IOException {
+        int n = Bits.readIntCompressed(in);
+        if (n == 0) return null;
+        byte[] b = new byte[n - 1];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static int tamanhoTexto(String s) {
+        if (s == null) return Bits.size(0);
+        int n = tamanhoUtf8(s);
+        return Bits.size(n + 1) + n;
+    }
+
+    private static int tamanhoUtf8(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) n += 1;
+            else if (c < 0x800) n += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                n += 4;
+                i++;
+            } else n += 3;
+        }
+        return n;
+    }
+
+    // Usuário: id (varint, -1 = sem id), username e senha
+
+    private static void escreverUsuario(Usuario u, DataOutput out) throws IOException {
+        Bits.writeIntCompressed(u.getId() == null ? -1 : u.getId(), out);
+        escreverTexto(u.getUsername(), out);
+        escreverTexto(u.getPassword(), out);
+    }
+
+    private static Usuario lerUsuario(DataInput in) throws IOException {
+        int id = Bits.readIntCompressed(in);
+        Usuario u = new Usuario(lerTexto(in), lerTexto(in));
+        if (id >= 0) u.setId(id);
+        return u;
+    }
+
+    private static int tamanhoUsuario(Usuario u) {
+        return Bits.size(u.getId() == null ? -1 : u.getId())
+                + tamanhoTexto(u.getUsername()) + tamanhoTexto(u.getPassword());
+    }
+}
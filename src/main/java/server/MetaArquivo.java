@@ -0,0 +1,20 @@
+package server;
+
+/**
+ * Metadados de um arquivo mantidos em memória pelo ControleServer
+ * (espelho do índice persistente, model.Arquivo)
+ */
+public class MetaArquivo {
+
+    public final long tamanho;
+    public final String digest;  // SHA-256 em hexadecimal
+    public final long versao;    // relógio da última escrita (last-writer-wins)
+    public final String dono;    // nó que coordenou a última escrita
+
+    public MetaArquivo(long tamanho, String digest, long versao, String dono) {
+        this.tamanho = tamanho;
+        this.digest = digest;
+        this.versao = versao;
+        this.dono = dono;
+    }
+}
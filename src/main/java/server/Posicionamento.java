@@ -0,0 +1,132 @@
+package server;
+
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.util.ExtendedUUID;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Onde cada arquivo mora: nos N primeiros backends do anel de hash a
+ * partir do nome. Escritas esperam W confirmações entre esses donos e
+ * leituras consultam R deles; com W + R > N a leitura sempre encontra
+ * algum dono com a última escrita confirmada.
+ *
+ * Backends e gateways montam o mesmo anel a partir do id durável do nó
+ * (IdentidadeNo), que cada backend grava no próprio endereço JGroups dos
+ * dois canais. O nome lógico ("backend-<nó>@<host>") serve só para log:
+ * depende do NameCache de quem olha e não decide quem é backend.
+ */
+public class Posicionamento {
+
+    public static final String PREFIXO_BACKEND = "backend-";
+    // Chave do id do nó no ExtendedUUID dos backends
+    public static final String CHAVE_BACKEND = "backend";
+    // Erro de quem recebeu uma escrita sem ser dono do nome: a view do gateway
+    // ainda não bate com a do cluster, e outro dono pode aceitar
+    public static final String ERRO_NAO_DONO = "[NAO_DONO]";
+    public static final int PONTOS_VIRTUAIS = 64;
+
+    private final int n;
+    private final int w;
+    private final int r;
+
+    public Posicionamento(int n, int w, int r) {
+        if (n < 1 || w < 1 || w > n || r < 1 || r > n) {
+            throw new IllegalArgumentException("replicação inválida: N=" + n + " W=" + w + " R=" + r);
+        }
+        this.n = n;
+        this.w = w;
+        this.r = r;
+    }
+
+    /**
+     * -Dapp.replicacao.n (3), -Dapp.replicacao.w (maioria de N) e -Dapp.replicacao.r (N - W + 1)
+     */
+    public static Posicionamento doSistema() {
+        int n = Integer.getInteger("app.replicacao.n", 3);
+        int w = Integer.getInteger("app.replicacao.w", n / 2 + 1);
+        int r = Integer.getInteger("app.replicacao.r", n - w + 1);
+        return new Posicionamento(n, w, r);
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    /**
+     * W efetivo quando há menos donos vivos que N (cluster pequeno)
+     */
+    public int escritas(int donos) {
+        return Math.min(w, donos);
+    }
+
+    public int leituras(int donos) {
+        return Math.min(r, donos);
+    }
+
+    public <T> List<T> donos(AnelHash<T> anel, String nome) {
+        return anel.donos(nome, n);
+    }
+
+    // =========================================================================
+    //  NOMES LÓGICOS
+    // =========================================================================
+
+    public static String nomeBackend(IdentidadeNo no) {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        return PREFIXO_BACKEND + no.getId() + "@" + host;
+    }
+
+    /**
+     * Faz os endereços do canal carregarem o id durável do nó; chamar antes do connect
+     */
+    public static void identificar(JChannel canal, IdentidadeNo no) {
+        String nome = nomeBackend(no);
+        canal.name(nome);
+        canal.addAddressGenerator(() -> enderecoBackend(nome, no.getId()));
+    }
+
+    public static ExtendedUUID enderecoBackend(String nome, String id) {
+        return ExtendedUUID.randomUUID(nome).put(CHAVE_BACKEND, id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Id durável do backend, ou null se o membro não for um backend (gateway, cliente)
+     */
+    public static String idBackend(Address membro) {
+        if (!(membro instanceof ExtendedUUID)) return null;
+        byte[] id = ((ExtendedUUID) membro).get(CHAVE_BACKEND);
+        return id == null ? null : new String(id, StandardCharsets.UTF_8);
+    }
+
+    public static boolean isBackend(Address membro) {
+        return idBackend(membro) != null;
+    }
+
+    public static List<Address> backends(Collection<Address> membros) {
+        List<Address> backends = new ArrayList<>();
+        for (Address membro : membros) {
+            if (isBackend(membro)) backends.add(membro);
+        }
+        return backends;
+    }
+
+    public static AnelHash<Address> anel(Collection<Address> membros) {
+        return new AnelHash<>(backends(membros), PONTOS_VIRTUAIS, Posicionamento::idBackend);
+    }
+
+    @Override
+    public String toString() {
+        return "N=" + n + " W=" + w + " R=" + r;
+    }
+}
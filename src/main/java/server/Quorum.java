@@ -0,0 +1,62 @@
+package server;
+
+import org.jgroups.Address;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Contagem de confirmações de uma operação replicada.
+ *
+ * O resultado é completado no momento em que o quorum é atingido ou chega
+ * uma confirmação negativa, liberando quem espera sem polling.
+ */
+public class Quorum {
+
+    private final int necessario;
+    private final Set<Address> confirmados = ConcurrentHashMap.newKeySet();
+    private final CompletableFuture<Boolean> resultado = new CompletableFuture<>();
+
+    public Quorum(int necessario) {
+        this.necessario = necessario;
+        if (necessario <= 0) {
+            resultado.complete(true);
+        }
+    }
+
+    /**
+     * Conta a confirmação positiva de um membro (repetidas são ignoradas)
+     */
+    public void confirmar(Address membro) {
+        if (confirmados.add(membro) && confirmados.size() >= necessario) {
+            resultado.complete(true);
+        }
+    }
+
+    public void rejeitar() {
+        resultado.complete(false);
+    }
+
+    /**
+     * Bloqueia até o resultado; timeout conta como falha
+     */
+    public boolean aguardar(long timeoutMs) throws InterruptedException {
+        try {
+            return resultado.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    public int getConfirmados() {
+        return confirmados.size();
+    }
+
+    public int getNecessario() {
+        return necessario;
+    }
+}
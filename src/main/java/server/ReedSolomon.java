@@ -0,0 +1,282 @@
+package server;
+
+import java.util.Arrays;
+
+/**
+ * Código Reed-Solomon sistemático sobre GF(2^8): k fragmentos de dados
+ * (o conteúdo fatiado) mais m de paridade; quaisquer k dos k + m
+ * reconstroem o conteúdo.
+ *
+ * A matriz de codificação é uma Vandermonde (k + m) x k normalizada para
+ * ter a identidade nas k primeiras linhas, o que mantém qualquer
+ * subconjunto de k linhas inversível. Multiplicações vêm de uma tabela
+ * 256 x 256, uma consulta por byte.
+ */
+public final class ReedSolomon {
+
+    // x^8 + x^4 + x^3 + x^2 + 1
+    private static final int POLINOMIO = 0x11d;
+    private static final byte[] EXP = new byte[512];
+    private static final int[] LOG = new int[256];
+    private static final byte[][] MUL = new byte[256][256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = (byte) x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= 256) x ^= POLINOMIO;
+        }
+        for (int i = 255; i < EXP.length; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+        for (int a = 1; a < 256; a++) {
+            for (int b = 1; b < 256; b++) {
+                MUL[a][b] = EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+    private final int k;
+    private final int m;
+    private final byte[][] matriz;
+
+    public ReedSolomon(int dados, int paridade) {
+        if (dados < 1 || paridade < 0 || dados + paridade > 256) {
+            throw new IllegalArgumentException("fragmentos inválidos: k=" + dados + " m=" + paridade);
+        }
+        this.k = dados;
+        this.m = paridade;
+
+        byte[][] vandermonde = new byte[dados + paridade][dados];
+        for (int i = 0; i < vandermonde.length; i++) {
+            for (int j = 0; j < dados; j++) {
+                vandermonde[i][j] = potencia(i, j);
+            }
+        }
+        this.matriz = multiplicar(vandermonde, inverter(Arrays.copyOf(vandermonde, dados)));
+    }
+
+    public int getDados() {
+        return k;
+    }
+
+    public int getParidade() {
+        return m;
+    }
+
+    public int getTotal() {
+        return k + m;
+    }
+
+    /**
+     * Tamanho de cada fragmento (o último de dados é completado com zeros)
+     */
+    public int tamanhoFragmento(long tamanho) {
+        return (int) Math.max(1, (tamanho + k - 1) / k);
+    }
+
+    // =========================================================================
+    //  CODIFICAÇÃO
+    // =========================================================================
+
+    /**
+     * Fatia o conteúdo em k fragmentos e calcula os m de paridade
+     */
+    public byte[][] codificar(byte[] conteudo) {
+        int tamanho = tamanhoFragmento(conteudo.length);
+        byte[][] fragmentos = new byte[k + m][];
+        for (int i = 0; i < k; i++) {
+            // copyOfRange completa com zeros além do fim do conteúdo
+            int inicio = (int) Math.min(conteudo.length, (long) i * tamanho);
+            fragmentos[i] = Arrays.copyOfRange(conteudo, inicio, inicio + tamanho);
+        }
+        for (int i = k; i < k + m; i++) {
+            fragmentos[i] = new byte[tamanho];
+        }
+        codificarParidade(fragmentos);
+        return fragmentos;
+    }
+
+    /**
+     * Recalcula os fragmentos de paridade a partir dos k de dados (no lugar)
+     */
+    public void codificarParidade(byte[][] fragmentos) {
+        byte[][] dados = Arrays.copyOf(fragmentos, k);
+        for (int p = 0; p < m; p++) {
+            Arrays.fill(fragmentos[k + p], (byte) 0);
+            combinar(matriz[k + p], dados, fragmentos[k + p]);
+        }
+    }
+
+    /**
+     * saida ^= soma(coeficientes[c] * entradas[c]) em GF(2^8)
+     */
+    private static void combinar(byte[] coeficientes, byte[][] entradas, byte[] saida) {
+        int tamanho = saida.length;
+        for (int c = 0; c < entradas.length; c++) {
+            int coef = coeficientes[c] & 0xff;
+            if (coef == 0) continue;
+            byte[] entrada = entradas[c];
+            if (coef == 1) {
+                for (int i = 0; i < tamanho; i++) saida[i] ^= entrada[i];
+                continue;
+            }
+            byte[] tabela = MUL[coef];
+            for (int i = 0; i < tamanho; i++) {
+                saida[i] ^= tabela[entrada[i] & 0xff];
+            }
+        }
+    }
+
+    // =========================================================================
+    //  DECODIFICAÇÃO
+    // =========================================================================
+
+    /**
+     * Preenche os fragmentos ausentes (null) a partir de quaisquer k presentes
+     *
+     * @throws IllegalArgumentException com menos de k fragmentos
+     */
+    public void reconstruir(byte[][] fragmentos) {
+        if (fragmentos.length != k + m) {
+            throw new IllegalArgumentException("esperados " + (k + m) + " fragmentos, recebidos " + fragmentos.length);
+        }
+
+        int[] linhas = new int[k];
+        int presentes = 0;
+        int tamanho = -1;
+        for (int i = 0; i < fragmentos.length && presentes < k; i++) {
+            if (fragmentos[i] == null) continue;
+            if (tamanho >= 0 && fragmentos[i].length != tamanho) {
+                throw new IllegalArgumentException("fragmentos de tamanhos diferentes");
+            }
+            tamanho = fragmentos[i].length;
+            linhas[presentes++] = i;
+        }
+        if (presentes < k) {
+            throw new IllegalArgumentException("fragmentos insuficientes: " + presentes + " de " + k);
+        }
+
+        boolean faltaDado = false;
+        for (int i = 0; i < k; i++) {
+            faltaDado |= fragmentos[i] == null;
+        }
+
+        if (faltaDado) {
+            byte[][] sub = new byte[k][];
+            byte[][] entradas = new byte[k][];
+            for (int i = 0; i < k; i++) {
+                sub[i] = matriz[linhas[i]];
+                entradas[i] = fragmentos[linhas[i]];
+            }
+            byte[][] inversa = inverter(sub);
+            for (int d = 0; d < k; d++) {
+                if (fragmentos[d] == null) {
+                    fragmentos[d] = new byte[tamanho];
+                    combinar(inversa[d], entradas, fragmentos[d]);
+                }
+            }
+        }
+
+        byte[][] dados = Arrays.copyOf(fragmentos, k);
+        for (int p = k; p < k + m; p++) {
+            if (fragmentos[p] == null) {
+                fragmentos[p] = new byte[tamanho];
+                combinar(matriz[p], dados, fragmentos[p]);
+            }
+        }
+    }
+
+    /**
+     * Conteúdo original a partir de quaisquer k fragmentos (ausentes = null)
+     */
+    public byte[] decodificar(byte[][] fragmentos, int tamanhoOriginal) {
+        byte[][] copia = fragmentos.clone();
+        boolean dadosCompletos = true;
+        for (int i = 0; i < k; i++) {
+            dadosCompletos &= copia[i] != null;
+        }
+        if (!dadosCompletos) {
+            reconstruir(copia);
+        }
+
+        byte[] conteudo = new byte[tamanhoOriginal];
+        int pos = 0;
+        for (int i = 0; i < k && pos < tamanhoOriginal; i++) {
+            int n = Math.min(copia[i].length, tamanhoOriginal - pos);
+            System.arraycopy(copia[i], 0, conteudo, pos, n);
+            pos += n;
+        }
+        return conteudo;
+    }
+
+    // =========================================================================
+    //  ARITMÉTICA EM GF(2^8)
+    // =========================================================================
+
+    private static byte potencia(int base, int expoente) {
+        if (expoente == 0) return 1;
+        if (base == 0) return 0;
+        return EXP[(LOG[base] * expoente) % 255];
+    }
+
+    private static byte inverso(int a) {
+        return EXP[255 - LOG[a]];
+    }
+
+    private static byte[][] multiplicar(byte[][] a, byte[][] b) {
+        byte[][] r = new byte[a.length][b[0].length];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < b[0].length; j++) {
+                int soma = 0;
+                for (int x = 0; x < b.length; x++) {
+                    soma ^= MUL[a[i][x] & 0xff][b[x][j] & 0xff];
+                }
+                r[i][j] = (byte) soma;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Inversa de uma matriz quadrada por eliminação de Gauss-Jordan
+     */
+    private static byte[][] inverter(byte[][] original) {
+        int n = original.length;
+        byte[][] a = new byte[n][];
+        byte[][] inv = new byte[n][n];
+        for (int i = 0; i < n; i++) {
+            a[i] = original[i].clone();
+            inv[i][i] = 1;
+        }
+
+        for (int col = 0; col < n; col++) {
+            int pivo = col;
+            while (pivo < n && a[pivo][col] == 0) pivo++;
+            if (pivo == n) {
+                throw new IllegalArgumentException("matriz singular");
+            }
+            byte[] t = a[col]; a[col] = a[pivo]; a[pivo] = t;
+            t = inv[col]; inv[col] = inv[pivo]; inv[pivo] = t;
+
+            byte[] tabela = MUL[inverso(a[col][col] & 0xff) & 0xff];
+            for (int j = 0; j < n; j++) {
+                a[col][j] = tabela[a[col][j] & 0xff];
+                inv[col][j] = tabela[inv[col][j] & 0xff];
+            }
+
+            for (int i = 0; i < n; i++) {
+                int fator = a[i][col] & 0xff;
+                if (i == col || fator == 0) continue;
+                byte[] f = MUL[fator];
+                for (int j = 0; j < n; j++) {
+                    a[i][j] ^= f[a[col][j] & 0xff];
+                    inv[i][j] ^= f[inv[col][j] & 0xff];
+                }
+            }
+        }
+        return inv;
+    }
+}
@@ -0,0 +1,254 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Log persistente das escritas replicadas, numeradas na ordem total de
+ * entrega do cluster. Todos os membros contam as mesmas mensagens, então
+ * o número de sequência é comum ao cluster dentro de um mesmo histórico.
+ *
+ * Um nó que reinicia informa (histórico, seq) ao coordenador e recebe só
+ * os nomes alterados depois disso, enquanto estiverem na retenção.
+ */
+public class RegistroAlteracoes implements Closeable {
+
+    /**
+     * Resposta a um pedido de catch-up; nomes == null quando o log não cobre o pedido
+     */
+    public static class Catchup {
+        public final String historico;
+        public final long seq;
+        public final List<String> nomes;
+
+        Catchup(String historico, long seq, List<String> nomes) {
+            this.historico = historico;
+            this.seq = seq;
+            this.nomes = nomes;
+        }
+    }
+
+    private static class Entrada {
+        final long seq;
+        final String nome;
+
+        Entrada(long seq, String nome) {
+            this.seq = seq;
+            this.nome = nome;
+        }
+    }
+
+    private final Path arquivoLog;
+    private final Path arquivoEstado;
+    private final Path arquivoLimpo;
+    private final int retencao;
+
+    private final ArrayDeque<Entrada> entradas = new ArrayDeque<>();
+    private final List<String> pendentes = new ArrayList<>();
+    private BufferedWriter escritor;
+    private int linhasNoArquivo;
+
+    private String historico;
+    private long seq;
+    private boolean limpo;
+    private boolean aguardandoBase;
+
+    public RegistroAlteracoes(Path diretorio, int retencao) throws IOException {
+        this.arquivoLog = diretorio.resolve("alteracoes.log");
+        this.arquivoEstado = diretorio.resolve("alteracoes.estado");
+        this.arquivoLimpo = diretorio.resolve("alteracoes.limpo");
+        this.retencao = retencao;
+        carregar();
+    }
+
+    private void carregar() throws IOException {
+        if (Files.exists(arquivoEstado)) {
+            List<String> linhas = Files.readAllLines(arquivoEstado, StandardCharsets.UTF_8);
+            historico = linhas.get(0).isEmpty() ? null : linhas.get(0);
+            seq = Long.parseLong(linhas.get(1));
+        }
+
+        if (Files.exists(arquivoLog)) {
+            for (String linha : Files.readAllLines(arquivoLog, StandardCharsets.UTF_8)) {
+                int tab = linha.indexOf('\t');
+                if (tab <= 0) continue; // linha cortada por uma queda
+                long s = Long.parseLong(linha.substring(0, tab));
+                if (s <= seq) continue;
+                entradas.addLast(new Entrada(s, linha.substring(tab + 1)));
+                seq = s;
+                if (entradas.size() > retencao) entradas.pollFirst();
+            }
+        }
+
+        // Encerramento limpo: tudo até seq foi aplicado antes de o processo sair
+        if (Files.exists(arquivoLimpo)) {
+            String conteudo = Files.readString(arquivoLimpo).trim();
+            limpo = conteudo.equals(Long.toString(seq));
+            Files.delete(arquivoLimpo);
+        }
+
+        compactar();
+    }
+
+    // =========================================================================
+    //  REGISTRO
+    // =========================================================================
+
+    /**
+     * Conta uma escrita entregue pelo cluster (chamado na ordem de entrega)
+     */
+    public synchronized void registrar(String nome) {
+        if (aguardandoBase) {
+            pendentes.add(nome);
+            return;
+        }
+        anexar(++seq, nome);
+    }
+
+    /**
+     * O pedido de catch-up deste nó foi entregue: as escritas seguintes
+     * ficam pendentes até o coordenador informar a sequência naquele ponto
+     */
+    public synchronized void iniciarCatchup() {
+        aguardandoBase = true;
+        pendentes.clear();
+    }
+
+    /**
+     * Passa a seguir a numeração do coordenador a partir de seqBase
+     */
+    public synchronized void definirBase(String historico, long seqBase) {
+        this.historico = historico;
+        this.seq = seqBase;
+        reiniciarLog();
+        aguardandoBase = false;
+        for (String nome : pendentes) {
+            anexar(++seq, nome);
+        }
+        pendentes.clear();
+    }
+
+    /**
+     * Começa um histórico novo (nó sozinho no cluster); a numeração antiga
+     * não vale mais para catch-up de outros nós
+     */
+    public synchronized void novoHistorico() {
+        definirBase(UUID.randomUUID().toString(), seq);
+    }
+
+    /**
+     * Nomes alterados depois de seqPedido, se o log cobre o pedido
+     */
+    public synchronized Catchup alteradosDesde(String historicoPedido, long seqPedido) {
+        if (aguardandoBase) {
+            return new Catchup(historico, seq, null);
+        }
+
+        boolean coberto = historico != null && historico.equals(historicoPedido) && seqPedido <= seq
+                && (seqPedido == seq || (!entradas.isEmpty() && entradas.peekFirst().seq <= seqPedido + 1));
+        if (!coberto) {
+            return new Catchup(historico, seq, null);
+        }
+
+        Set<String> nomes = new LinkedHashSet<>();
+        for (Entrada e : entradas) {
+            if (e.seq > seqPedido) nomes.add(e.nome);
+        }
+        return new Catchup(historico, seq, new ArrayList<>(nomes));
+    }
+
+    public synchronized String getHistorico() {
+        return historico;
+    }
+
+    public synchronized long getSeq() {
+        return seq;
+    }
+
+    /**
+     * Sequência a pedir no catch-up. Depois de uma queda, as últimas
+     * escritas podem ter sido contadas sem terem sido aplicadas, então
+     * recua "margem" posições.
+     */
+    public synchronized long seqSeguro(int margem) {
+        return limpo ? seq : Math.max(0, seq - margem);
+    }
+
+    // =========================================================================
+    //  ARQUIVO
+    // =========================================================================
+
+    private void anexar(long s, String nome) {
+        entradas.addLast(new Entrada(s, nome));
+        if (entradas.size() > retencao) entradas.pollFirst();
+
+        try {
+            escritor.write(s + "\t" + nome);
+            escritor.newLine();
+            escritor.flush();
+            if (++linhasNoArquivo > 2 * retencao) {
+                compactar();
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao gravar log de alterações: " + e.getMessage());
+        }
+    }
+
+    private void reiniciarLog() {
+        entradas.clear();
+        try {
+            compactar();
+        } catch (IOException e) {
+            System.err.println("Erro ao reiniciar log de alterações: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Regrava estado e log só com as entradas retidas
+     */
+    private void compactar() throws IOException {
+        if (escritor != null) escritor.close();
+
+        Path tmpEstado = arquivoEstado.resolveSibling(arquivoEstado.getFileName() + ".tmp");
+        long base = entradas.isEmpty() ? seq : entradas.peekFirst().seq - 1;
+        Files.writeString(tmpEstado, (historico == null ? "" : historico) + "\n" + base + "\n");
+        Files.move(tmpEstado, arquivoEstado, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Path tmpLog = arquivoLog.resolveSibling(arquivoLog.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmpLog, StandardCharsets.UTF_8)) {
+            for (Entrada e : entradas) {
+                w.write(e.seq + "\t" + e.nome);
+                w.newLine();
+            }
+        }
+        Files.move(tmpLog, arquivoLog, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        linhasNoArquivo = entradas.size();
+        escritor = Files.newBufferedWriter(arquivoLog, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Marca encerramento limpo; chamar só depois de aplicar tudo o que foi registrado
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            escritor.close();
+            Files.writeString(arquivoLimpo, Long.toString(seq));
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar log de alterações: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package server;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Sessões de upload em partes com prazo de inatividade. Cada uso renova o
+ * prazo; uma sessão abandonada pelo cliente é removida pela varredura
+ * periódica e entregue a aoExpirar para liberar o que ela segura.
+ */
+public class SessoesUpload<V> implements Closeable {
+
+    private static class Sessao<V> {
+        final V valor;
+        volatile long ultimoUso;
+
+        Sessao(V valor, long agora) {
+            this.valor = valor;
+            this.ultimoUso = agora;
+        }
+    }
+
+    private final Map<String, Sessao<V>> sessoes = new ConcurrentHashMap<>();
+    private final long timeoutMs;
+    private final BiConsumer<String, V> aoExpirar;
+    private final ScheduledExecutorService agendador;
+
+    /**
+     * @param timeoutMs inatividade máxima; a varredura roda a cada timeoutMs / 4
+     */
+    public SessoesUpload(String nome, long timeoutMs, BiConsumer<String, V> aoExpirar) {
+        this.timeoutMs = timeoutMs;
+        this.aoExpirar = aoExpirar;
+        this.agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, nome);
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalo = Math.max(1, timeoutMs / 4);
+        agendador.scheduleWithFixedDelay(() -> expirar(System.currentTimeMillis()),
+                intervalo, intervalo, TimeUnit.MILLISECONDS);
+    }
+
+    public void abrir(String sessao, V valor) {
+        sessoes.put(sessao, new Sessao<>(valor, System.currentTimeMillis()));
+    }
+
+    /**
+     * Valor da sessão, renovando o prazo; null se desconhecida ou já expirada
+     */
+    public V usar(String sessao) {
+        Sessao<V> s = sessoes.get(sessao);
+        if (s == null) return null;
+        s.ultimoUso = System.currentTimeMillis();
+        return s.valor;
+    }
+
+    /**
+     * Encerra a sessão (concluída ou cancelada): a varredura não a vê mais
+     */
+    public V remover(String sessao) {
+        Sessao<V> s = sessoes.remove(sessao);
+        return s == null ? null : s.valor;
+    }
+
+    public int size() {
+        return sessoes.size();
+    }
+
+    /**
+     * Remove as sessões paradas desde antes de agora - timeoutMs
+     */
+    void expirar(long agora) {
+        for (Map.Entry<String, Sessao<V>> e : sessoes.entrySet()) {
+            Sessao<V> s = e.getValue();
+            if (agora - s.ultimoUso < timeoutMs || !sessoes.remove(e.getKey(), s)) continue;
+            try {
+                aoExpirar.accept(e.getKey(), s.valor);
+            } catch (Exception ex) {
+                System.err.println("Erro ao expirar sessão " + e.getKey() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        agendador.shutdownNow();
+    }
+}
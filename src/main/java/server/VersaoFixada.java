@@ -0,0 +1,77 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Leitor fixado numa versão do arquivo: o mapeamento (ou o canal) aberto
+ * continua lendo o mesmo inode depois que uma nova versão troca o nome, e a
+ * versão antiga só deixa o disco quando o último leitor a solta (mapeamentos
+ * pelo GC, canais no close).
+ */
+public class VersaoFixada implements Closeable {
+
+    private final ByteBuffer mapa;
+    private final FileChannel canal;
+    private final long tamanho;
+
+    VersaoFixada(ByteBuffer mapa) {
+        this.mapa = mapa;
+        this.canal = null;
+        this.tamanho = mapa.limit();
+    }
+
+    VersaoFixada(FileChannel canal) throws IOException {
+        this.mapa = null;
+        this.canal = canal;
+        this.tamanho = canal.size();
+    }
+
+    public long tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Até tamanho bytes a partir de offset (menos no fim do arquivo); null fora do arquivo
+     */
+    public byte[] ler(long offset, int tamanho) throws IOException {
+        if (offset < 0 || offset > this.tamanho) {
+            return null;
+        }
+        byte[] bloco = new byte[(int) Math.min(tamanho, this.tamanho - offset)];
+        if (mapa != null) {
+            mapa.get((int) offset, bloco);
+            return bloco;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bloco);
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, offset + buffer.position()) < 0) break;
+        }
+        return bloco;
+    }
+
+    /**
+     * Trecho só para leitura sem cópia para o heap: fatia do mapeamento em
+     * cache ou um mapeamento só do trecho (válido depois do close)
+     */
+    public ByteBuffer mapear(long offset, int tamanho) throws IOException {
+        if (offset < 0 || offset > this.tamanho) {
+            return null;
+        }
+        int quantidade = (int) Math.min(tamanho, this.tamanho - offset);
+        if (mapa != null) {
+            return mapa.slice((int) offset, quantidade);
+        }
+        return canal.map(FileChannel.MapMode.READ_ONLY, offset, quantidade);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (canal != null) {
+            canal.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package database;
+
+import model.Arquivo;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArquivoDAOTest {
+
+    @TempDir
+    static Path pasta;
+
+    private final ArquivoDAO dao = new ArquivoDAO();
+
+    @BeforeAll
+    static void banco() {
+        JPAUtil.init(pasta.resolve("indice.db").toString());
+    }
+
+    @Test
+    void testSalvarSubstituiEntrada() {
+        assertTrue(dao.salvar(new Arquivo("a.txt", 10, 1, "aa", 1, "backend-1@h")));
+        assertTrue(dao.salvar(new Arquivo("a.txt", 20, 2, "bb", 2, "backend-2@h")));
+
+        Arquivo lida = dao.buscar("a.txt");
+        assertEquals(20, lida.getTamanho());
+        assertEquals(2, lida.getVersao());
+        assertEquals("bb", lida.getDigest());
+        assertEquals("backend-2@h", lida.getDono());
+    }
+
+    @Test
+    void testRemover() {
+        dao.salvar(new Arquivo("b.txt", 1, 1, "cc", 1, null));
+        assertTrue(dao.listarTodos().stream().anyMatch(a -> a.getNome().equals("b.txt")));
+
+        assertTrue(dao.remover("b.txt"));
+        assertNull(dao.buscar("b.txt"));
+        assertFalse(dao.remover("b.txt"));
+    }
+
+    @Test
+    void testGravarLoteNumaTransacao() {
+        dao.salvar(new Arquivo("c.txt", 1, 1, "cc", 1, null));
+
+        assertTrue(dao.gravarLote(List.of(new Arquivo("d.txt", 2, 2, "dd", 2, null),
+                new Arquivo("e.txt", 3, 3, "ee", 3, null)), List.of("c.txt")));
+
+        assertNull(dao.buscar("c.txt"));
+        assertEquals(2, dao.buscar("d.txt").getTamanho());
+        assertEquals(3, dao.buscar("e.txt").getTamanho());
+    }
+}
@@ -0,0 +1,36 @@
+package database;
+
+import model.Lapide;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LapideDAOTest {
+
+    @TempDir
+    static Path pasta;
+
+    private final LapideDAO dao = new LapideDAO();
+
+    @BeforeAll
+    static void banco() {
+        JPAUtil.init(pasta.resolve("lapides.db").toString());
+    }
+
+    @Test
+    void testLapideSobreviveAoReinicioDoBanco() {
+        assertTrue(dao.salvar(new Lapide("a.txt", 10, 1000)));
+        assertTrue(dao.salvar(new Lapide("a.txt", 20, 2000)));
+
+        JPAUtil.init(pasta.resolve("lapides.db").toString());
+
+        assertEquals(1, dao.listarTodas().stream().filter(l -> l.getNome().equals("a.txt")).count());
+        assertTrue(dao.listarTodas().contains(new Lapide("a.txt", 20, 2000)));
+        assertTrue(dao.remover("a.txt"));
+        assertFalse(dao.remover("a.txt"));
+    }
+}
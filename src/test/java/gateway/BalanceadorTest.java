@@ -0,0 +1,99 @@
+package gateway;
+
+import org.jgroups.Address;
+import org.jgroups.util.UUID;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceadorTest {
+
+    private final Address rapido = UUID.randomUUID();
+    private final Address lento = UUID.randomUUID();
+    private final List<Address> servidores = List.of(rapido, lento);
+
+    @Test
+    void testRoundRobinAlterna() {
+        Balanceador b = new BalanceadorRoundRobin();
+        Address primeiro = b.selecionar(servidores);
+        Address segundo = b.selecionar(servidores);
+
+        assertNotEquals(primeiro, segundo);
+        assertEquals(primeiro, b.selecionar(servidores));
+    }
+
+    @Test
+    void testMenosPendentesEvitaServidorOcupado() {
+        Balanceador b = new BalanceadorMenosPendentes();
+        b.inicioChamada(lento);
+        b.inicioChamada(lento);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(rapido, b.selecionar(servidores));
+        }
+    }
+
+    @Test
+    void testFimDeChamadaDeServidorQueSaiuEhIgnorado() {
+        BalanceadorMenosPendentes b = new BalanceadorMenosPendentes();
+        b.inicioChamada(lento);
+        b.manterApenas(List.of(rapido));
+
+        b.fimChamada(lento, 1_000_000, true);
+
+        assertFalse(b.estatisticas.containsKey(lento));
+    }
+
+    @Test
+    void testLatenciaPrefereServidorRapido() {
+        Balanceador b = new BalanceadorLatencia();
+        b.inicioChamada(rapido);
+        b.fimChamada(rapido, 1_000_000, true);
+        b.inicioChamada(lento);
+        b.fimChamada(lento, 500_000_000, true);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(rapido, b.selecionar(servidores));
+        }
+    }
+
+    @Test
+    void testServidorTravadoPerdeTrafegoAntesDeResponder() {
+        Balanceador b = new BalanceadorLatencia();
+        b.inicioChamada(rapido);
+        b.fimChamada(rapido, 10_000_000, true);
+        b.inicioChamada(lento);
+        b.fimChamada(lento, 10_000_000, true);
+
+        // Chamadas presas no "lento" ainda não terminaram
+        for (int i = 0; i < 5; i++) b.inicioChamada(lento);
+
+        assertEquals(rapido, b.selecionar(servidores));
+    }
+
+    @Test
+    void testServidorNovoComPendentesNaoTemCustoZero() {
+        BalanceadorLatencia b = new BalanceadorLatencia();
+        b.inicioChamada(rapido);
+        b.fimChamada(rapido, 10_000_000, true);
+
+        // Nenhuma chamada do "lento" terminou ainda: começa com a média do cluster
+        for (int i = 0; i < 5; i++) b.inicioChamada(lento);
+
+        assertTrue(b.de(lento).custo() > 0);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(rapido, b.selecionar(servidores));
+        }
+    }
+
+    @Test
+    void testManterApenasDescartaEstatisticas() {
+        BalanceadorMenosPendentes b = new BalanceadorMenosPendentes();
+        b.inicioChamada(lento);
+        b.manterApenas(List.of(rapido));
+
+        assertFalse(b.estatisticas.containsKey(lento));
+    }
+}
@@ -0,0 +1,74 @@
+package gateway;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheConteudoTest {
+
+    @Test
+    void testAcertoDepoisDeGuardar() {
+        CacheConteudo cache = new CacheConteudo(1024);
+        cache.guardar("a.txt", cache.versao("a.txt"), "abc".getBytes());
+
+        assertArrayEquals("abc".getBytes(), cache.buscar("a.txt"));
+        assertEquals(1, cache.getAcertos());
+    }
+
+    @Test
+    void testInvalidarRemoveEntrada() {
+        CacheConteudo cache = new CacheConteudo(1024);
+        cache.guardar("a.txt", cache.versao("a.txt"), "abc".getBytes());
+        cache.invalidar("a.txt");
+
+        assertNull(cache.buscar("a.txt"));
+        assertEquals(0, cache.getBytesUsados());
+    }
+
+    @Test
+    void testRespostaAntigaNaoEntraNoCache() {
+        CacheConteudo cache = new CacheConteudo(1024);
+        long versao = cache.versao("a.txt");
+
+        // Escrita termina enquanto o download ainda estava em andamento
+        cache.invalidar("a.txt");
+        cache.guardar("a.txt", versao, "antigo".getBytes());
+
+        assertNull(cache.buscar("a.txt"));
+    }
+
+    @Test
+    void testDespejoPorBytes() {
+        CacheConteudo cache = new CacheConteudo(800);
+        cache.guardar("a", 0, new byte[100]);
+        cache.guardar("b", 0, new byte[100]);
+        cache.buscar("a");
+        for (int i = 0; i < 7; i++) {
+            cache.guardar("x" + i, 0, new byte[100]);
+        }
+
+        assertTrue(cache.getBytesUsados() <= 800);
+        assertNotNull(cache.buscar("a"));
+        assertNull(cache.buscar("b"));
+        assertTrue(cache.getDespejos() > 0);
+    }
+
+    @Test
+    void testVersoesNaoCrescemComOsNomes() {
+        CacheConteudo cache = new CacheConteudo(800);
+        // Invalidações de nomes apagados não deixam uma entrada por nome
+        for (int i = 0; i < 100_000; i++) {
+            cache.invalidar("apagado-" + i);
+        }
+
+        long versao = cache.versao("a");
+        cache.guardar("a", versao, new byte[10]);
+        assertNotNull(cache.buscar("a"));
+
+        cache.invalidar("a");
+        assertNull(cache.buscar("a"));
+        assertEquals(0, cache.getBytesUsados());
+        cache.guardar("a", versao, new byte[10]);
+        assertNull(cache.buscar("a"), "versão anterior à invalidação não entra");
+    }
+}
@@ -1,14 +1,15 @@
 package gateway;
 
-import model.Usuario;
 import org.jgroups.Address;
 import org.jgroups.blocks.MethodCall;
 import org.jgroups.blocks.RequestOptions;
-import org.jgroups.blocks.ResponseMode;
 import org.jgroups.blocks.RpcDispatcher;
 import org.jgroups.util.RspList;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import security.JwtUtil;
+import server.Posicionamento;
 
 import java.rmi.RemoteException;
 import java.util.Arrays;
@@ -21,20 +22,22 @@ class GatewayServerTest {
 
     private GatewayServer gateway;
     private RpcDispatcher dispatcherMock;
-    private Address servidorMock;
+    private Address servidor;
+    private String token;
 
     @BeforeEach
     void setup() throws Exception {
-        // Mock do dispatcher e servidor
+        // Mock do dispatcher e um único backend
         dispatcherMock = mock(RpcDispatcher.class);
-        servidorMock = mock(Address.class);
+        servidor = Posicionamento.enderecoBackend("backend-1@teste", "node-1");
+        token = JwtUtil.gerarToken("joao");
 
         // Instancia GatewayServer com dispatcher mockado
         gateway = new GatewayServer() {
             {
                 this.dispatcher = dispatcherMock;
-                this.servidoresAtivos.clear();
-                this.servidoresAtivos.add(servidorMock);
+                this.servidoresAtivos = List.of(servidor);
+                this.anel = Posicionamento.anel(servidoresAtivos);
             }
 
             @Override
@@ -44,90 +47,90 @@ class GatewayServerTest {
         };
     }
 
-    // Helper para mockar RspList
-    private RspList<Object> criarRspList(Object retorno) {
-        RspList<Object> rsp = mock(RspList.class);
-        when(rsp.isEmpty()).thenReturn(false);
-        when(rsp.isReceived(servidorMock)).thenReturn(true);
-        when(rsp.getValue(servidorMock)).thenReturn(retorno);
-        return rsp;
+    @AfterEach
+    void fechar() {
+        gateway.close();
     }
 
-    @Test
-    void testLoginSucesso() throws Exception {
-        when(dispatcherMock.callRemoteMethods(
-                eq(List.of(servidorMock)),
-                any(MethodCall.class),
-                any(RequestOptions.class)
-        )).thenReturn(criarRspList(true));
-
-        assertTrue(gateway.login("joao", "1234"));
+    private static MethodCall chamada(String metodo) {
+        return argThat(call -> call != null && call.getMethodName().equals(metodo));
     }
 
     @Test
-    void testLoginFalha() throws Exception {
-        when(dispatcherMock.callRemoteMethods(
-                eq(List.of(servidorMock)),
-                any(MethodCall.class),
-                any(RequestOptions.class)
-        )).thenReturn(criarRspList(false));
-
-        assertFalse(gateway.login("joao", "senhaerrada"));
+    void testLoginDevolveToken() throws Exception {
+        when(dispatcherMock.callRemoteMethod(eq(servidor), chamada("login"), any(RequestOptions.class)))
+                .thenReturn("TOKEN");
+
+        assertEquals("TOKEN", gateway.login("joao", "1234"));
     }
 
     @Test
     void testListarArquivos() throws Exception {
         List<String> arquivos = Arrays.asList("a.txt", "b.txt");
-        when(dispatcherMock.callRemoteMethods(
-                eq(List.of(servidorMock)),
-                argThat(call -> call.getName().equals("listarArquivos")),
-                any(RequestOptions.class)
-        )).thenReturn(criarRspList(arquivos));
-
-        List<String> resultado = gateway.listarArquivos();
-        assertEquals(arquivos, resultado);
+        when(dispatcherMock.callRemoteMethods(eq(List.of(servidor)), chamada("listarArquivos"),
+                any(RequestOptions.class))).thenReturn(new RspList<>().addRsp(servidor, arquivos));
+
+        assertEquals(arquivos, gateway.listarArquivos(token));
     }
 
     @Test
     void testUploadEDownload() throws Exception {
         byte[] conteudo = "teste".getBytes();
+        when(dispatcherMock.callRemoteMethod(eq(servidor), chamada("upload"), any(RequestOptions.class)))
+                .thenReturn(true);
+        when(dispatcherMock.callRemoteMethod(eq(servidor), chamada("download"), any(RequestOptions.class)))
+                .thenReturn(conteudo);
+
+        assertTrue(gateway.upload(token, "arquivo.txt", conteudo));
+        assertArrayEquals(conteudo, gateway.download(token, "arquivo.txt"));
+    }
+
+    @Test
+    void testTokenAusenteOuInvalidoEhRecusado() throws Exception {
+        byte[] conteudo = "teste".getBytes();
+
+        assertThrows(RemoteException.class, () -> gateway.upload(null, "arquivo.txt", conteudo));
+        assertThrows(RemoteException.class, () -> gateway.upload("", "arquivo.txt", conteudo));
+        assertThrows(RemoteException.class, () -> gateway.download("nao-e-um-jwt", "arquivo.txt"));
+        assertThrows(RemoteException.class, () -> gateway.apagar(token + "x", "arquivo.txt"));
 
-        // Mock upload
-        when(dispatcherMock.callRemoteMethods(
-                eq(List.of(servidorMock)),
-                argThat(call -> call.getName().equals("upload")),
-                any(RequestOptions.class)
-        )).thenReturn(criarRspList(true));
-
-        // Mock download
-        when(dispatcherMock.callRemoteMethods(
-                eq(List.of(servidorMock)),
-                argThat(call -> call.getName().equals("download")),
-                any(RequestOptions.class)
-        )).thenReturn(criarRspList(conteudo));
-
-        assertTrue(gateway.upload("arquivo.txt", conteudo));
-        assertArrayEquals(conteudo, gateway.download("arquivo.txt"));
+        // Nada chega aos backends sem um token válido
+        verifyNoInteractions(dispatcherMock);
+    }
+
+    @Test
+    void testGetSistemaHashAgregaTodosOsBackends() throws Exception {
+        Address outro = Posicionamento.enderecoBackend("backend-2@teste", "node-2");
+        gateway.servidoresAtivos = List.of(servidor, outro);
+        when(dispatcherMock.callRemoteMethods(eq(List.of(servidor, outro)), chamada("gerarHashLocal"),
+                any(RequestOptions.class)))
+                .thenReturn(new RspList<>().addRsp(servidor, "A").addRsp(outro, "B"))
+                .thenReturn(new RspList<>().addRsp(outro, "B").addRsp(servidor, "A"))
+                .thenReturn(new RspList<>().addRsp(servidor, "A").addRsp(outro, "C"));
+
+        String hash = gateway.getSistemaHash();
+        assertEquals(hash, gateway.getSistemaHash(), "independe da ordem das respostas");
+        assertNotEquals(hash, gateway.getSistemaHash(), "muda com a raiz de qualquer backend");
     }
 
     @Test
-    void testGetSistemaHash() throws Exception {
-        when(dispatcherMock.callRemoteMethods(
-                eq(List.of(servidorMock)),
-                argThat(call -> call.getName().equals("gerarHashGlobal")),
-                any(RequestOptions.class)
-        )).thenReturn(criarRspList("HASH123"));
-
-        assertEquals("HASH123", gateway.getSistemaHash());
+    void testReplicaQueNaoEhDonaPassaParaAProxima() throws Exception {
+        Address outro = Posicionamento.enderecoBackend("backend-2@teste", "node-2");
+        gateway.servidoresAtivos = List.of(servidor, outro);
+        gateway.anel = Posicionamento.anel(gateway.servidoresAtivos);
+        when(dispatcherMock.callRemoteMethod(any(Address.class), chamada("upload"), any(RequestOptions.class)))
+                .thenThrow(new RuntimeException(Posicionamento.ERRO_NAO_DONO + " não é réplica de a.txt"))
+                .thenReturn(true);
+
+        assertTrue(gateway.upload(token, "a.txt", "x".getBytes()));
+        verify(dispatcherMock, times(2)).callRemoteMethod(any(Address.class), chamada("upload"),
+                any(RequestOptions.class));
     }
 
     @Test
     void testCriarConta() throws Exception {
-        when(dispatcherMock.callRemoteMethods(
-                eq(List.of(servidorMock)),
-                argThat(call -> call.getName().equals("salvarUsuario")),
-                any(RequestOptions.class)
-        )).thenReturn(criarRspList(true));
+        when(dispatcherMock.callRemoteMethod(eq(servidor), chamada("salvarUsuario"), any(RequestOptions.class)))
+                .thenReturn(true);
 
         assertTrue(gateway.criarConta("ana", "pass"));
     }
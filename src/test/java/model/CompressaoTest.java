@@ -0,0 +1,51 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressaoTest {
+
+    private static byte[] texto(int tamanho) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < tamanho; i++) {
+            sb.append("linha ").append(i).append(": o servidor replicou o arquivo com sucesso\n");
+        }
+        return sb.substring(0, tamanho).getBytes();
+    }
+
+    @Test
+    void testTextoComprimeEVolta() {
+        byte[] original = texto(256 * 1024);
+        ByteBuffer buffer = ByteBuffer.wrap(original);
+
+        byte[] z = Compressao.comprimir(buffer);
+        assertNotNull(z);
+        assertTrue(z.length < original.length / 4, "texto deveria encolher bastante: " + z.length);
+        assertEquals(0, buffer.position(), "não pode consumir o buffer de entrada");
+        assertArrayEquals(original, Compressao.descomprimir(z, 0, z.length, original.length));
+    }
+
+    @Test
+    void testIncompressivelVaiCru() {
+        byte[] aleatorio = new byte[256 * 1024];
+        new Random(7).nextBytes(aleatorio);
+        assertNull(Compressao.comprimir(ByteBuffer.wrap(aleatorio)));
+        assertNull(Compressao.comprimir(ByteBuffer.wrap(texto(100))), "pequeno demais para compensar");
+
+        byte[] pacote = Compressao.empacotar(aleatorio);
+        assertEquals(aleatorio.length + 1, pacote.length);
+        assertArrayEquals(aleatorio, Compressao.desempacotar(pacote));
+    }
+
+    @Test
+    void testPacoteComprimido() {
+        byte[] original = texto(10_000);
+        byte[] pacote = Compressao.empacotar(original);
+        assertTrue(pacote.length < original.length);
+        assertArrayEquals(original, Compressao.desempacotar(pacote));
+    }
+}
@@ -0,0 +1,46 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrechoArquivoTest {
+
+    @Test
+    void testFimEProximoOffset() {
+        TrechoArquivo meio = new TrechoArquivo(100, new byte[50], 300, 7);
+        assertEquals(150, meio.getFim());
+        assertFalse(meio.isNoFim());
+
+        TrechoArquivo ultimo = new TrechoArquivo(250, new byte[50], 300, 7);
+        assertEquals(300, ultimo.getFim());
+        assertTrue(ultimo.isNoFim());
+
+        // Nada novo: trecho vazio no fim do arquivo
+        assertTrue(new TrechoArquivo(300, new byte[0], 300, 7).isNoFim());
+    }
+
+    @Test
+    void testSobreviveASerializacao() throws Exception {
+        TrechoArquivo original = new TrechoArquivo(10, "abc".getBytes(), 13, 42);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(original);
+        }
+        TrechoArquivo lido;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            lido = (TrechoArquivo) in.readObject();
+        }
+
+        assertEquals(10, lido.getOffset());
+        assertArrayEquals("abc".getBytes(), lido.getDados());
+        assertEquals(13, lido.getTamanhoArquivo());
+        assertEquals(42, lido.getVersao());
+    }
+}
@@ -0,0 +1,44 @@
+package security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheTokensTest {
+
+    @Test
+    void testTokenValidoEntraNoCache() throws Exception {
+        String token = JwtUtil.gerarToken("ana");
+
+        assertEquals("ana", JwtUtil.validarToken(token));
+        assertEquals("ana", JwtUtil.validarToken(token));
+    }
+
+    @Test
+    void testTokenAdulteradoRejeitado() {
+        String token = JwtUtil.gerarToken("ana");
+        String adulterado = token.substring(0, token.length() - 2) + "xx";
+
+        assertThrows(Exception.class, () -> JwtUtil.validarToken(adulterado));
+    }
+
+    @Test
+    void testEntradaExpirada() {
+        CacheTokens cache = new CacheTokens(10);
+        cache.guardar("t1", "ana", System.currentTimeMillis() - 1);
+
+        assertNull(cache.buscar("t1"));
+    }
+
+    @Test
+    void testCapacidadeLimitada() {
+        CacheTokens cache = new CacheTokens(5);
+        long exp = System.currentTimeMillis() + 60_000;
+        for (int i = 0; i < 20; i++) {
+            cache.guardar("t" + i, "u" + i, exp);
+        }
+
+        assertTrue(cache.tamanho() <= 5);
+        assertEquals("u19", cache.buscar("t19"));
+    }
+}
@@ -0,0 +1,47 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnelHashTest {
+
+    @Test
+    void testDistribuicaoEquilibrada() {
+        AnelHash<String> anel = new AnelHash<>(List.of("a", "b", "c"), 64, Function.identity());
+        Map<String, Integer> contagem = new HashMap<>();
+        for (int i = 0; i < 30000; i++) {
+            contagem.merge(anel.dono("arquivo-" + i), 1, Integer::sum);
+        }
+
+        for (int n : contagem.values()) {
+            assertTrue(n > 7000 && n < 13000, "distribuição desequilibrada: " + contagem);
+        }
+    }
+
+    @Test
+    void testSaidaDeMembroSoMoveSuasChaves() {
+        AnelHash<String> antes = new AnelHash<>(List.of("a", "b", "c"), 64, Function.identity());
+        AnelHash<String> depois = new AnelHash<>(List.of("a", "b"), 64, Function.identity());
+
+        for (int i = 0; i < 5000; i++) {
+            String chave = "arquivo-" + i;
+            if (!antes.dono(chave).equals("c")) {
+                assertEquals(antes.dono(chave), depois.dono(chave));
+            }
+        }
+    }
+
+    @Test
+    void testDonosDistintos() {
+        AnelHash<String> anel = new AnelHash<>(List.of("a", "b", "c", "d"), 64, Function.identity());
+        List<String> donos = anel.donos("x.txt", 3);
+
+        assertEquals(3, new HashSet<>(donos).size());
+        assertEquals(anel.dono("x.txt"), donos.get(0));
+        assertEquals(4, anel.donos("x.txt", 10).size());
+    }
+}
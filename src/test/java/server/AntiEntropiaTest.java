@@ -0,0 +1,62 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AntiEntropiaTest {
+
+    private static AntiEntropia.Entrada e(String nome, String digest, long versao) {
+        return new AntiEntropia.Entrada(nome, digest, versao);
+    }
+
+    @Test
+    void testBuscaOQueFaltaOuEstaMaisNovoNoPar() {
+        List<AntiEntropia.Entrada> locais = List.of(
+                e("igual.txt", "aa", 10),
+                e("velho.txt", "bb", 10),
+                e("novo-aqui.txt", "cc", 30));
+        List<AntiEntropia.Entrada> remotas = List.of(
+                e("igual.txt", "aa", 10),
+                e("velho.txt", "bx", 20),
+                e("novo-aqui.txt", "cx", 25),
+                e("so-no-par.txt", "dd", 5));
+
+        AntiEntropia.Decisao d = AntiEntropia.comparar(locais, remotas);
+
+        assertEquals(List.of("velho.txt", "so-no-par.txt"), d.buscar);
+        assertTrue(d.apagar.isEmpty());
+    }
+
+    @Test
+    void testLapideMaisNovaApagaESoAntigaNaoRessuscita() {
+        List<AntiEntropia.Entrada> locais = List.of(
+                e("apagado-no-par.txt", "aa", 10),
+                e("recriado-aqui.txt", "bb", 50),
+                e("apagado-aqui.txt", null, 40));
+        List<AntiEntropia.Entrada> remotas = List.of(
+                e("apagado-no-par.txt", null, 20),
+                e("recriado-aqui.txt", null, 40),
+                e("apagado-aqui.txt", "cc", 30));
+
+        AntiEntropia.Decisao d = AntiEntropia.comparar(locais, remotas);
+
+        assertEquals(1, d.apagar.size());
+        assertEquals("apagado-no-par.txt", d.apagar.get(0).nome);
+        assertEquals(20, d.apagar.get(0).versao);
+        assertTrue(d.buscar.isEmpty());
+    }
+
+    @Test
+    void testEmpateDeVersaoDecideIgualNosDoisLados() {
+        AntiEntropia.Entrada a = e("x", "aa", 7);
+        AntiEntropia.Entrada b = e("x", "bb", 7);
+
+        // Cada lado só busca se o outro ganha: exatamente um dos dois busca
+        boolean aBusca = !AntiEntropia.comparar(List.of(a), List.of(b)).buscar.isEmpty();
+        boolean bBusca = !AntiEntropia.comparar(List.of(b), List.of(a)).buscar.isEmpty();
+        assertNotEquals(aBusca, bBusca);
+    }
+}
@@ -0,0 +1,79 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArvoreMerkleTest {
+
+    private static byte[] digest(String conteudo) {
+        return ArvoreMerkle.novoDigest().digest(conteudo.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRaizNaoDependeDaOrdem() {
+        ArvoreMerkle a = new ArvoreMerkle(64);
+        ArvoreMerkle b = new ArvoreMerkle(64);
+
+        for (int i = 0; i < 100; i++) {
+            a.atualizar("f" + i, digest("c" + i));
+        }
+        for (int i = 99; i >= 0; i--) {
+            b.atualizar("f" + i, digest("c" + i));
+        }
+
+        assertArrayEquals(a.raiz(), b.raiz());
+        assertEquals(a.raizHex(), b.raizHex());
+    }
+
+    @Test
+    void testRemocaoVoltaAoEstadoAnterior() {
+        ArvoreMerkle arvore = new ArvoreMerkle(16);
+        String vazia = arvore.raizHex();
+
+        arvore.atualizar("a.txt", digest("1"));
+        String comA = arvore.raizHex();
+        assertNotEquals(vazia, comA);
+
+        arvore.atualizar("b.txt", digest("2"));
+        arvore.remover("b.txt");
+        assertEquals(comA, arvore.raizHex());
+
+        arvore.remover("a.txt");
+        assertEquals(vazia, arvore.raizHex());
+    }
+
+    @Test
+    void testDescidaEncontraBaldeDivergente() {
+        ArvoreMerkle a = new ArvoreMerkle(256);
+        ArvoreMerkle b = new ArvoreMerkle(256);
+        for (int i = 0; i < 1000; i++) {
+            a.atualizar("f" + i, digest("c" + i));
+            b.atualizar("f" + i, digest("c" + i));
+        }
+        b.atualizar("f500", digest("outro"));
+
+        // Desce só pelos ramos diferentes: log2(256) = 8 níveis
+        List<Integer> fronteira = new ArrayList<>(List.of(1));
+        int comparacoes = 0;
+        while (fronteira.get(0) < a.getBaldes()) {
+            List<Integer> proxima = new ArrayList<>();
+            for (int i : fronteira) {
+                for (int filho : new int[]{2 * i, 2 * i + 1}) {
+                    comparacoes++;
+                    if (!Arrays.equals(a.no(filho), b.no(filho))) proxima.add(filho);
+                }
+            }
+            fronteira = proxima;
+        }
+
+        assertEquals(List.of(a.getBaldes() + a.balde("f500")), fronteira);
+        assertEquals(16, comparacoes);
+        assertTrue(b.conteudoBalde(b.balde("f500")).containsKey("f500"));
+    }
+}
@@ -0,0 +1,54 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheMapeadosTest {
+
+    private static ByteBuffer direto(int tamanho) {
+        return ByteBuffer.allocateDirect(tamanho);
+    }
+
+    @Test
+    void testBuscarDevolveVisaoIndependente() {
+        CacheMapeados cache = new CacheMapeados(1024);
+        ByteBuffer mapa = direto(16);
+        cache.guardar("a.bin", cache.versao("a.bin"), mapa);
+
+        ByteBuffer visao = cache.buscar("a.bin");
+        visao.position(10);
+        assertEquals(0, cache.buscar("a.bin").position());
+        assertTrue(visao.isDirect());
+        assertEquals(2, cache.getAcertos());
+    }
+
+    @Test
+    void testMapeamentoAntigoNaoEntraDepoisDeInvalidar() {
+        CacheMapeados cache = new CacheMapeados(1024);
+        long versao = cache.versao("a.bin");
+        cache.invalidar("a.bin"); // arquivo trocado enquanto era mapeado
+
+        cache.guardar("a.bin", versao, direto(16));
+        assertNull(cache.buscar("a.bin"));
+        assertEquals(0, cache.getBytesUsados());
+    }
+
+    @Test
+    void testDespejaPorBytes() {
+        CacheMapeados cache = new CacheMapeados(1000);
+        cache.guardar("a", 0, direto(200));
+        cache.guardar("b", 0, direto(200));
+        cache.buscar("a");
+        for (String nome : new String[]{"c", "d", "e", "f"}) {
+            cache.guardar(nome, 0, direto(200));
+        }
+
+        assertNull(cache.buscar("b"), "menos usado recentemente sai primeiro");
+        assertNotNull(cache.buscar("a"));
+        assertTrue(cache.getBytesUsados() <= 1000);
+        assertFalse(cache.cabe(251));
+    }
+}
@@ -3,103 +3,156 @@ package server;
 import org.jgroups.Address;
 import org.jgroups.JChannel;
 import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.RequestOptions;
+import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.util.RspList;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
 import java.security.MessageDigest;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class ControleServerTest {
 
+    @TempDir
+    Path dir;
+
     private ControleServer controle;
-    private DadosServer dadosMock;
     private JChannel canalClusterMock;
-    private JChannel canalRPCMock;
-    private Address liderMock;
+    private GerenciadorLocks locksMock;
 
     @BeforeEach
     void setup() throws Exception {
-        dadosMock = mock(DadosServer.class);
         canalClusterMock = mock(JChannel.class);
-        canalRPCMock = mock(JChannel.class);
-        liderMock = mock(Address.class);
-
-        when(canalClusterMock.getAddress()).thenReturn(liderMock);
-
-        controle = new ControleServer() {
-            {
-                this.canalCluster = canalClusterMock;
-                this.canalRPC = canalRPCMock;
-                this.lider = liderMock;
-            }
-        };
+        JChannel canalRPCMock = mock(JChannel.class);
+        RpcDispatcher dispatcherMock = mock(RpcDispatcher.class);
+        locksMock = mock(GerenciadorLocks.class);
+
+        // Único backend do cluster: dono (e quorum) de todos os nomes
+        Address eu = Posicionamento.enderecoBackend("backend-teste", "teste");
+        View view = View.create(eu, 1, eu);
+        when(canalClusterMock.getAddress()).thenReturn(eu);
+        when(canalRPCMock.getView()).thenReturn(view);
+        when(dispatcherMock.callRemoteMethods(anyCollection(), any(MethodCall.class), any(RequestOptions.class)))
+                .thenReturn(new RspList<>());
+        when(locksMock.adquirir(anyString(), anyLong())).thenAnswer(inv ->
+                new GerenciadorLocks.Concessao(inv.getArgument(0), "lock", 1, eu));
+        when(locksMock.aceitarToken(anyString(), anyLong())).thenReturn(true);
+
+        DadosServer dados = new DadosServer(dir.resolve("storage").toString(), dir.resolve("dados.db").toString());
+        RegistroAlteracoes registro = new RegistroAlteracoes(dir, 100);
+        controle = new ControleServer(dados, registro, canalClusterMock, canalRPCMock, dispatcherMock, locksMock);
+        controle.viewAccepted(view);
+    }
+
+    @AfterEach
+    void fechar() {
+        controle.close();
     }
 
     @Test
     void testListarArquivos() {
-        List<String> arquivos = Arrays.asList("arquivo1.txt", "arquivo2.txt");
-        when(dadosMock.listarArquivos()).thenReturn(arquivos);
-
-        List<String> resultado = controle.listarArquivos();
+        assertTrue(controle.upload("b.txt", "bbb".getBytes()));
+        assertTrue(controle.upload("a.txt", "aaa".getBytes()));
 
-        assertEquals(arquivos, resultado);
+        assertEquals(List.of("a.txt", "b.txt"), controle.listarArquivos());
     }
 
     @Test
     void testUploadSucesso() throws Exception {
         byte[] conteudo = "conteudo".getBytes();
-        when(dadosMock.salvarArquivo("arquivo.txt", conteudo)).thenReturn(true);
 
-        boolean ok = controle.upload("arquivo.txt", conteudo);
+        assertTrue(controle.upload("arquivo.txt", conteudo));
 
-        assertTrue(ok);
-        verify(dadosMock, times(1)).salvarArquivo("arquivo.txt", conteudo);
-        verify(canalClusterMock, atLeastOnce()).send(any(Message.class));
+        // Commit (prepara nas réplicas) e PUBLICAR depois do quorum
+        verify(canalClusterMock, atLeast(2)).send(any(Message.class));
+        verify(locksMock).liberar(any(GerenciadorLocks.Concessao.class));
+        assertArrayEquals(conteudo, controle.download("arquivo.txt"));
     }
 
     @Test
     void testUploadFalha() throws Exception {
-        byte[] conteudo = "conteudo".getBytes();
-        when(dadosMock.salvarArquivo("arquivo.txt", conteudo)).thenReturn(false);
+        when(locksMock.adquirir(anyString(), anyLong())).thenThrow(new TimeoutException("lock ocupado"));
+
+        assertFalse(controle.upload("arquivo.txt", "conteudo".getBytes()));
+
+        verify(canalClusterMock, never()).send(any(Message.class));
+        assertNull(controle.download("arquivo.txt"));
+    }
 
-        boolean ok = controle.upload("arquivo.txt", conteudo);
+    @Test
+    void testDownload() throws Exception {
+        byte[] v1 = "dados".getBytes();
+        byte[] v2 = "dados novos".getBytes();
+
+        assertNull(controle.download("arquivo.txt"));
+        assertTrue(controle.upload("arquivo.txt", v1));
+        assertArrayEquals(v1, controle.download("arquivo.txt"));
+
+        // Só a versão publicada é lida
+        assertTrue(controle.upload("arquivo.txt", v2));
+        assertArrayEquals(v2, controle.download("arquivo.txt"));
+    }
 
-        assertFalse(ok);
-        verify(dadosMock, times(1)).salvarArquivo("arquivo.txt", conteudo);
-        verify(canalClusterMock, atLeastOnce()).send(any(Message.class)); // liberarLock envia sempre
+    @Test
+    void testBlocoSoDaVersaoPedida() throws Exception {
+        assertTrue(controle.upload("arquivo.txt", "versao um".getBytes()));
+        long v1 = controle.lerTrecho("arquivo.txt", 0, 6).getVersao();
+        assertArrayEquals("um".getBytes(), controle.lerBloco("arquivo.txt", v1, 7, 10));
+
+        // Trocou no meio do download: os blocos seguintes não misturam versões
+        assertTrue(controle.upload("arquivo.txt", "versao dois".getBytes()));
+        assertNull(controle.lerBloco("arquivo.txt", v1, 7, 10));
+        assertNull(controle.lerBlocoComprimido("arquivo.txt", v1, 7, 10));
+        long v2 = controle.lerTrecho("arquivo.txt", 0, 6).getVersao();
+        assertArrayEquals("dois".getBytes(), controle.lerBloco("arquivo.txt", v2, 7, 10));
     }
 
     @Test
-    void testDownload() {
-        byte[] conteudo = "dados".getBytes();
-        when(dadosMock.lerArquivo("arquivo.txt")).thenReturn(conteudo);
+    void testApagarPublicaDepoisDoQuorum() throws Exception {
+        assertFalse(controle.apagar("arquivo.txt"));
+        assertTrue(controle.upload("arquivo.txt", "dados".getBytes()));
+        clearInvocations(canalClusterMock);
+
+        assertTrue(controle.apagar("arquivo.txt"));
+
+        // Prepara (APAGAR) e publica (PUBLICAR), como as escritas
+        verify(canalClusterMock, times(2)).send(any(Message.class));
+        assertNull(controle.download("arquivo.txt"));
+        assertTrue(controle.listarArquivos().isEmpty());
+        assertTrue(controle.versaoArquivo("arquivo.txt") > 0);
+    }
 
-        byte[] resultado = controle.download("arquivo.txt");
+    @Test
+    void testUploadCodificadoRecusaNomeReplicado() {
+        assertTrue(controle.upload("arquivo.txt", "dados".getBytes()));
 
-        assertArrayEquals(conteudo, resultado);
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> controle.uploadCodificado("arquivo.txt", "outros".getBytes()));
+        assertTrue(e.getMessage().startsWith("[LOCAL]"));
+        verify(locksMock, times(2)).liberar(any(GerenciadorLocks.Concessao.class));
     }
 
     @Test
-    void testGerarHashGlobal() throws Exception {
+    void testGerarHashLocalEhRaizMerkle() throws Exception {
         byte[] file1 = "aaa".getBytes();
         byte[] file2 = "bbb".getBytes();
-        when(dadosMock.listarArquivos()).thenReturn(Arrays.asList("f1.txt", "f2.txt"));
-        when(dadosMock.lerArquivo("f1.txt")).thenReturn(file1);
-        when(dadosMock.lerArquivo("f2.txt")).thenReturn(file2);
-
-        String hash = controle.gerarHashLocal();
+        assertTrue(controle.upload("f1.txt", file1));
+        assertTrue(controle.upload("f2.txt", file2));
 
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        md.update(file1);
-        md.update(file2);
-        byte[] expected = md.digest();
+        ArvoreMerkle esperada = new ArvoreMerkle(Integer.getInteger("app.merkle.baldes", 1024));
+        esperada.atualizar("f1.txt", MessageDigest.getInstance("SHA-256").digest(file1));
+        esperada.atualizar("f2.txt", MessageDigest.getInstance("SHA-256").digest(file2));
 
-        StringBuilder sb = new StringBuilder();
-        for (byte b : expected) sb.append(String.format("%02x", b));
-        assertEquals(sb.toString(), hash);
+        assertEquals(esperada.raizHex(), controle.gerarHashLocal());
     }
 }
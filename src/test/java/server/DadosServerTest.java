@@ -0,0 +1,121 @@
+package server;
+
+import model.Arquivo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DadosServerTest {
+
+    @TempDir
+    Path dir;
+
+    private DadosServer dados;
+
+    @BeforeEach
+    void setup() {
+        dados = new DadosServer(dir.resolve("storage").toString(), dir.resolve("dados.db").toString());
+    }
+
+    @AfterEach
+    void fechar() {
+        dados.close();
+    }
+
+    @Test
+    void testUploadEmBlocosIdaEVolta() {
+        ByteArrayOutputStream esperado = new ByteArrayOutputStream();
+        assertTrue(dados.iniciarTemporario("s1"));
+        for (int i = 0; i < 5; i++) {
+            byte[] bloco = ("bloco-" + i + ";").repeat(1000).getBytes();
+            esperado.writeBytes(bloco);
+            assertTrue(dados.anexarTemporario("s1", bloco));
+        }
+        assertEquals(esperado.size(), dados.tamanhoTemporario("s1"));
+        assertFalse(dados.existeArquivo("a.txt"), "invisível até a efetivação");
+
+        assertTrue(dados.efetivarTemporario("s1", "a.txt"));
+        assertArrayEquals(esperado.toByteArray(), dados.lerArquivo("a.txt"));
+        assertArrayEquals("bloco-1;".getBytes(), dados.lerBloco("a.txt", 8000, 8));
+        assertEquals(-1, dados.tamanhoTemporario("s1"));
+    }
+
+    @Test
+    void testCancelarSessaoDescartaTemporario() {
+        assertTrue(dados.iniciarTemporario("s1"));
+        assertTrue(dados.anexarTemporario("s1", "parcial".getBytes()));
+
+        dados.descartarTemporario("s1");
+
+        assertEquals(-1, dados.tamanhoTemporario("s1"));
+        assertFalse(dados.anexarTemporario("s1", "tarde".getBytes()), "bloco de sessão cancelada não recria o temporário");
+        assertFalse(dados.existeArquivo("a.txt"));
+    }
+
+    @Test
+    void testTemporarioAbandonadoEhLimpo() {
+        assertTrue(dados.iniciarTemporario("s1"));
+
+        assertEquals(0, dados.limparTemporariosAntigos(60_000));
+        assertEquals(1, dados.limparTemporariosAntigos(-1));
+        assertEquals(-1, dados.tamanhoTemporario("s1"));
+    }
+
+    @Test
+    void testAppendGravaSoODelta() {
+        assertTrue(dados.salvarArquivo("a.txt", "abc".getBytes()));
+
+        assertTrue(dados.anexarArquivo("a.txt", "def".getBytes(), 3));
+        assertArrayEquals("abcdef".getBytes(), dados.lerArquivo("a.txt"));
+    }
+
+    @Test
+    void testAppendDivergenteOuSemArquivoEhRecusado() {
+        assertTrue(dados.salvarArquivo("a.txt", "abc".getBytes()));
+        assertFalse(dados.anexarArquivo("a.txt", "def".getBytes(), 2));
+        assertArrayEquals("abc".getBytes(), dados.lerArquivo("a.txt"));
+
+        // Sem cópia local não nasce arquivo vazio (nem entrada no índice)
+        assertFalse(dados.anexarArquivo("b.txt", "def".getBytes(), 0));
+        assertFalse(dados.existeArquivo("b.txt"));
+        assertFalse(dados.listarArquivos().contains("b.txt"));
+    }
+
+    @Test
+    void testDescartarFragmentoSoDaVersaoDada() {
+        ReedSolomon codec = new ReedSolomon(2, 1);
+        assertTrue(dados.salvarFragmento("a.bin", 0, Fragmento.empacotar(1, 4, codec, 0, new byte[2])));
+        assertTrue(dados.salvarFragmento("a.bin", 1, Fragmento.empacotar(2, 4, codec, 1, new byte[2])));
+
+        assertFalse(dados.apagarFragmento("a.bin", 0, 2), "fragmento de outra versão fica");
+        assertTrue(dados.apagarFragmento("a.bin", 1, 2));
+        assertNull(dados.lerFragmento("a.bin", 1));
+        assertTrue(dados.temFragmentos("a.bin"));
+
+        assertTrue(dados.apagarFragmento("a.bin", 0, 1));
+        assertFalse(dados.temFragmentos("a.bin"));
+    }
+
+    @Test
+    void testIndiceGravadoEmLote() {
+        assertTrue(dados.salvarArquivo("a.txt", "abc".getBytes()));
+        assertTrue(dados.salvarArquivo("b.txt", "de".getBytes()));
+        dados.indexarArquivo("a.txt", 3, 1, "aa", null);
+        dados.indexarArquivo("b.txt", 2, 1, "bb", null);
+        dados.indexarArquivo("a.txt", 3, 2, "a2", null);
+        dados.removerDoIndice("b.txt");
+
+        // listarIndice descarrega o que está pendente: vale a última operação de cada nome
+        List<Arquivo> indice = dados.listarIndice();
+        assertEquals(1, indice.size());
+        assertEquals(2, indice.get(0).getVersao());
+        assertTrue(dados.indiceConfere(indice.get(0)));
+    }
+}
@@ -0,0 +1,110 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DurabilidadeTest {
+
+    @TempDir
+    Path pasta;
+
+    private Path arquivo(String nome) throws Exception {
+        return Files.write(pasta.resolve(nome), nome.getBytes());
+    }
+
+    @Test
+    void testNenhumNaoSincroniza() throws Exception {
+        Durabilidade d = new Durabilidade(Durabilidade.Politica.NENHUM, 10);
+        d.sincronizar(arquivo("a"));
+        assertEquals(0, d.getFsyncs());
+    }
+
+    @Test
+    void testSempreUmFsyncPorEscrita() throws Exception {
+        Durabilidade d = new Durabilidade(Durabilidade.Politica.SEMPRE, 10);
+        for (int i = 0; i < 5; i++) {
+            d.sincronizar(arquivo("f" + i), pasta);
+        }
+        assertEquals(5, d.getLotes());
+        assertEquals(10, d.getFsyncs());
+    }
+
+    @Test
+    void testGrupoJuntaEscritasConcorrentes() throws Exception {
+        Durabilidade d = new Durabilidade(Durabilidade.Politica.GRUPO, 200);
+        int escritores = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(escritores);
+        CountDownLatch largada = new CountDownLatch(1);
+        try {
+            List<Future<?>> fins = new ArrayList<>();
+            for (int i = 0; i < escritores; i++) {
+                Path p = arquivo("g" + i);
+                fins.add(pool.submit(() -> {
+                    largada.await();
+                    // A pasta entra uma vez no lote, não uma vez por escrita
+                    d.sincronizar(p, pasta);
+                    return null;
+                }));
+            }
+            largada.countDown();
+            for (Future<?> f : fins) {
+                f.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(escritores, d.getPedidos());
+        assertTrue(d.getLotes() < escritores, "esperava lotes compartilhados: " + d);
+        assertTrue(d.getFsyncs() < 2L * escritores, "pasta deveria ser sincronizada uma vez por lote: " + d);
+    }
+
+    @Test
+    void testGrupoPropagaErro() {
+        Durabilidade d = new Durabilidade(Durabilidade.Politica.GRUPO, 1);
+        assertThrows(IOException.class, () -> d.sincronizar(pasta.resolve("inexistente")));
+    }
+
+    @Test
+    void testGrupoFalhaSoQuemPediuOCaminhoRuim() throws Exception {
+        Durabilidade d = new Durabilidade(Durabilidade.Politica.GRUPO, 200);
+        Path bom = arquivo("bom");
+        Path ruim = pasta.resolve("inexistente");
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch largada = new CountDownLatch(1);
+        try {
+            Future<?> comBom = pool.submit(() -> {
+                largada.await();
+                d.sincronizar(bom, pasta);
+                return null;
+            });
+            Future<?> comRuim = pool.submit(() -> {
+                largada.await();
+                d.sincronizar(ruim, bom);
+                return null;
+            });
+            largada.countDown();
+
+            comBom.get();
+            ExecutionException erro = assertThrows(ExecutionException.class, comRuim::get);
+            assertInstanceOf(IOException.class, erro.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, d.getLotes(), "os dois pedidos deveriam cair no mesmo lote: " + d);
+    }
+}
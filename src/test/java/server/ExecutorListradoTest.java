@@ -0,0 +1,106 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutorListradoTest {
+
+    @Test
+    void testMesmaChaveMantemOrdem() throws Exception {
+        try (ExecutorListrado executor = new ExecutorListrado("teste", 4, 16, s -> {})) {
+            List<Integer> ordem = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch fim = new CountDownLatch(1);
+
+            for (int i = 0; i < 200; i++) {
+                int n = i;
+                executor.executar("a.txt", () -> ordem.add(n));
+            }
+            executor.executar("a.txt", fim::countDown);
+
+            assertTrue(fim.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 200; i++) {
+                assertEquals(i, ordem.get(i));
+            }
+        }
+    }
+
+    @Test
+    void testChavesDiferentesNaoSeBloqueiam() throws Exception {
+        try (ExecutorListrado executor = new ExecutorListrado("teste", 2, 16, s -> {})) {
+            String lenta = "a";
+            String rapida = "b";
+            assertNotEquals(Math.floorMod(lenta.hashCode(), 2), Math.floorMod(rapida.hashCode(), 2));
+
+            CountDownLatch liberar = new CountDownLatch(1);
+            CountDownLatch executou = new CountDownLatch(1);
+
+            executor.executar(lenta, () -> {
+                try {
+                    liberar.await();
+                } catch (InterruptedException ignored) {}
+            });
+            executor.executar(rapida, executou::countDown);
+
+            assertTrue(executou.await(5, TimeUnit.SECONDS));
+            liberar.countDown();
+        }
+    }
+
+    @Test
+    void testErroNaoDerrubaListra() throws Exception {
+        List<String> logs = Collections.synchronizedList(new ArrayList<>());
+        try (ExecutorListrado executor = new ExecutorListrado("teste", 1, 16, logs::add)) {
+            CountDownLatch fim = new CountDownLatch(1);
+            executor.executar("x", () -> { throw new IllegalStateException("falhou"); });
+            executor.executar("x", fim::countDown);
+
+            assertTrue(fim.await(5, TimeUnit.SECONDS));
+            assertEquals(1, logs.size());
+        }
+    }
+
+    @Test
+    void testListraCheiaNaoBloqueiaNemDescarta() throws Exception {
+        List<String> logs = Collections.synchronizedList(new ArrayList<>());
+        try (ExecutorListrado executor = new ExecutorListrado("teste", 1, 4, logs::add)) {
+            CountDownLatch liberar = new CountDownLatch(1);
+            executor.executar("x", () -> {
+                try {
+                    liberar.await();
+                } catch (InterruptedException ignored) {}
+            });
+
+            // Muito além do limite, com a thread chamadora interrompida: nada bloqueia nem se perde
+            CountDownLatch executadas = new CountDownLatch(20);
+            Thread.currentThread().interrupt();
+            for (int i = 0; i < 20; i++) {
+                executor.executar("x", executadas::countDown);
+            }
+            assertTrue(Thread.interrupted());
+            assertFalse(executor.tentarExecutar("x", () -> {}));
+            assertEquals(1, logs.size());
+
+            liberar.countDown();
+            assertTrue(executadas.await(5, TimeUnit.SECONDS));
+            assertEquals(0, executor.pendentes());
+        }
+    }
+
+    @Test
+    void testInterrupcaoDeixadaPorTarefaNaoDerrubaListra() throws Exception {
+        try (ExecutorListrado executor = new ExecutorListrado("teste", 1, 16, s -> {})) {
+            CountDownLatch fim = new CountDownLatch(1);
+            executor.executar("x", () -> Thread.currentThread().interrupt());
+            executor.executar("x", fim::countDown);
+
+            assertTrue(fim.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
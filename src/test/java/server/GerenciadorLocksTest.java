@@ -0,0 +1,73 @@
+package server;
+
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.jgroups.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class GerenciadorLocksTest {
+
+    private GerenciadorLocks locks;
+
+    @BeforeEach
+    void setup() {
+        // Nó único: é dono de todos os locks, nenhuma mensagem sai pela rede
+        JChannel canal = mock(JChannel.class);
+        Address eu = UUID.randomUUID();
+        when(canal.getAddress()).thenReturn(eu);
+
+        locks = new GerenciadorLocks(canal, arquivo -> eu, 600, msg -> {});
+    }
+
+    @AfterEach
+    void tearDown() {
+        locks.close();
+    }
+
+    @Test
+    void testSegundoPedidoEsperaLiberacao() throws Exception {
+        GerenciadorLocks.Concessao primeiro = locks.adquirir("a.txt", 1000);
+
+        CompletableFuture<GerenciadorLocks.Concessao> segundo = CompletableFuture.supplyAsync(() -> {
+            try {
+                return locks.adquirir("a.txt", 5000);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        assertFalse(segundo.isDone());
+
+        locks.liberar(primeiro);
+        GerenciadorLocks.Concessao c = segundo.get(1, TimeUnit.SECONDS);
+        assertTrue(c.token > primeiro.token);
+    }
+
+    @Test
+    void testArquivosDiferentesNaoBloqueiam() throws Exception {
+        locks.adquirir("a.txt", 1000);
+        assertNotNull(locks.adquirir("b.txt", 1000));
+    }
+
+    @Test
+    void testTimeoutLancaExcecao() throws Exception {
+        locks.adquirir("a.txt", 1000);
+        assertThrows(Exception.class, () -> locks.adquirir("a.txt", 100));
+    }
+
+    @Test
+    void testFencingRejeitaTokenAntigo() {
+        assertTrue(locks.aceitarToken("a.txt", 5));
+        assertTrue(locks.aceitarToken("a.txt", 7));
+        assertFalse(locks.aceitarToken("a.txt", 6));
+    }
+}
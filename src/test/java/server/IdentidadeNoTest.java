@@ -0,0 +1,39 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdentidadeNoTest {
+
+    @TempDir
+    Path raiz;
+
+    @Test
+    void testSlotsLivresSaoReservadosEmOrdem() throws Exception {
+        IdentidadeNo a = IdentidadeNo.reivindicar(raiz, null);
+        IdentidadeNo b = IdentidadeNo.reivindicar(raiz, null);
+        assertEquals("node-1", a.getId());
+        assertEquals("node-2", b.getId());
+        assertEquals(raiz.resolve("node-1"), a.getDiretorio());
+
+        // slot liberado volta a ser reservável (reinício do mesmo nó)
+        a.liberar();
+        IdentidadeNo c = IdentidadeNo.reivindicar(raiz, null);
+        assertEquals("node-1", c.getId());
+
+        b.liberar();
+        c.liberar();
+    }
+
+    @Test
+    void testNoExplicitoEmUsoFalha() throws Exception {
+        IdentidadeNo a = IdentidadeNo.reivindicar(raiz, "backend-a");
+        assertThrows(IOException.class, () -> IdentidadeNo.reivindicar(raiz, "backend-a"));
+        a.liberar();
+    }
+}
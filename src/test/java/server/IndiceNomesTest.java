@@ -0,0 +1,53 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndiceNomesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testListaEmOrdem() {
+        IndiceNomes indice = new IndiceNomes(dir.resolve("nomes"));
+        indice.adicionar("c.txt");
+        indice.adicionar("a.txt");
+        indice.adicionar("b.txt");
+        indice.remover("c.txt");
+
+        assertEquals(List.of("a.txt", "b.txt"), indice.listar());
+        assertTrue(indice.contem("a.txt"));
+        assertFalse(indice.contem("c.txt"));
+    }
+
+    @Test
+    void testSnapshotValeSoUmaVez() throws Exception {
+        Durabilidade durabilidade = new Durabilidade(Durabilidade.Politica.NENHUM, 0);
+        IndiceNomes indice = new IndiceNomes(dir.resolve("nomes"));
+        indice.adicionarTodos(List.of("x", "ação.txt", "y"));
+        indice.salvar(durabilidade);
+
+        IndiceNomes recarregado = new IndiceNomes(dir.resolve("nomes"));
+        assertTrue(recarregado.carregar());
+        assertEquals(List.of("ação.txt", "x", "y"), recarregado.listar());
+
+        // Consumido na carga: uma queda depois disso obriga a reconstruir
+        assertFalse(Files.exists(dir.resolve("nomes")));
+        assertFalse(new IndiceNomes(dir.resolve("nomes")).carregar());
+    }
+
+    @Test
+    void testPastaDoNomeEstavel() {
+        Path pasta = DadosServer.pastaDoNome(dir, "relatorio.pdf");
+        assertEquals(pasta, DadosServer.pastaDoNome(dir, "relatorio.pdf"));
+        assertEquals(dir, pasta.getParent().getParent());
+        assertEquals(2, pasta.getFileName().toString().length());
+    }
+}
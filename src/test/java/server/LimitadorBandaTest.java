@@ -0,0 +1,29 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitadorBandaTest {
+
+    @Test
+    void testRajadaDeUmSegundoEDepoisLimita() throws Exception {
+        LimitadorBanda limitador = new LimitadorBanda(100_000);
+
+        long inicio = System.nanoTime();
+        limitador.consumir(100_000); // cabe no balde cheio
+        assertTrue(System.nanoTime() - inicio < 100_000_000L);
+
+        limitador.consumir(50_000);  // dívida de ~0,5 s
+        long decorrido = System.nanoTime() - inicio;
+        assertTrue(decorrido >= 400_000_000L, "esperou só " + decorrido / 1_000_000 + " ms");
+    }
+
+    @Test
+    void testSemLimite() throws Exception {
+        LimitadorBanda limitador = new LimitadorBanda(0);
+        long inicio = System.nanoTime();
+        limitador.consumir(Long.MAX_VALUE / 2);
+        assertTrue(System.nanoTime() - inicio < 100_000_000L);
+    }
+}
@@ -0,0 +1,46 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManifestoTest {
+
+    @Test
+    void testSoBuscaArquivosDiferentes() {
+        Manifesto doador = new Manifesto();
+        doador.adicionar("igual.txt", 10, "aaa");
+        doador.adicionar("alterado.txt", 10, "bbb");
+        doador.adicionar("novo.txt", 5, "ccc");
+
+        Manifesto local = new Manifesto();
+        local.adicionar("igual.txt", 10, "aaa");
+        local.adicionar("alterado.txt", 10, "xxx");
+        local.adicionar("velho.txt", 1, "ddd");
+
+        assertEquals(List.of("alterado.txt", "novo.txt"), doador.diferentes(local));
+        assertEquals(List.of("velho.txt"), doador.sobrando(local.getEntradas().keySet()));
+    }
+
+    @Test
+    void testSerializacaoIdaEVolta() throws Exception {
+        Manifesto original = new Manifesto();
+        original.adicionar("a.txt", 123, "abc");
+        original.adicionar("b.bin", 0, "def");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        original.escrever(new DataOutputStream(bytes));
+        Manifesto lido = Manifesto.ler(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2, lido.size());
+        assertEquals(123, lido.get("a.txt").tamanho);
+        assertEquals("def", lido.get("b.bin").digest);
+        assertTrue(original.diferentes(lido).isEmpty());
+    }
+}
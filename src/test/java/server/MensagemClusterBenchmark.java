@@ -0,0 +1,145 @@
+package server;
+
+import model.Usuario;
+import org.jgroups.Address;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.UUID;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Comparação antes/depois da codificação das mensagens do cluster:
+ * serialização Java (formato antigo, reproduzido em {@link Legado}) contra
+ * a codificação binária da MensagemCluster. Mede bytes por mensagem e
+ * tempo de codificar + decodificar.
+ *
+ * Rodar com: java -cp target/test-classes:target/classes:... server.MensagemClusterBenchmark
+ */
+public class MensagemClusterBenchmark {
+
+    private static final int AQUECIMENTO = 50_000;
+    private static final int ITERACOES = 200_000;
+
+    /**
+     * Layout da MensagemCluster antes da codificação binária
+     */
+    static class Legado implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        MensagemCluster.Acao acao;
+        String uuid, uploadId, arquivo;
+        byte[] conteudo;
+        long offset, tamanho, checksum, versao;
+        boolean segundoPlano;
+        Usuario usuario;
+        String rpcAddress;
+        boolean replicado;
+        String serverOrigin;
+        String lockId;
+        long tokenLock;
+        String historico;
+        long seq;
+        List<String> nomes;
+        List<Usuario> usuarios;
+        String transactionId;
+        boolean sucesso;
+
+        static Legado de(MensagemCluster m) {
+            Legado l = new Legado();
+            l.acao = m.acao;
+            l.uuid = m.uuid;
+            l.uploadId = m.uploadId;
+            l.arquivo = m.arquivo;
+            l.conteudo = m.conteudo;
+            l.offset = m.offset;
+            l.tamanho = m.tamanho;
+            l.checksum = m.checksum;
+            l.versao = m.versao;
+            l.segundoPlano = m.segundoPlano;
+            l.usuario = m.usuario;
+            l.rpcAddress = m.rpcAddress;
+            l.replicado = m.replicado;
+            l.serverOrigin = m.serverOrigin == null ? null : m.serverOrigin.toString();
+            l.lockId = m.lockId;
+            l.tokenLock = m.tokenLock;
+            l.historico = m.historico;
+            l.seq = m.seq;
+            l.nomes = m.nomes;
+            l.usuarios = m.usuarios;
+            l.transactionId = m.transactionId;
+            l.sucesso = m.sucesso;
+            return l;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        MensagemCluster.registrarTipos();
+        Address origem = UUID.randomUUID();
+        long versao = System.currentTimeMillis();
+        String uploadId = java.util.UUID.randomUUID().toString();
+
+        medir("LOCK_REQUEST", MensagemCluster.solicitarLock("documentos/relatorio.txt", uploadId));
+        medir("CONFIRMACAO_UPLOAD", MensagemCluster.confirmarUpload(uploadId, true));
+        medir("UPLOAD_COMMIT", MensagemCluster.commitUpload("documentos/relatorio.txt", uploadId, 1 << 20,
+                origem, null, 42, versao));
+        medir("SALVAR_USUARIO", MensagemCluster.salvarUsuario(new Usuario("ana", "$2a$10$abcdefghijklmnopqrstuv"),
+                uploadId));
+        medir("APPEND 4 KB", MensagemCluster.append("documentos/log.txt", new byte[4096], uploadId, 123456,
+                987654321L, origem, null, 42, versao));
+    }
+
+    private static void medir(String nome, MensagemCluster m) throws Exception {
+        Legado legado = Legado.de(m);
+
+        byte[] java = serializarJava(legado);
+        int binario = m.serializedSize();
+
+        for (int i = 0; i < AQUECIMENTO; i++) {
+            desserializarJava(serializarJava(legado));
+            idaEVoltaBinaria(m);
+        }
+
+        long inicio = System.nanoTime();
+        for (int i = 0; i < ITERACOES; i++) {
+            desserializarJava(serializarJava(legado));
+        }
+        double nsJava = (System.nanoTime() - inicio) / (double) ITERACOES;
+
+        inicio = System.nanoTime();
+        for (int i = 0; i < ITERACOES; i++) {
+            idaEVoltaBinaria(m);
+        }
+        double nsBinario = (System.nanoTime() - inicio) / (double) ITERACOES;
+
+        System.out.printf("%-20s java: %6d bytes %8.0f ns | binário: %6d bytes %8.0f ns%n",
+                nome, java.length, nsJava, binario, nsBinario);
+    }
+
+    private static byte[] serializarJava(Legado l) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(l);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object desserializarJava(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    private static MensagemCluster idaEVoltaBinaria(MensagemCluster m) throws Exception {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(m.serializedSize());
+        m.writeTo(out);
+        MensagemCluster lida = new MensagemCluster();
+        lida.readFrom(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+        return lida;
+    }
+}
@@ -0,0 +1,125 @@
+package server;
+
+import model.Usuario;
+import org.jgroups.Address;
+import org.jgroups.BytesMessage;
+import org.jgroups.Message;
+import org.jgroups.NioMessage;
+import org.jgroups.ObjectMessage;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.jgroups.util.UUID;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MensagemClusterTest {
+
+    @BeforeAll
+    static void registrar() {
+        MensagemCluster.registrarTipos();
+    }
+
+    private static <T extends Message> T idaEVolta(Message msg, T lida) throws Exception {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream();
+        msg.writeTo(out);
+        lida.readFrom(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+        return lida;
+    }
+
+    @Test
+    void testControleIdaEVolta() throws Exception {
+        Address origem = UUID.randomUUID();
+        Address outro = UUID.randomUUID();
+        MensagemCluster m = MensagemCluster.commitUpload("relatório.txt", "up-1", 4096, origem,
+                List.of(origem, outro), 7, 1_700_000_000_000L);
+
+        Message msg = m.paraMensagem(null);
+        assertInstanceOf(ObjectMessage.class, msg);
+        assertSame(m, ((ObjectMessage) msg).getObject());
+
+        MensagemCluster lida = MensagemCluster.de(idaEVolta(msg, new ObjectMessage()));
+        assertEquals(MensagemCluster.Acao.UPLOAD_COMMIT, lida.acao);
+        assertEquals("relatório.txt", lida.arquivo);
+        assertEquals("up-1", lida.uploadId);
+        assertEquals(4096, lida.tamanho);
+        assertEquals(7, lida.tokenLock);
+        assertEquals(1_700_000_000_000L, lida.versao);
+        assertEquals(origem, lida.serverOrigin);
+        assertEquals(List.of(origem, outro), lida.destinos);
+        assertNull(lida.conteudo);
+    }
+
+    @Test
+    void testConteudoVaiSemCopiaNaBytesMessage() throws Exception {
+        byte[] delta = "linha nova\n".getBytes();
+        MensagemCluster m = MensagemCluster.append("log.txt", delta, "up-2", 100, 42, UUID.randomUUID(), null, 3, 5);
+
+        Message msg = m.paraMensagem(null);
+        assertInstanceOf(BytesMessage.class, msg);
+        assertSame(delta, msg.getArray());
+
+        MensagemCluster lida = MensagemCluster.de(idaEVolta(msg, new BytesMessage()));
+        assertEquals(MensagemCluster.Acao.APPEND, lida.acao);
+        assertArrayEquals(delta, lida.conteudo);
+        assertEquals(100, lida.offset);
+        assertEquals(42, lida.checksum);
+    }
+
+    @Test
+    void testBlocoVaiComoNioMessage() throws Exception {
+        ByteBuffer mapa = ByteBuffer.allocateDirect(64);
+        for (int i = 0; i < 64; i++) mapa.put((byte) i);
+        ByteBuffer bloco = mapa.slice(16, 8);
+
+        Message msg = MensagemCluster.blocoUpload("grande.bin", "up-3", 16, bloco).paraMensagem(null);
+        assertInstanceOf(NioMessage.class, msg);
+        assertSame(bloco, ((NioMessage) msg).getBuf());
+
+        MensagemCluster lida = MensagemCluster.de(idaEVolta(msg, new NioMessage()));
+        assertEquals(MensagemCluster.Acao.UPLOAD_BLOCO, lida.acao);
+        assertEquals(16, lida.offset);
+        assertNull(lida.conteudo);
+        assertTrue(lida.bloco.isDirect());
+        assertEquals(8, lida.bloco.remaining());
+        assertEquals(16, lida.bloco.get(lida.bloco.position()));
+    }
+
+    @Test
+    void testBlocoQueComprimeVaiComprimido() throws Exception {
+        byte[] texto = "uma linha que se repete bastante\n".repeat(2000).getBytes();
+
+        Message msg = MensagemCluster.blocoArquivo("log.txt", "s-1", 0, ByteBuffer.wrap(texto)).paraMensagem(null);
+        assertInstanceOf(BytesMessage.class, msg);
+        assertTrue(msg.getLength() < texto.length / 4);
+
+        MensagemCluster lida = MensagemCluster.de(idaEVolta(msg, new BytesMessage()));
+        assertEquals(texto.length, lida.comprimidoDe);
+        assertEquals(ByteBuffer.wrap(texto), lida.bloco);
+
+        assertNull(MensagemCluster.de(idaEVolta(msg, new BytesMessage()), false).bloco, "sem corpo não descomprime");
+    }
+
+    @Test
+    void testTamanhoSerializadoConfereComBytesEscritos() throws Exception {
+        Usuario u = new Usuario("ana", "hash");
+        u.setId(9);
+        MensagemCluster m = MensagemCluster.respostaCatchup("hist", 123456, List.of("a.txt", "ção.bin"), List.of(u));
+
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream();
+        m.writeTo(out);
+        assertEquals(m.serializedSize(), out.position());
+
+        MensagemCluster lida = new MensagemCluster();
+        lida.readFrom(new ByteArrayDataInputStream(out.buffer(), 0, out.position()));
+        assertEquals(List.of("a.txt", "ção.bin"), lida.nomes);
+        assertEquals(9, lida.usuarios.get(0).getId());
+        assertEquals("ana", lida.usuarios.get(0).getUsername());
+        assertEquals("hash", lida.usuarios.get(0).getPassword());
+        assertEquals(123456, lida.seq);
+    }
+}
@@ -0,0 +1,90 @@
+package server;
+
+import org.jgroups.Address;
+import org.jgroups.util.NameCache;
+import org.jgroups.util.UUID;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PosicionamentoTest {
+
+    private static Address backend(String id) {
+        return Posicionamento.enderecoBackend("backend-" + id + "@h", id);
+    }
+
+    private static Address gateway() {
+        Address a = UUID.randomUUID();
+        NameCache.add(a, "gateway@h");
+        return a;
+    }
+
+    @Test
+    void testQuorunsLimitadosPelosDonosVivos() {
+        Posicionamento p = new Posicionamento(3, 2, 2);
+        assertEquals(2, p.escritas(3));
+        assertEquals(1, p.escritas(1));
+        assertEquals(2, p.leituras(5));
+        assertEquals(1, p.leituras(1));
+    }
+
+    @Test
+    void testConfiguracaoInvalida() {
+        assertThrows(IllegalArgumentException.class, () -> new Posicionamento(0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new Posicionamento(3, 4, 1));
+        assertThrows(IllegalArgumentException.class, () -> new Posicionamento(3, 2, 0));
+    }
+
+    @Test
+    void testAnelIgnoraGatewaysEUsaNDonos() {
+        List<Address> view = List.of(backend("node-1"), backend("node-2"), gateway(),
+                backend("node-3"), backend("node-4"));
+        Posicionamento p = new Posicionamento(3, 2, 2);
+        AnelHash<Address> anel = Posicionamento.anel(view);
+
+        for (int i = 0; i < 200; i++) {
+            List<Address> donos = p.donos(anel, "arquivo-" + i);
+            assertEquals(3, donos.size());
+            assertEquals(3, new HashSet<>(donos).size());
+            donos.forEach(d -> assertTrue(Posicionamento.isBackend(d)));
+        }
+    }
+
+    @Test
+    void testCanaisComMesmoNomeConcordamNosDonos() {
+        // Backends e gateway veem endereços diferentes (canal de cluster x canal RPC) com o mesmo id
+        List<String> ids = List.of("node-1", "node-2", "node-3", "node-4");
+        List<Address> cluster = new ArrayList<>();
+        List<Address> rpc = new ArrayList<>();
+        for (String id : ids) {
+            cluster.add(backend(id));
+            rpc.add(backend(id));
+        }
+        Collections.reverse(rpc);
+
+        Posicionamento p = new Posicionamento(2, 2, 1);
+        AnelHash<Address> anelCluster = Posicionamento.anel(cluster);
+        AnelHash<Address> anelRpc = Posicionamento.anel(rpc);
+        for (int i = 0; i < 200; i++) {
+            String arquivo = "arquivo-" + i;
+            assertEquals(p.donos(anelCluster, arquivo).stream().map(Posicionamento::idBackend).toList(),
+                    p.donos(anelRpc, arquivo).stream().map(Posicionamento::idBackend).toList());
+        }
+    }
+
+    @Test
+    void testNomeNaoDecideQuemEhBackend() {
+        // Um nome com cara de backend não basta, e o anel não depende do NameCache
+        Address impostor = UUID.randomUUID();
+        NameCache.add(impostor, "backend-9@h");
+        Address backend = backend("node-1");
+        NameCache.add(backend, "outro-nome");
+
+        assertFalse(Posicionamento.isBackend(impostor));
+        assertTrue(Posicionamento.isBackend(backend));
+        assertEquals("node-1", Posicionamento.idBackend(backend));
+        assertEquals(List.of(backend), Posicionamento.backends(List.of(impostor, backend)));
+    }
+}
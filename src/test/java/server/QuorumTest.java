@@ -0,0 +1,52 @@
+package server;
+
+import org.jgroups.Address;
+import org.jgroups.util.UUID;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuorumTest {
+
+    @Test
+    void testCompletaAoAtingirQuorum() throws Exception {
+        Quorum quorum = new Quorum(2);
+        Address a = UUID.randomUUID();
+        Address b = UUID.randomUUID();
+
+        CompletableFuture<Boolean> espera = CompletableFuture.supplyAsync(() -> {
+            try {
+                return quorum.aguardar(5000);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+
+        quorum.confirmar(a);
+        quorum.confirmar(a); // repetida não conta
+        assertFalse(espera.isDone());
+
+        quorum.confirmar(b);
+        long inicio = System.nanoTime();
+        assertTrue(espera.get());
+        assertTrue(System.nanoTime() - inicio < 1_000_000_000L);
+    }
+
+    @Test
+    void testRejeicaoLiberaImediatamente() throws Exception {
+        Quorum quorum = new Quorum(3);
+        quorum.rejeitar();
+
+        assertFalse(quorum.aguardar(5000));
+    }
+
+    @Test
+    void testTimeoutContaComoFalha() throws Exception {
+        Quorum quorum = new Quorum(2);
+        quorum.confirmar(UUID.randomUUID());
+
+        assertFalse(quorum.aguardar(50));
+    }
+}
@@ -0,0 +1,58 @@
+package server;
+
+import java.util.Random;
+
+/**
+ * Vazão do ReedSolomon: codificação (paridade) e decodificação perdendo
+ * m fragmentos de dados, o pior caso de leitura.
+ *
+ * Rodar com: java -cp target/test-classes:target/classes server.ReedSolomonBenchmark [k] [m] [MB]
+ */
+public class ReedSolomonBenchmark {
+
+    private static final int REPETICOES = 10;
+
+    public static void main(String[] args) {
+        int k = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int m = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int mb = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        ReedSolomon rs = new ReedSolomon(k, m);
+        byte[] conteudo = new byte[mb * 1024 * 1024];
+        new Random(1).nextBytes(conteudo);
+
+        // Aquecimento
+        for (int i = 0; i < 3; i++) {
+            decodificarSemDados(rs, rs.codificar(conteudo), conteudo.length);
+        }
+
+        long codificar = 0;
+        long decodificar = 0;
+        for (int i = 0; i < REPETICOES; i++) {
+            long inicio = System.nanoTime();
+            byte[][] fragmentos = rs.codificar(conteudo);
+            codificar += System.nanoTime() - inicio;
+
+            inicio = System.nanoTime();
+            byte[] lido = decodificarSemDados(rs, fragmentos, conteudo.length);
+            decodificar += System.nanoTime() - inicio;
+            if (lido.length != conteudo.length || lido[lido.length - 1] != conteudo[conteudo.length - 1]) {
+                throw new IllegalStateException("decodificação incorreta");
+            }
+        }
+
+        double totalMb = (double) mb * REPETICOES;
+        System.out.printf("RS(k=%d, m=%d) sobre %d MB - armazenamento %.2fx%n", k, m, mb, (double) (k + m) / k);
+        System.out.printf("  codificar:   %8.1f MB/s%n", totalMb / (codificar / 1e9));
+        System.out.printf("  decodificar: %8.1f MB/s (perdendo %d fragmentos de dados)%n",
+                totalMb / (decodificar / 1e9), Math.min(k, m));
+    }
+
+    private static byte[] decodificarSemDados(ReedSolomon rs, byte[][] fragmentos, int tamanho) {
+        byte[][] recebidos = fragmentos.clone();
+        for (int i = 0; i < Math.min(rs.getDados(), rs.getParidade()); i++) {
+            recebidos[i] = null;
+        }
+        return rs.decodificar(recebidos, tamanho);
+    }
+}
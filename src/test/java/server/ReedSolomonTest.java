@@ -0,0 +1,65 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReedSolomonTest {
+
+    private static byte[] aleatorio(int tamanho) {
+        byte[] b = new byte[tamanho];
+        new Random(tamanho).nextBytes(b);
+        return b;
+    }
+
+    @Test
+    void testDecodificaComQualquerPerdaDeAteMFragmentos() {
+        ReedSolomon rs = new ReedSolomon(4, 2);
+        byte[] conteudo = aleatorio(10_001);
+        byte[][] fragmentos = rs.codificar(conteudo);
+
+        for (int a = 0; a < 6; a++) {
+            for (int b = a + 1; b < 6; b++) {
+                byte[][] recebidos = fragmentos.clone();
+                recebidos[a] = null;
+                recebidos[b] = null;
+                assertArrayEquals(conteudo, rs.decodificar(recebidos, conteudo.length), "perdendo " + a + " e " + b);
+            }
+        }
+    }
+
+    @Test
+    void testReconstroiParidadeIgualAOriginal() {
+        ReedSolomon rs = new ReedSolomon(6, 3);
+        byte[][] fragmentos = rs.codificar(aleatorio(4096));
+
+        byte[][] recebidos = fragmentos.clone();
+        recebidos[1] = null;
+        recebidos[6] = null;
+        recebidos[8] = null;
+        rs.reconstruir(recebidos);
+        for (int i = 0; i < fragmentos.length; i++) {
+            assertArrayEquals(fragmentos[i], recebidos[i]);
+        }
+    }
+
+    @Test
+    void testFragmentosInsuficientes() {
+        ReedSolomon rs = new ReedSolomon(4, 2);
+        byte[][] recebidos = rs.codificar(aleatorio(100));
+        recebidos[0] = null;
+        recebidos[2] = null;
+        recebidos[5] = null;
+        assertThrows(IllegalArgumentException.class, () -> rs.decodificar(recebidos, 100));
+    }
+
+    @Test
+    void testConteudoVazio() {
+        ReedSolomon rs = new ReedSolomon(3, 1);
+        byte[][] fragmentos = rs.codificar(new byte[0]);
+        fragmentos[0] = null;
+        assertEquals(0, rs.decodificar(fragmentos, 0).length);
+    }
+}
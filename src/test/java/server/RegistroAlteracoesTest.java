@@ -0,0 +1,87 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegistroAlteracoesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testCatchupDevolveSoOQueMudou() throws Exception {
+        RegistroAlteracoes registro = new RegistroAlteracoes(dir, 100);
+        registro.novoHistorico();
+        registro.registrar("a.txt");
+        registro.registrar("b.txt");
+        registro.registrar("a.txt");
+        registro.registrar("c.txt");
+
+        RegistroAlteracoes.Catchup c = registro.alteradosDesde(registro.getHistorico(), 2);
+        assertEquals(4, c.seq);
+        assertEquals(List.of("a.txt", "c.txt"), c.nomes);
+
+        assertTrue(registro.alteradosDesde(registro.getHistorico(), 4).nomes.isEmpty());
+        assertNull(registro.alteradosDesde("outro-historico", 2).nomes);
+        assertNull(registro.alteradosDesde(registro.getHistorico(), 5).nomes);
+        registro.close();
+    }
+
+    @Test
+    void testRetencaoLimitaCobertura() throws Exception {
+        RegistroAlteracoes registro = new RegistroAlteracoes(dir, 3);
+        registro.novoHistorico();
+        for (int i = 1; i <= 10; i++) {
+            registro.registrar("f" + i);
+        }
+
+        assertNull(registro.alteradosDesde(registro.getHistorico(), 5).nomes);
+        assertEquals(List.of("f8", "f9", "f10"), registro.alteradosDesde(registro.getHistorico(), 7).nomes);
+        registro.close();
+    }
+
+    @Test
+    void testSobreviveAoReinicio() throws Exception {
+        RegistroAlteracoes registro = new RegistroAlteracoes(dir, 100);
+        registro.novoHistorico();
+        String historico = registro.getHistorico();
+        for (int i = 0; i < 5; i++) {
+            registro.registrar("x" + i);
+        }
+        registro.close();
+
+        RegistroAlteracoes reaberto = new RegistroAlteracoes(dir, 100);
+        assertEquals(historico, reaberto.getHistorico());
+        assertEquals(5, reaberto.getSeq());
+        assertEquals(5, reaberto.seqSeguro(3)); // encerramento limpo
+        assertEquals(List.of("x3", "x4"), reaberto.alteradosDesde(historico, 3).nomes);
+
+        reaberto.registrar("x5");
+        // sem close(): simula queda, o próximo reinício recua a margem
+        RegistroAlteracoes aposQueda = new RegistroAlteracoes(dir, 100);
+        assertEquals(6, aposQueda.getSeq());
+        assertEquals(3, aposQueda.seqSeguro(3));
+    }
+
+    @Test
+    void testEscritasDuranteCatchupSeguemBaseDoCoordenador() throws Exception {
+        RegistroAlteracoes registro = new RegistroAlteracoes(dir, 100);
+        registro.novoHistorico();
+        registro.registrar("antes.txt");
+
+        registro.iniciarCatchup();
+        registro.registrar("durante1.txt");
+        registro.registrar("durante2.txt");
+        assertEquals(1, registro.getSeq());
+
+        registro.definirBase("hist-coordenador", 40);
+        assertEquals(42, registro.getSeq());
+        assertEquals(List.of("durante2.txt"), registro.alteradosDesde("hist-coordenador", 41).nomes);
+        registro.close();
+    }
+}
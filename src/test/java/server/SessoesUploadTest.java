@@ -0,0 +1,40 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessoesUploadTest {
+
+    @Test
+    void testSessaoParadaExpira() {
+        List<String> expiradas = new ArrayList<>();
+        try (SessoesUpload<String> sessoes = new SessoesUpload<>("teste", 60_000, (s, nome) -> expiradas.add(nome))) {
+            sessoes.abrir("s1", "a.txt");
+            sessoes.abrir("s2", "b.txt");
+
+            sessoes.expirar(System.currentTimeMillis() + 1_000);
+            assertTrue(expiradas.isEmpty());
+
+            sessoes.expirar(System.currentTimeMillis() + 60_000);
+            assertEquals(List.of("a.txt", "b.txt"), expiradas.stream().sorted().toList());
+            assertNull(sessoes.usar("s1"));
+            assertEquals(0, sessoes.size());
+        }
+    }
+
+    @Test
+    void testSessaoEncerradaNaoExpira() {
+        List<String> expiradas = new ArrayList<>();
+        try (SessoesUpload<String> sessoes = new SessoesUpload<>("teste", 60_000, (s, nome) -> expiradas.add(nome))) {
+            sessoes.abrir("s1", "a.txt");
+            assertEquals("a.txt", sessoes.remover("s1"));
+
+            sessoes.expirar(System.currentTimeMillis() + 60_000);
+            assertTrue(expiradas.isEmpty());
+        }
+    }
+}
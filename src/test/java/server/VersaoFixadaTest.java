@@ -0,0 +1,70 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersaoFixadaTest {
+
+    @TempDir
+    Path pasta;
+
+    /**
+     * Nova versão trocando o nome, como DadosServer.publicarTemporario
+     */
+    private void publicar(Path arquivo, String conteudo) throws Exception {
+        Path temporario = Files.writeString(pasta.resolve("tmp"), conteudo);
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Test
+    void testCanalContinuaNaVersaoFixada() throws Exception {
+        Path arquivo = Files.writeString(pasta.resolve("a.txt"), "versao-1");
+
+        try (VersaoFixada v1 = new VersaoFixada(FileChannel.open(arquivo, StandardOpenOption.READ))) {
+            publicar(arquivo, "v2");
+
+            assertEquals(8, v1.tamanho());
+            assertEquals("versao-1", new String(v1.ler(0, 100)));
+            assertEquals("sao", new String(v1.ler(3, 3)));
+        }
+        assertEquals("v2", Files.readString(arquivo));
+    }
+
+    @Test
+    void testMapeamentoContinuaNaVersaoFixada() throws Exception {
+        Path arquivo = Files.writeString(pasta.resolve("b.txt"), "mapeado-1");
+        ByteBuffer mapa;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+
+        try (VersaoFixada v1 = new VersaoFixada(mapa)) {
+            publicar(arquivo, "outro");
+
+            assertEquals("mapeado-1", new String(v1.ler(0, 100)));
+            ByteBuffer trecho = v1.mapear(2, 4);
+            byte[] lido = new byte[trecho.remaining()];
+            trecho.get(lido);
+            assertEquals("pead", new String(lido));
+        }
+    }
+
+    @Test
+    void testForaDoArquivo() throws Exception {
+        Path arquivo = Files.writeString(pasta.resolve("c.txt"), "abc");
+        try (VersaoFixada v = new VersaoFixada(FileChannel.open(arquivo, StandardOpenOption.READ))) {
+            assertNull(v.ler(4, 1));
+            assertNull(v.ler(-1, 1));
+            assertEquals(0, v.ler(3, 10).length);
+        }
+    }
+}